@@ -0,0 +1,93 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin;
+
+import com.atlassian.bamboo.build.logger.BuildLogger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects entries a concurrent stage adds to the build log, so that they can be written
+ * in stage order once the stage is over. Only calls adding entries are recorded; they are
+ * replayed on the real logger with the same arguments. Entries added after {@link #replay}
+ * are dropped, so a stage that timed out cannot interleave with later output.
+ */
+public class BufferedBuildLogger implements InvocationHandler {
+
+    private final List<Object[]> calls = new ArrayList<Object[]>();
+    private final BuildLogger proxy;
+    private boolean replayed = false;
+
+    public BufferedBuildLogger() {
+        this.proxy = (BuildLogger) Proxy.newProxyInstance(BuildLogger.class.getClassLoader(),
+            new Class<?>[]{BuildLogger.class}, this);
+    }
+
+    /**
+     * logger to hand over to the stage
+     */
+    public BuildLogger logger() {
+        return this.proxy;
+    }
+
+    @Override
+    public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(this, args);
+        }
+        if (method.getName().startsWith("add") && !this.replayed) {
+            this.calls.add(new Object[]{method, args});
+        }
+        if (method.getReturnType() == String.class && args != null && args.length > 0 && args[0] instanceof String) {
+            return args[0];
+        }
+        if (method.getReturnType() == boolean.class) {
+            return false;
+        }
+        if (method.getReturnType() == int.class) {
+            return 0;
+        }
+        if (method.getReturnType() == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    public synchronized int size() {
+        return this.calls.size();
+    }
+
+    /**
+     * Writes recorded entries to the logger and stops recording.
+     */
+    public synchronized void replay(BuildLogger logger) {
+        this.replayed = true;
+        for (Object[] call : this.calls) {
+            try {
+                ((Method) call[0]).invoke(logger, (Object[]) call[1]);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            } catch (InvocationTargetException e) {
+                logger.addErrorLogEntry("Failed to write build log entry: " + e.getCause());
+            }
+        }
+        this.calls.clear();
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin;
+
+import com.atlassian.bamboo.build.logger.BuildLogger;
+import com.blazemeter.bamboo.plugin.configuration.constants.Constants;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs independent steps done after the test (report, JTL, JUnit, CI status) concurrently
+ * on a bounded pool. Each stage logs into its own buffer; buffers are written to the build
+ * log in the order stages were added, so the log reads as if the stages ran one by one.
+ * A stage exceeding its timeout, counted from submission, is cancelled and its fallback value is used.
+ */
+public class PostTestPipeline {
+
+    public static final int DEFAULT_THREADS = 4;
+    public static final long DEFAULT_STAGE_TIMEOUT = 1800000;
+
+    private final List<Stage<?>> stages = new ArrayList<Stage<?>>();
+    private final int threads;
+    private final long stageTimeout;
+    private long wallMillis = -1;
+
+    public PostTestPipeline() {
+        this(Integer.getInteger(Constants.POST_THREADS, DEFAULT_THREADS),
+            Long.getLong(Constants.POST_STAGE_TIMEOUT, DEFAULT_STAGE_TIMEOUT));
+    }
+
+    public PostTestPipeline(int threads, long stageTimeout) {
+        this.threads = Math.max(1, threads);
+        this.stageTimeout = stageTimeout;
+    }
+
+    /**
+     * @param fallback value of the stage if it times out or fails
+     * @param work     stage body, gets the logger it must write to
+     */
+    public <T> Stage<T> add(String name, T fallback, Function<BuildLogger, T> work) {
+        return this.add(name, this.stageTimeout, fallback, work);
+    }
+
+    /**
+     * @param timeout milliseconds the stage may take
+     */
+    public <T> Stage<T> add(String name, long timeout, T fallback, Function<BuildLogger, T> work) {
+        Stage<T> s = new Stage<T>(name, timeout, fallback, work);
+        this.stages.add(s);
+        return s;
+    }
+
+    /**
+     * Runs all stages and writes their logs in order.
+     */
+    public void run(BuildLogger logger) {
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(this.threads, Math.max(1, this.stages.size())),
+            new ThreadFactory() {
+                private final AtomicInteger n = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "bzm-post-test-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        try {
+            for (Stage<?> s : this.stages) {
+                s.submit(pool);
+            }
+            boolean interrupted = false;
+            for (Stage<?> s : this.stages) {
+                if (interrupted) {
+                    s.buffer.replay(logger);
+                    s.future.cancel(true);
+                    logger.addErrorLogEntry(s.name + " was interrupted");
+                    continue;
+                }
+                interrupted = !s.join(start + s.timeout, logger);
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        this.wallMillis = System.currentTimeMillis() - start;
+    }
+
+    /**
+     * milliseconds the whole pipeline took, -1 before {@link #run}
+     */
+    public long wallMillis() {
+        return this.wallMillis;
+    }
+
+    public String report() {
+        StringBuilder sb = new StringBuilder("Post-test stages:");
+        for (Stage<?> s : this.stages) {
+            sb.append(" ").append(s.name).append("=").append(s.wallMillis).append("ms");
+            if (s.timedOut) {
+                sb.append(" (timed out)");
+            }
+            sb.append(",");
+        }
+        sb.append(" total=").append(this.wallMillis).append("ms");
+        return sb.toString();
+    }
+
+    public static class Stage<T> {
+        private final String name;
+        private final long timeout;
+        private final T fallback;
+        private final Function<BuildLogger, T> work;
+        private final BufferedBuildLogger buffer = new BufferedBuildLogger();
+        private Future<T> future;
+        private volatile long started;
+        private volatile long wallMillis = -1;
+        private boolean timedOut = false;
+        private T result;
+
+        Stage(String name, long timeout, T fallback, Function<BuildLogger, T> work) {
+            this.name = name;
+            this.timeout = timeout;
+            this.fallback = fallback;
+            this.work = work;
+            this.result = fallback;
+        }
+
+        private void submit(ExecutorService pool) {
+            this.future = pool.submit(() -> {
+                this.started = System.currentTimeMillis();
+                try {
+                    return this.work.apply(this.buffer.logger());
+                } finally {
+                    this.wallMillis = System.currentTimeMillis() - this.started;
+                }
+            });
+        }
+
+        /**
+         * @return false if the calling thread was interrupted
+         */
+        private boolean join(long deadline, BuildLogger logger) {
+            try {
+                this.result = this.future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                this.buffer.replay(logger);
+            } catch (TimeoutException e) {
+                this.buffer.replay(logger);
+                this.future.cancel(true);
+                this.timedOut = true;
+                this.wallMillis = this.started == 0 ? 0 : System.currentTimeMillis() - this.started;
+                logger.addErrorLogEntry(this.name + " did not finish in time and was cancelled");
+            } catch (ExecutionException e) {
+                this.buffer.replay(logger);
+                logger.addErrorLogEntry(this.name + " failed: " + e.getCause());
+            } catch (InterruptedException e) {
+                this.buffer.replay(logger);
+                this.future.cancel(true);
+                logger.addErrorLogEntry(this.name + " was interrupted");
+                return false;
+            }
+            return true;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * value returned by the stage, or the fallback if it did not complete
+         */
+        public T get() {
+            return this.result == null ? this.fallback : this.result;
+        }
+
+        public long wallMillis() {
+            return this.wallMillis;
+        }
+
+        public boolean timedOut() {
+            return this.timedOut;
+        }
+    }
+}
@@ -18,8 +18,13 @@ import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.atlassian.bamboo.build.logger.BuildLogger;
 import com.atlassian.bamboo.task.TaskContext;
@@ -27,18 +32,27 @@ import com.atlassian.bamboo.task.TaskState;
 import com.atlassian.util.concurrent.NotNull;
 import com.blazemeter.bamboo.plugin.api.Api;
 import com.blazemeter.bamboo.plugin.api.CIStatus;
+import com.blazemeter.bamboo.plugin.api.model.CiStatus;
+import com.blazemeter.bamboo.plugin.api.model.StartResult;
 import com.blazemeter.bamboo.plugin.configuration.constants.Constants;
 import com.blazemeter.bamboo.plugin.configuration.constants.JsonConstants;
+import com.blazemeter.bamboo.plugin.download.ArtifactCache;
+import com.blazemeter.bamboo.plugin.download.ResumableDownload;
+import com.blazemeter.bamboo.plugin.download.ResumingInputStream;
+import com.blazemeter.bamboo.plugin.download.Transfer;
+import com.blazemeter.bamboo.plugin.download.ZipExtractor;
 import com.blazemeter.bamboo.plugin.testresult.TestResult;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.TeeInputStream;
 import org.apache.commons.lang.StringUtils;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 public class ServiceManager {
-    private final static int BUFFER_SIZE = 2048;
     private final static int DELAY=10000;
+    public final static int DEFAULT_JTL_PARALLELISM=4;
+    public final static String JTL_UNZIP_FILE="file";
 
     private ServiceManager(){
 	}
@@ -103,34 +117,41 @@ public class ServiceManager {
         return note;
     }
 
-	public static String startTest(Api api, String testId, BuildLogger logger) {
+    /**
+     * Starts test selected as "id.type" in task configuration.
+     * The type suffix tells if the id is a collection, so the catalog is not
+     * looked up; a single test/collection lookup is done only if there is no suffix.
+     */
+	public static String startTest(Api api, String selectedTest, BuildLogger logger) {
         int countStartRequests = 0;
-        HashMap<String, String> startTestResp = new HashMap<String, String>();
+        StartResult started = null;
+        int point = selectedTest.indexOf(".");
+        String testId = point > 0 ? selectedTest.substring(0, point) : selectedTest;
+        String testType = point > 0 ? selectedTest.substring(point + 1) : null;
         try {
             logger.addBuildLogEntry("Trying to start test with testId="+testId);
-
+            boolean collection = api.collection(testId, testType);
             do {
-                boolean collection = api.collection(testId);
-                startTestResp=api.startTest(testId,collection);
+                started=api.start(testId,collection);
                 countStartRequests++;
                 if (countStartRequests > 5) {
                     logger.addErrorLogEntry("Could not start BlazeMeter Test with testId=" + testId);
-                    return startTestResp.get(JsonConstants.ID);
+                    return started.getMasterId();
                 }
-            } while (startTestResp.get(JsonConstants.ID).length()==0);
-            Integer.parseInt(startTestResp.get(JsonConstants.ID));
-            logger.addBuildLogEntry("Test with testId="+testId+" was started with masterId="+startTestResp.get(JsonConstants.ID));
+            } while (started.getMasterId().length()==0);
+            Integer.parseInt(started.getMasterId());
+            logger.addBuildLogEntry("Test with testId="+testId+" was started with masterId="+started.getMasterId());
         }catch (NumberFormatException e) {
-            logger.addErrorLogEntry("Error while starting BlazeMeter Test: "+startTestResp.get(JsonConstants.ID));
-            throw new NumberFormatException(startTestResp.get(JsonConstants.ID));
+            logger.addErrorLogEntry("Error while starting BlazeMeter Test: "+started.getMasterId());
+            throw new NumberFormatException(started.getMasterId());
         }catch (Exception e) {
             logger.addErrorLogEntry("Error while starting BlazeMeter Test [" + e.getMessage() + "]");
             logger.addErrorLogEntry("Check server,userKey,testId & proxy settings");
-            if(startTestResp.containsKey(JsonConstants.ERROR)){
-                logger.addErrorLogEntry(startTestResp.get(JsonConstants.ERROR));
+            if(started != null && started.getError() != null){
+                logger.addErrorLogEntry(started.getError());
             }
         }
-        return startTestResp.get(JsonConstants.ID);
+        return started == null ? null : started.getMasterId();
     }
 
     public static TestResult getReport(Api api, String masterId, BuildLogger logger) {
@@ -152,15 +173,15 @@ public class ServiceManager {
     }
 
     public static TaskState ciStatus(Api api, String masterId, BuildLogger logger) {
-        JSONObject jo;
+        CiStatus ci;
         TaskState taskState = TaskState.SUCCESS;
         JSONArray failures=new JSONArray();
         JSONArray errors=new JSONArray();
         try {
-            jo=api.getCIStatus(masterId);
-            logger.addBuildLogEntry("Test status object = " + jo.toString());
-            failures=jo.getJSONArray(JsonConstants.FAILURES);
-            errors=jo.getJSONArray(JsonConstants.ERRORS);
+            ci=api.ciStatus(masterId);
+            logger.addBuildLogEntry("Test status object = " + ci.toString());
+            failures=ci.getFailures();
+            errors=ci.getErrors();
         } catch (JSONException je) {
             logger.addErrorLogEntry("No thresholds on server: setting 'success' for CIStatus ");
         } catch (Exception e) {
@@ -208,15 +229,114 @@ public class ServiceManager {
     }
 
 
-    public static void downloadJtlReports(Api api,String masterId, File jtlDir, BuildLogger logger){
+    public static List<File> downloadJtlReports(Api api,String masterId, File jtlDir, BuildLogger logger){
+        return downloadJtlReports(api, masterId, jtlDir, ArtifactCache.getInstance(), logger);
+    }
+
+    /**
+     * Downloads reports of all sessions, at most blazemeter.jtl.parallelism at a time.
+     * Log entries of each session are written together once its download is over.
+     *
+     * @return directories the reports were extracted to, in order of sessions
+     */
+    public static List<File> downloadJtlReports(Api api, String masterId, File jtlDir, ArtifactCache cache, BuildLogger logger) {
         List<String> sessionsIds = null;
+        List<File> dirs = new ArrayList<File>();
         try {
-            sessionsIds = api.getListOfSessionIds(masterId);
-            for (String s : sessionsIds) {
-                downloadJtlReport(api, s, jtlDir, logger);
-            }
+            sessionsIds = api.sessions(masterId).getIds();
         } catch (Throwable e) {
             logger.addErrorLogEntry("Failed to download jtl reports: "+e.getMessage());
+            return dirs;
+        }
+        if (sessionsIds.isEmpty()) {
+            return dirs;
+        }
+        int parallelism = Math.max(1, Math.min(sessionsIds.size(),
+            Integer.getInteger(Constants.JTL_PARALLELISM, DEFAULT_JTL_PARALLELISM)));
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            private final AtomicInteger n = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "bzm-jtl-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        logger.addBuildLogEntry("Downloading jtl reports of " + sessionsIds.size() + " sessions, "
+            + parallelism + " at a time");
+        long start = System.currentTimeMillis();
+        long bytes = 0;
+        long saved = 0;
+        int cached = 0;
+        int done = 0;
+        int failed = 0;
+        Map<String, File> extracted = new HashMap<String, File>();
+        try {
+            CompletionService<SessionDownload> downloads = new ExecutorCompletionService<SessionDownload>(pool);
+            for (String s : sessionsIds) {
+                downloads.submit(() -> {
+                    SessionDownload d = new SessionDownload(s);
+                    long t = System.currentTimeMillis();
+                    fetchJtlReport(api, cache, d, jtlDir, d.log.logger());
+                    d.millis = System.currentTimeMillis() - t;
+                    return d;
+                });
+            }
+            for (int i = 0; i < sessionsIds.size(); i++) {
+                SessionDownload d = downloads.take().get();
+                d.log.replay(logger);
+                done++;
+                if (d.bytes < 0) {
+                    failed++;
+                } else if (d.cached) {
+                    cached++;
+                    saved += d.bytes;
+                } else {
+                    bytes += d.bytes;
+                }
+                if (d.bytes >= 0) {
+                    extracted.put(d.sessionId, d.dir);
+                }
+                logger.addBuildLogEntry("Jtl report of sessionId = " + d.sessionId
+                    + (d.bytes < 0 ? " failed" : ": " + d.bytes + " bytes" + (d.cached ? " from cache" : "")
+                    + " in " + d.millis + " ms")
+                    + " (" + done + "/" + sessionsIds.size() + ")");
+            }
+        } catch (InterruptedException e) {
+            logger.addErrorLogEntry("Downloading jtl reports was interrupted after " + done + "/" + sessionsIds.size());
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.addErrorLogEntry("Failed to download jtl reports: "+e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        long millis = Math.max(1, System.currentTimeMillis() - start);
+        logger.addBuildLogEntry("Downloaded jtl reports of " + (done - failed) + "/" + sessionsIds.size()
+            + " sessions: " + String.format("%.1f MB in %.1f s, %.2f MB/s", bytes / 1048576.0, millis / 1000.0,
+            bytes / 1048576.0 / (millis / 1000.0)));
+        if (cache.enabled()) {
+            logger.addBuildLogEntry(String.format("Artifact cache: %d/%d hits (%d%%), %.1f MB not downloaded",
+                cached, sessionsIds.size(), cached * 100 / sessionsIds.size(), saved / 1048576.0));
+        }
+        for (String s : sessionsIds) {
+            if (extracted.containsKey(s)) {
+                dirs.add(extracted.get(s));
+            }
+        }
+        return dirs;
+    }
+
+    private static class SessionDownload {
+        private final String sessionId;
+        private final BufferedBuildLogger log = new BufferedBuildLogger();
+        private long bytes = -1;
+        private boolean cached = false;
+        private File dir;
+        private long millis;
+
+        SessionDownload(String sessionId) {
+            this.sessionId = sessionId;
         }
     }
 
@@ -233,46 +353,77 @@ public class ServiceManager {
     }
 
 
-    public static void downloadJtlReport(Api api, String sessionId, File jtlDir,BuildLogger logger) {
+    public static long downloadJtlReport(Api api, String sessionId, File jtlDir,BuildLogger logger) {
+        return downloadJtlReport(api, sessionId, jtlDir, ArtifactCache.getInstance(), logger);
+    }
+
+    /**
+     * @return compressed bytes downloaded or taken from the cache, -1 if the report could not be downloaded
+     */
+    public static long downloadJtlReport(Api api, String sessionId, File jtlDir, ArtifactCache cache, BuildLogger logger) {
+        SessionDownload d = new SessionDownload(sessionId);
+        fetchJtlReport(api, cache, d, jtlDir, logger);
+        return d.bytes;
+    }
 
+    /**
+     * Takes the session zip from the artifact cache if it is there. Otherwise downloads through the API
+     * client and extracts it straight from the response, keeping a copy for the cache; if that fails,
+     * or blazemeter.jtl.unzip is "file", the zip is saved to a file first and its entries are checked
+     * while extracting.
+     */
+    private static void fetchJtlReport(Api api, ArtifactCache cache, SessionDownload d, File jtlDir, BuildLogger logger) {
+        String sessionId = d.sessionId;
         String dataUrl=null;
         URL url=null;
         try {
-            JSONObject jo=api.retrieveJtlZip(sessionId);
-            JSONArray data=jo.getJSONObject(JsonConstants.RESULT).getJSONArray(JsonConstants.DATA);
-            for(int i=0;i<data.length();i++){
-                String title=data.getJSONObject(i).getString("title");
-                if(title.equals("Zip")){
-                    dataUrl=data.getJSONObject(i).getString(JsonConstants.DATA_URL);
-                    break;
-                }
-            }
+            dataUrl=api.jtlDataUrls(sessionId).getZipUrl();
             File jtlZip=new File(jtlDir + "/" +sessionId+"-"+ Constants.BM_ARTEFACTS);
             url=new URL(dataUrl);
             logger.addBuildLogEntry("Jtl url = " + url.toString() + " sessionId = " + sessionId);
-            int i = 1;
-            boolean jtl = false;
-            while (!jtl && i < 4) {
-                try {
-                    logger.addBuildLogEntry("Downloading JTLZIP for sessionId = " + sessionId + " attemp # " + i);
-                    int conTo = (int) (10000 * Math.pow(3, i - 1));
-                    logger.addBuildLogEntry("Saving ZIP to " + jtlZip.getAbsolutePath());
-                    FileUtils.copyURLToFile(url, jtlZip,conTo,30000);
-                    jtl = true;
-                } catch (Exception e) {
-                    logger.addErrorLogEntry(Constants.UNABLE_TO_GET_JTL_ZIP + url + ", " + e);
-                } finally {
-                    i++;
+            String jtlZipCanonicalPath=jtlZip.getCanonicalPath();
+            File destDir = new File(jtlZipCanonicalPath.substring(0,jtlZipCanonicalPath.length()-4));
+            d.dir = destDir;
+            long size = cache.get(sessionId, dataUrl, jtlZip);
+            if (size >= 0) {
+                d.cached = true;
+                logger.addBuildLogEntry("Jtl report of sessionId = " + sessionId + ": " + size
+                    + " bytes taken from artifact cache");
+                unzip(jtlZip.getAbsolutePath(), destDir.getAbsolutePath(), logger);
+                FileUtils.deleteQuietly(jtlZip);
+            } else {
+                if (!JTL_UNZIP_FILE.equals(System.getProperty(Constants.JTL_UNZIP))) {
+                    try {
+                        logger.addBuildLogEntry("Extracting JTLZIP for sessionId = " + sessionId + " to " + destDir.getAbsolutePath());
+                        ResumingInputStream in = new ResumingInputStream(api, dataUrl, 10000, ResumableDownload.DEFAULT_ATTEMPTS - 1);
+                        Transfer t = ZipExtractor.extract(cache.enabled() ? new TeeInputStream(in, new FileOutputStream(jtlZip), true) : in,
+                            destDir, logger);
+                        logger.addBuildLogEntry("Jtl report of sessionId = " + sessionId + ": " + t
+                            + (in.resumes() > 0 ? ", resumed " + in.resumes() + " times" : ""));
+                        cache.put(sessionId, dataUrl, jtlZip);
+                        size = t.getRead();
+                    } catch (Exception e) {
+                        logger.addErrorLogEntry("Failed to extract " + url + " while downloading, " + e
+                            + "; downloading zip file");
+                    } finally {
+                        FileUtils.deleteQuietly(jtlZip);
+                    }
+                }
+                if (size < 0) {
+                    if (downloadJtlZip(api, dataUrl, jtlZip, sessionId, logger)) {
+                        size = jtlZip.length();
+                        cache.put(sessionId, dataUrl, jtlZip);
+                    }
+                    unzip(jtlZip.getAbsolutePath(), destDir.getAbsolutePath(), logger);
+                    FileUtils.deleteQuietly(jtlZip);
                 }
             }
-            String jtlZipCanonicalPath=jtlZip.getCanonicalPath();
-            unzip(jtlZip.getAbsolutePath(), jtlZipCanonicalPath.substring(0,jtlZipCanonicalPath.length()-4), logger);
             File sample_jtl=new File(jtlDir,"sample.jtl");
             File bm_kpis_jtl=new File(jtlDir,Constants.BM_KPIS);
             if(sample_jtl.exists()){
                 sample_jtl.renameTo(bm_kpis_jtl);
             }
-            FileUtils.deleteQuietly(jtlZip);
+            d.bytes = size;
         } catch (JSONException e) {
             logger.addErrorLogEntry(Constants.UNABLE_TO_GET_JTL_ZIP+url+" "+e.getMessage());
         } catch (MalformedURLException e) {
@@ -284,6 +435,23 @@ public class ServiceManager {
         }
     }
 
+    /**
+     * Keeps what an interrupted attempt got in jtlZip.part and continues from there.
+     */
+    private static boolean downloadJtlZip(Api api, String url, File jtlZip, String sessionId, BuildLogger logger) {
+        try {
+            logger.addBuildLogEntry("Saving ZIP for sessionId = " + sessionId + " to " + jtlZip.getAbsolutePath());
+            ResumableDownload download = new ResumableDownload(api, url, jtlZip);
+            Transfer t = download.download(logger);
+            logger.addBuildLogEntry("Jtl report of sessionId = " + sessionId + ": " + t
+                + (download.resumed() > 0 ? ", resumed " + download.resumed() + " times" : ""));
+            return true;
+        } catch (Exception e) {
+            logger.addErrorLogEntry(Constants.UNABLE_TO_GET_JTL_ZIP + url + ", " + e);
+            return false;
+        }
+    }
+
 
     public static JSONArray prepareSessionProperties(String sesssionProperties, BuildLogger logger) throws JSONException {
         List<String> propList = Arrays.asList(sesssionProperties.split(","));
@@ -372,48 +540,7 @@ public class ServiceManager {
     public static void unzip(String srcZipFileName,
                              String destDirectoryName, BuildLogger logger) {
         try {
-            BufferedInputStream bufIS = null;
-            // create the destination directory structure (if needed)
-            File destDirectory = new File(destDirectoryName);
-            destDirectory.mkdirs();
-
-            // open archive for reading
-            File file = new File(srcZipFileName);
-            ZipFile zipFile = new ZipFile(file, ZipFile.OPEN_READ);
-
-            //for every zip archive entry do
-            Enumeration<? extends ZipEntry> zipFileEntries = zipFile.entries();
-            while (zipFileEntries.hasMoreElements()) {
-                ZipEntry entry = (ZipEntry) zipFileEntries.nextElement();
-                    logger.addBuildLogEntry("\tExtracting jtl report: " + entry);
-
-                    //create destination file
-                    File destFile = new File(destDirectory, entry.getName());
-
-                    //create parent directories if needed
-                    File parentDestFile = destFile.getParentFile();
-                    parentDestFile.mkdirs();
-
-                    bufIS = new BufferedInputStream(
-                            zipFile.getInputStream(entry));
-                    int currentByte;
-
-                    // buffer for writing file
-                    byte data[] = new byte[BUFFER_SIZE];
-
-                    // write the current file to disk
-                    FileOutputStream fOS = new FileOutputStream(destFile);
-                    BufferedOutputStream bufOS = new BufferedOutputStream(fOS, BUFFER_SIZE);
-
-                    while ((currentByte = bufIS.read(data, 0, BUFFER_SIZE)) != -1) {
-                        bufOS.write(data, 0, currentByte);
-                    }
-
-                    // close BufferedOutputStream
-                    bufOS.flush();
-                    bufOS.close();
-            }
-            bufIS.close();
+            ZipExtractor.extract(new File(srcZipFileName), new File(destDirectoryName), logger);
         } catch (Exception e) {
             logger.addErrorLogEntry("Failed to unzip report: check that it is downloaded");
         }
@@ -26,12 +26,26 @@ import com.atlassian.bamboo.task.TaskState;
 import com.atlassian.bamboo.v2.build.BuildContext;
 import com.blazemeter.bamboo.plugin.api.Api;
 import com.blazemeter.bamboo.plugin.api.ApiImpl;
+import com.blazemeter.bamboo.plugin.api.CatalogCache;
+import com.blazemeter.bamboo.plugin.api.ConditionalCache;
+import com.blazemeter.bamboo.plugin.api.HttpClientRegistry;
 import com.blazemeter.bamboo.plugin.api.HttpLogger;
+import com.blazemeter.bamboo.plugin.api.RateLimiter;
+import com.blazemeter.bamboo.plugin.api.SingleFlight;
+import com.blazemeter.bamboo.plugin.api.model.MasterStatusSnapshot;
 import com.blazemeter.bamboo.plugin.configuration.constants.AdminServletConst;
 import com.blazemeter.bamboo.plugin.configuration.constants.Constants;
+import com.blazemeter.bamboo.plugin.polling.MasterStatusPoller;
+import com.blazemeter.bamboo.plugin.polling.PollingStrategy;
+import com.blazemeter.bamboo.plugin.polling.TerminationDetector;
+import com.blazemeter.bamboo.plugin.testresult.JtlAnalyzer;
 import com.blazemeter.bamboo.plugin.testresult.TestResult;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import okhttp3.Credentials;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -43,8 +57,8 @@ import java.io.IOException;
 
 @Component
 public class TaskType implements com.atlassian.bamboo.task.TaskType {
-    private static final int CHECK_INTERVAL = 30000;
     private static final int INIT_TEST_TIMEOUT = 600000;
+    private static final int PROGRESS_LOG_INTERVAL = 60000;
 
     String testId;
     String jmeterProps;
@@ -55,6 +69,8 @@ public class TaskType implements com.atlassian.bamboo.task.TaskType {
     Api api;
     boolean jtlReport = false;
     boolean junitReport = false;
+    PollingStrategy polling;
+    MasterStatusSnapshot lastStatus;
     File rootDirectory;
 
     ProcessService processService;
@@ -93,6 +109,7 @@ public class TaskType implements com.atlassian.bamboo.task.TaskType {
         this.notes = configMap.get(Constants.SETTINGS_NOTES);
         this.jtlPath = configMap.get(Constants.SETTINGS_JTL_PATH);
         this.junitPath = configMap.get(Constants.SETTINGS_JUNIT_PATH);
+        this.polling = PollingStrategy.forName(configMap.get(Constants.SETTINGS_POLLING));
         if (StringUtils.isBlank(api_id)) {
             logger.addErrorLogEntry("BlazeMeter user key not defined!");
             return resultBuilder.failed().build();
@@ -115,7 +132,7 @@ public class TaskType implements com.atlassian.bamboo.task.TaskType {
         logger.addBuildLogEntry("Attempting to start test with id:" + testId);
         logger.addBuildLogEntry("Http log will be available at " + httpLog);
         try {
-            this.masterId = ServiceManager.startTest(api, this.testId, logger);
+            this.masterId = ServiceManager.startTest(api, testId, logger);
         } catch (NumberFormatException e) {
             return resultBuilder.failed().build();
         }
@@ -124,7 +141,7 @@ public class TaskType implements com.atlassian.bamboo.task.TaskType {
         String reportUrl = null;
         if (masterId == null || masterId.length() == 0) {
             logger.addErrorLogEntry("Failed to start test.");
-            ((HttpLogger) httpLogger).close();
+            this.closeHttpLog(httpLogger, logger);
             return resultBuilder.failed().build();
         } else {
             reportUrl = ServiceManager.getReportUrl(api, masterId, logger);
@@ -147,8 +164,9 @@ public class TaskType implements com.atlassian.bamboo.task.TaskType {
         }
         do {
             status = this.api.masterStatus(masterId);
+            this.lastStatus = this.lastStatus();
             try {
-                Thread.currentThread().sleep(CHECK_INTERVAL);
+                Thread.sleep(this.polling.next(PollingStrategy.Phase.INIT, this.lastStatus));
             } catch (InterruptedException e) {
                 logger.addErrorLogEntry("BlazeMeter test with id =  " + this.testId + " was interrupted from Bamboo");
                 ServiceManager.stopTestMaster(this.api, this.masterId, logger);
@@ -160,7 +178,7 @@ public class TaskType implements com.atlassian.bamboo.task.TaskType {
                 logger.addBuildLogEntry("Check if the test is initialized...");
             } catch (Exception e) {
                 logger.addErrorLogEntry(e.getMessage());
-                ((HttpLogger) httpLogger).close();
+                this.closeHttpLog(httpLogger, logger);
                 return resultBuilder.failedWithError().build();
             }
             initTimeOutPassed = System.currentTimeMillis() > testInitStart + INIT_TEST_TIMEOUT;
@@ -168,83 +186,122 @@ public class TaskType implements com.atlassian.bamboo.task.TaskType {
 
         if (status.equals(TestStatus.NotRunning)) {
             logger.addErrorLogEntry("Test was not initialized, marking build as failed.");
-            ((HttpLogger) httpLogger).close();
+            this.closeHttpLog(httpLogger, logger);
             return resultBuilder.failedWithError().build();
         }
         logger.addBuildLogEntry("Test was initialized on server, testId=" + testId);
         logger.addBuildLogEntry("Test report is available via link: " + reportUrl);
 
         long timeOfStart = System.currentTimeMillis();
-        while (status.equals(TestStatus.Running)) {
-            try {
-                Thread.currentThread().sleep(CHECK_INTERVAL);
-            } catch (InterruptedException e) {
-                logger.addErrorLogEntry("BlazeMeter test with id =  " + this.testId + " was interrupted from Bamboo");
-                ServiceManager.stopTestMaster(this.api, this.masterId, logger);
-                logger.addErrorLogEntry("masterId = " + this.masterId + " was finalized.");
-                break;
+        if (status.equals(TestStatus.Running)) {
+            CompletableFuture<MasterStatusSnapshot> end = MasterStatusPoller.getInstance().watch(this.api, this.masterId,
+                this.polling, PollingStrategy.Phase.RUNNING, this.lastStatus, s -> s.getTestStatus() != TestStatus.Running);
+            while (true) {
+                try {
+                    this.lastStatus = end.get(PROGRESS_LOG_INTERVAL, TimeUnit.MILLISECONDS);
+                    status = this.lastStatus.getTestStatus();
+                    break;
+                } catch (TimeoutException e) {
+                    logger.addBuildLogEntry("Check if the test is still running. Time passed since start:" + ((System.currentTimeMillis() - timeOfStart) / 1000 / 60) + " minutes.");
+                } catch (InterruptedException e) {
+                    end.cancel(true);
+                    logger.addErrorLogEntry("BlazeMeter test with id =  " + this.testId + " was interrupted from Bamboo");
+                    ServiceManager.stopTestMaster(this.api, this.masterId, logger);
+                    logger.addErrorLogEntry("masterId = " + this.masterId + " was finalized.");
+                    break;
+                } catch (ExecutionException e) {
+                    logger.addErrorLogEntry("Error while getting master status: " + e.getCause().getMessage());
+                    status = TestStatus.Error;
+                    break;
+                }
             }
-
-            logger.addBuildLogEntry("Check if the test is still running. Time passed since start:" + ((System.currentTimeMillis() - timeOfStart) / 1000 / 60) + " minutes.");
-            status = this.api.masterStatus(masterId);
             if (status.equals(TestStatus.NotRunning)) {
+                this.polling.ended();
                 logger.addBuildLogEntry("Test is finished earlier then estimated! Time passed since start:" + ((System.currentTimeMillis() - timeOfStart) / 1000 / 60) + " minutes.");
-                break;
             } else if (status.equals(TestStatus.NotFound)) {
                 logger.addErrorLogEntry("BlazeMeter test not found!");
-                ((HttpLogger) httpLogger).close();
+                this.closeHttpLog(httpLogger, logger);
                 return resultBuilder.failed().build();
             }
         }
 
-        boolean active = true;
-        int activeCheck = 1;
-        while (active && activeCheck < 11) {
-            try {
-                Thread.currentThread().sleep(CHECK_INTERVAL);
-            } catch (InterruptedException e) {
-                logger.addErrorLogEntry("BlazeMeter test = " + this.testId + " was interrupted during active check");
-                break;
-            }
-            logger.addBuildLogEntry("Checking, if test is active, testId = " + this.testId + ", retry # " + activeCheck);
-            active = this.api.active(this.testId);
-            activeCheck++;
+        TerminationDetector termination = new TerminationDetector(this.api);
+        logger.addBuildLogEntry("Checking, if test is active, testId = " + this.testId);
+        try {
+            termination.await(this.testId, this.masterId);
+        } catch (InterruptedException e) {
+            logger.addErrorLogEntry("BlazeMeter test = " + this.testId + " was interrupted during active check");
         }
+        logger.addBuildLogEntry(termination.report());
+        context.getBuildContext().getBuildResult().getCustomBuildData().put(Constants.TERMINATION_SAVED,
+            String.valueOf(termination.saved()));
         //BlazeMeter test stopped due to user test duration setup reached
 
-        TestResult result = ServiceManager.getReport(this.api, this.masterId, logger);
-        if (this.jtlReport) {
-            File jtl = null;
-            try {
-                jtl = ServiceManager.resolvePath(context, this.jtlPath, logger);
-            } catch (Exception e) {
-                logger.addBuildLogEntry("Failed to create directory for downloading jtl report.");
-                jtl = dd;
-                logger.addBuildLogEntry("Default directory " + jtl.getAbsolutePath() + " will be used.");
+        PostTestPipeline post = new PostTestPipeline();
+        PostTestPipeline.Stage<TestResult> aggregate = post.add("Aggregate report", null,
+            log -> ServiceManager.getReport(this.api, this.masterId, log));
+        PostTestPipeline.Stage<JtlAnalyzer> jtlStage = post.add("JTL report", null, log -> {
+            if (this.jtlReport) {
+                File jtl = null;
+                try {
+                    jtl = ServiceManager.resolvePath(context, this.jtlPath, log);
+                } catch (Exception e) {
+                    log.addBuildLogEntry("Failed to create directory for downloading jtl report.");
+                    jtl = dd;
+                    log.addBuildLogEntry("Default directory " + jtl.getAbsolutePath() + " will be used.");
+                }
+                log.addBuildLogEntry("Requesting JTL report for test with masterId = " + this.masterId);
+                return JtlAnalyzer.analyze(ServiceManager.downloadJtlReports(this.api, this.masterId, jtl, log), log);
+            } else {
+                log.addBuildLogEntry("JTL report won't be requested for test with masterId = " + this.masterId);
             }
-            logger.addBuildLogEntry("Requesting JTL report for test with masterId = " + this.masterId);
-            ServiceManager.downloadJtlReports(this.api, this.masterId, jtl, logger);
-        } else {
-            logger.addBuildLogEntry("JTL report won't be requested for test with masterId = " + this.masterId);
-        }
-        if (this.junitReport) {
-            File junit = null;
-            logger.addBuildLogEntry("Requesting Junit report for test with masterId = " + this.masterId);
-            try {
-                junit = ServiceManager.resolvePath(context, this.junitPath, logger);
-            } catch (Exception e) {
-                logger.addBuildLogEntry("Failed to create directory for downloading junit report.");
-                junit = dd;
-                logger.addBuildLogEntry("Default directory " + junit.getAbsolutePath() + " will be used.");
+            return null;
+        });
+        post.add("Junit report", null, log -> {
+            if (this.junitReport) {
+                File junit = null;
+                log.addBuildLogEntry("Requesting Junit report for test with masterId = " + this.masterId);
+                try {
+                    junit = ServiceManager.resolvePath(context, this.junitPath, log);
+                } catch (Exception e) {
+                    log.addBuildLogEntry("Failed to create directory for downloading junit report.");
+                    junit = dd;
+                    log.addBuildLogEntry("Default directory " + junit.getAbsolutePath() + " will be used.");
+                }
+                log.addBuildLogEntry("Requesting JTL report for test with masterId = " + this.masterId);
+                ServiceManager.downloadJunitReport(this.api, this.masterId, junit, log);
+            } else {
+                log.addBuildLogEntry("Junit report won't be requested for test with masterId = " + this.masterId);
             }
-            logger.addBuildLogEntry("Requesting JTL report for test with masterId = " + this.masterId);
-            ServiceManager.downloadJunitReport(this.api, this.masterId, junit, logger);
-        } else {
-            logger.addBuildLogEntry("Junit report won't be requested for test with masterId = " + this.masterId);
+            return null;
+        });
+        // not getting CI status is treated as "no thresholds on server", same as in ServiceManager.ciStatus
+        PostTestPipeline.Stage<TaskState> ci = post.add("CI status", TaskState.SUCCESS,
+            log -> ServiceManager.ciStatus(this.api, this.masterId, log));
+        post.run(logger);
+        TaskState ciStatus = ci.get();
+        if (jtlStage.get() != null && jtlStage.get().samples() > 0) {
+            TestResult result = aggregate.get();
+            if (result == null) {
+                result = new TestResult(jtlStage.get());
+            } else {
+                result.fromJtl(jtlStage.get());
+            }
+            logger.addBuildLogEntry("With downloaded jtl reports: " + result);
         }
-
-        TaskState ciStatus = ServiceManager.ciStatus(this.api, this.masterId, logger);
-        ((HttpLogger) httpLogger).close();
+        logger.addBuildLogEntry(post.report());
+        logger.addBuildLogEntry(HttpClientRegistry.getInstance().stats());
+        logger.addBuildLogEntry(CatalogCache.getInstance().stats());
+        logger.addBuildLogEntry(ConditionalCache.getInstance().stats());
+        logger.addBuildLogEntry(SingleFlight.getInstance().stats());
+        logger.addBuildLogEntry(RateLimiter.getInstance().stats());
+        logger.addBuildLogEntry(this.polling.report());
+        logger.addBuildLogEntry(MasterStatusPoller.getInstance().stats());
+        logger.addBuildLogEntry("BlazeMeter API calls of this build:");
+        for (String line : this.api.metrics().report()) {
+            logger.addBuildLogEntry(line);
+        }
+        this.closeHttpLog(httpLogger, logger);
         switch (ciStatus) {
             case FAILED:
                 return resultBuilder.failed().build();
@@ -256,4 +313,20 @@ public class TaskType implements com.atlassian.bamboo.task.TaskType {
                 return resultBuilder.success().build();
         }
     }
+
+    private MasterStatusSnapshot lastStatus() {
+        try {
+            return this.api.snapshot(this.masterId);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private void closeHttpLog(HttpLogger httpLogger, BuildLogger logger) {
+        httpLogger.close();
+        logger.addBuildLogEntry(httpLogger.stats());
+        if (httpLogger.dropped() > 0) {
+            logger.addBuildLogEntry(httpLogger.dropped() + " http-log records were dropped because the log writer could not keep up");
+        }
+    }
 }
@@ -16,9 +16,16 @@ package com.blazemeter.bamboo.plugin.api;
 
 import com.google.common.collect.LinkedHashMultimap;
 import com.blazemeter.bamboo.plugin.TestStatus;
+import com.blazemeter.bamboo.plugin.api.model.CiStatus;
+import com.blazemeter.bamboo.plugin.api.model.JtlDataUrls;
+import com.blazemeter.bamboo.plugin.api.model.MasterStatus;
+import com.blazemeter.bamboo.plugin.api.model.MasterStatusSnapshot;
+import com.blazemeter.bamboo.plugin.api.model.SessionList;
+import com.blazemeter.bamboo.plugin.api.model.StartResult;
 import java.util.Collection;
 import java.util.Map;
 import okhttp3.MediaType;
+import okhttp3.Response;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -38,14 +45,26 @@ public interface Api {
     String APP_JSON = "application/json";
     String APP_JSON_UTF_8 = "application/json; charset=UTF-8";
     String PROXY_AUTHORIZATION = "Proxy-Authorization";
+    String RANGE = "Range";
+    String IF_RANGE = "If-Range";
+    String CONTENT_RANGE = "Content-Range";
     String APP_KEY = "jnk100x987c06f4e10c4";
 
     TestStatus masterStatus(String id);
 
     int getTestMasterStatusCode(String id);
 
+    /**
+     * Status of the master, shared by all callers for a few seconds.
+     */
+    MasterStatusSnapshot snapshot(String masterId) throws IOException;
+
+    MasterStatus status(String masterId) throws IOException;
+
     HashMap<String, String> startTest(String testId, boolean collection) throws JSONException, IOException;
 
+    StartResult start(String testId, boolean collection) throws IOException;
+
     JSONObject stopTest(String testId) throws IOException, JSONException;
 
     void terminateTest(String testId) throws IOException;
@@ -54,20 +73,56 @@ public interface Api {
 
     LinkedHashMultimap<String, String> testsMultiMap() throws IOException, MessagingException;
 
+    CatalogCrawler.Result catalog(boolean reload);
+
     LinkedHashMultimap<String, String> collectionsMultiMap(int workspaceId) throws IOException, MessagingException;
 
+    LinkedHashMultimap<String, String> workspaceTests(int workspaceId) throws IOException, JSONException;
+
+    PageIterator<CatalogDecoder.Entry> tests(int workspaceId);
+
+    PageIterator<CatalogDecoder.Entry> collections(int workspaceId);
+
+    boolean testExists(String testKey) throws IOException;
+
+    /**
+     * @param testId id of test or collection without type suffix
+     * @return id of workspace owning the test, null if no workspace has it
+     */
+    Integer workspaceOf(String testId) throws IOException;
+
     JSONObject user() throws IOException, JSONException;
 
     JSONObject getCIStatus(String sessionId) throws JSONException, IOException;
 
+    CiStatus ciStatus(String masterId) throws IOException;
+
     boolean active(String testId);
 
+    boolean active(String testId, int workspaceId) throws IOException;
+
     String retrieveJUNITXML(String sessionId) throws IOException;
 
     JSONObject retrieveJtlZip(String sessionId) throws IOException, JSONException;
 
+    JtlDataUrls jtlDataUrls(String sessionId) throws IOException;
+
+    /**
+     * GET of an artifact, e.g. a session zip, through the API client; only headers go to http-log.
+     * Body of the response must be closed by the caller.
+     *
+     * @param offset    first byte wanted; if above 0 a Range request is sent and the server may answer
+     *                  206 with the rest or 200 with the whole artifact
+     * @param validator ETag or Last-Modified of the artifact already partly downloaded, sent as If-Range;
+     *                  may be null
+     * @throws IOException if the response is not successful
+     */
+    Response download(String url, int connectTimeoutMillis, long offset, String validator) throws IOException;
+
     List<String> getListOfSessionIds(String masterId) throws IOException, JSONException;
 
+    SessionList sessions(String masterId) throws IOException;
+
     JSONObject generatePublicToken(String sessionId) throws IOException, JSONException;
 
     String getServerUrl();
@@ -82,8 +137,14 @@ public interface Api {
 
     HashMap<Integer, String> workspaces();
 
+    HashMap<Integer, String> workspaces(int accountId) throws IOException, JSONException;
+
     Map<String, Collection<String>> getTestsMultiMap();
 
     boolean collection(String testId) throws Exception;
+
+    boolean collection(String testId, String testType) throws Exception;
+
+    ApiMetrics metrics();
 }
 
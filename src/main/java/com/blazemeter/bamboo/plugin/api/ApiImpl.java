@@ -14,6 +14,12 @@
 
 package com.blazemeter.bamboo.plugin.api;
 
+import com.blazemeter.bamboo.plugin.api.model.CiStatus;
+import com.blazemeter.bamboo.plugin.api.model.JtlDataUrls;
+import com.blazemeter.bamboo.plugin.api.model.MasterStatus;
+import com.blazemeter.bamboo.plugin.api.model.MasterStatusSnapshot;
+import com.blazemeter.bamboo.plugin.api.model.SessionList;
+import com.blazemeter.bamboo.plugin.api.model.StartResult;
 import com.blazemeter.bamboo.plugin.configuration.constants.Constants;
 import com.blazemeter.bamboo.plugin.configuration.constants.JsonConstants;
 import com.blazemeter.bamboo.plugin.TestStatus;
@@ -29,13 +35,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 public class ApiImpl implements Api {
 
+    public static final long DEFAULT_STATUS_TTL = 2000;
+
     private Logger logger = (Logger) LoggerFactory.getLogger("com.blazemeter");
 
     private String proxyHost = null;
@@ -49,8 +59,50 @@ public class ApiImpl implements Api {
     private String serverUrl;
     UrlManager urlManager;
     private OkHttpClient okhttp = null;
+    private OkHttpClient downloads = null;
+    private ApiMetrics metrics = new ApiMetrics();
+
+    private int pageSize = Integer.getInteger(Constants.CATALOG_PAGE_SIZE, PageIterator.DEFAULT_PAGE_SIZE);
+
+    private long statusTtl = Long.getLong(Constants.MASTER_STATUS_TTL, DEFAULT_STATUS_TTL);
+    private ConcurrentHashMap<String, MasterStatusSnapshot> snapshots = new ConcurrentHashMap<String, MasterStatusSnapshot>();
 
     public ApiImpl() {
+        initProxy();
+        okhttp = sharedClient().build();
+        downloads = okhttp;
+    }
+
+    public ApiImpl(String credentials, String blazeMeterUrl) {
+        initProxy();
+        this.credentials = credentials;
+        this.serverUrl = blazeMeterUrl;
+        this.urlManager = new UrlManagerV3Impl(this.serverUrl);
+        this.metrics = new ApiMetrics(this.serverUrl);
+        okhttp = sharedClient().build();
+        downloads = okhttp;
+    }
+
+    public ApiImpl(String credentials, String blazeMeterUrl, HttpLogger httpl) {
+        initProxy();
+        this.credentials = credentials;
+        this.serverUrl = blazeMeterUrl;
+        this.urlManager = new UrlManagerV3Impl(this.serverUrl);
+        this.metrics = new ApiMetrics(this.serverUrl);
+        HttpLoggingInterceptor httpLog;
+        httpLog = new HttpLoggingInterceptor(httpl);
+        httpLog.setLevel(HttpLoggingInterceptor.Level.BODY);
+        okhttp = sharedClient()
+            .addInterceptor(httpLog).build();
+        // logging bodies would buffer whole artifacts in memory
+        HttpLoggingInterceptor headersLog = new HttpLoggingInterceptor(httpl);
+        headersLog.setLevel(HttpLoggingInterceptor.Level.HEADERS);
+        OkHttpClient.Builder d = okhttp.newBuilder();
+        d.interceptors().remove(httpLog);
+        downloads = d.addInterceptor(headersLog).build();
+    }
+
+    private void initProxy() {
         try {
             proxyHost = System.getProperty(Constants.PROXY_HOST);
             if (!StringUtils.isBlank(this.proxyHost)) {
@@ -85,88 +137,47 @@ public class ApiImpl implements Api {
                     }
                 };
             }
-            okhttp = new OkHttpClient.Builder()
-                .addInterceptor(new RetryInterceptor(this.logger))
-                .connectTimeout(10, TimeUnit.SECONDS)
-                .readTimeout(60, TimeUnit.SECONDS)
-                .proxy(this.proxy)
-                .proxyAuthenticator(this.auth).build();
         } catch (Exception ex) {
             this.logger.warn("ERROR Instantiating HTTPClient. Exception received: ", ex);
         }
-
     }
 
-    public ApiImpl(String credentials, String blazeMeterUrl) {
-        this();
-        this.credentials = credentials;
-        this.serverUrl = blazeMeterUrl;
-        this.urlManager = new UrlManagerV3Impl(this.serverUrl);
+    private OkHttpClient.Builder sharedClient() {
+        OkHttpClient.Builder builder = HttpClientRegistry.getInstance().newBuilder(this.serverUrl, this.proxy, this.auth,
+            this.proxyUser, this.proxyPass);
+        builder.interceptors().add(0, this.metrics.callInterceptor());
+        builder.interceptors().add(RateLimiter.getInstance().interceptor(this.credentials, this.serverUrl));
+        builder.interceptors().add(this.metrics.attemptInterceptor());
+        builder.networkInterceptors().add(this.metrics.networkInterceptor());
+        return builder;
     }
 
-    public ApiImpl(String credentials, String blazeMeterUrl, HttpLogger httpl) {
-        this();
-        this.credentials = credentials;
-        this.serverUrl = blazeMeterUrl;
-        this.urlManager = new UrlManagerV3Impl(this.serverUrl);
-        HttpLoggingInterceptor httpLog;
-        httpLog = new HttpLoggingInterceptor(httpl);
-        httpLog.setLevel(HttpLoggingInterceptor.Level.BODY);
-        okhttp = new OkHttpClient.Builder()
-            .addInterceptor(new RetryInterceptor(this.logger))
-            .addInterceptor(httpLog)
-            .connectTimeout(10, TimeUnit.SECONDS)
-            .readTimeout(60, TimeUnit.SECONDS)
-            .proxy(this.proxy)
-            .proxyAuthenticator(this.auth).build();
+    @Override
+    public ApiMetrics metrics() {
+        return this.metrics;
     }
 
     @Override
     public int getTestMasterStatusCode(String id) {
         int statusCode = 0;
         try {
-            String url = this.urlManager.masterStatus(APP_KEY, id);
-            Request r = new Request.Builder().url(url).get().addHeader(ACCEPT, APP_JSON)
-                .addHeader(AUTHORIZATION, this.credentials).
-                    addHeader(CONTENT_TYPE, APP_JSON_UTF_8).build();
-            JSONObject jo = new JSONObject(okhttp.newCall(r).execute().body().string());
-            JSONObject result = (JSONObject) jo.get(JsonConstants.RESULT);
-            statusCode = result.getInt("progress");
+            statusCode = Math.max(0, this.snapshot(id).getProgress());
         } catch (Exception e) {
             this.logger.warn("Error getting master status code: ", e);
-        } finally {
-            {
-                return statusCode;
-            }
         }
+        return statusCode;
     }
 
     @Override
     public TestStatus masterStatus(String id) {
         TestStatus testStatus = null;
-
         try {
-            String url = this.urlManager.masterStatus(APP_KEY, id);
-            Request r = new Request.Builder().url(url).get()
-                .addHeader(ACCEPT, APP_JSON)
-                .addHeader(AUTHORIZATION, this.credentials).
-                    addHeader(CONTENT_TYPE, APP_JSON_UTF_8).build();
-            JSONObject jo = new JSONObject(okhttp.newCall(r).execute().body().string());
-            JSONObject result = (JSONObject) jo.get(JsonConstants.RESULT);
-            if (result.has(JsonConstants.DATA_URL) && result.get(JsonConstants.DATA_URL) == null) {
-                testStatus = TestStatus.NotFound;
-            } else {
-                if (result.has(JsonConstants.STATUS) && !result.getString(JsonConstants.STATUS).equals("ENDED")) {
-                    testStatus = TestStatus.Running;
-                } else {
-                    if (result.has(JsonConstants.ERRORS) && !result.get(JsonConstants.ERRORS).equals(JSONObject.NULL)) {
-                        this.logger.debug("Error while getting master status: " + result.get(JsonConstants.ERRORS).toString());
-                        testStatus = TestStatus.Error;
-                    } else {
-                        testStatus = TestStatus.NotRunning;
-                        this.logger.info("Master with id = " + id + " has status = " + TestStatus.NotRunning.name());
-                    }
-                }
+            MasterStatusSnapshot status = this.snapshot(id);
+            testStatus = status.getTestStatus();
+            if (testStatus == TestStatus.Error && status.getErrors() != null) {
+                this.logger.debug("Error while getting master status: " + status.getErrors());
+            } else if (testStatus == TestStatus.NotRunning) {
+                this.logger.info("Master with id = " + id + " has status = " + TestStatus.NotRunning.name());
             }
         } catch (Exception e) {
             this.logger.warn("Error while getting master status ", e);
@@ -176,65 +187,47 @@ public class ApiImpl implements Api {
     }
 
     @Override
-    public synchronized HashMap<String, String> startTest(String testId, boolean collection) throws JSONException,
-        IOException {
-        String url = "";
-        HashMap<String, String> startResp = new HashMap<String, String>();
-        if (collection) {
-            url = this.urlManager.collectionStart(APP_KEY, testId);
-        } else {
-            url = this.urlManager.testStart(APP_KEY, testId);
+    public MasterStatusSnapshot snapshot(String masterId) throws IOException {
+        MasterStatusSnapshot s = this.snapshots.get(masterId);
+        if (s != null && s.age() < this.statusTtl) {
+            return s;
         }
+        String url = this.urlManager.masterStatus(APP_KEY, masterId);
+        s = this.coalesced(url, () -> new MasterStatusSnapshot(masterId, this.status(masterId), System.currentTimeMillis()));
+        this.snapshots.put(masterId, s);
+        return s;
+    }
+
+    @Override
+    public MasterStatus status(String masterId) throws IOException {
+        String url = this.urlManager.masterStatus(APP_KEY, masterId);
+        Request r = new Request.Builder().url(url).get()
+            .addHeader(ACCEPT, APP_JSON)
+            .addHeader(AUTHORIZATION, this.credentials).
+                addHeader(CONTENT_TYPE, APP_JSON_UTF_8).build();
+        return new MasterStatus(okhttp.newCall(r).execute().body().bytes());
+    }
+
+    @Override
+    public HashMap<String, String> startTest(String testId, boolean collection) throws JSONException,
+        IOException {
+        return this.start(testId, collection).toMap();
+    }
+
+    @Override
+    public synchronized StartResult start(String testId, boolean collection) throws IOException {
+        String url = collection ? this.urlManager.collectionStart(APP_KEY, testId) :
+            this.urlManager.testStart(APP_KEY, testId);
         RequestBody emptyBody = RequestBody.create(null, new byte[0]);
         Request r = new Request.Builder().url(url).post(emptyBody).addHeader(ACCEPT, APP_JSON)
             .addHeader(AUTHORIZATION, this.credentials).
                 addHeader(CONTENT_TYPE, APP_JSON_UTF_8).build();
-        JSONObject jo = new JSONObject(okhttp.newCall(r).execute().body().string());
-        if (jo == null) {
-            if (this.logger.isDebugEnabled())
-                this.logger.debug("Received null json object from server while start operation: will do 5 retries");
-            boolean isActive = this.active(testId);
-            if (!isActive) {
-                int retries = 1;
-                while (retries < 6) {
-                    try {
-                        if (this.logger.isDebugEnabled())
-                            this.logger.debug("Trying to repeat start request: " + retries + " retry.");
-                        this.logger.debug("Pausing thread for " + 10 * retries + " seconds before doing " + retries + " retry.");
-                        Thread.sleep(10000 * retries);
-                        jo = new JSONObject(okhttp.newCall(r).execute().body().string());
-                        if (jo != null) {
-                            break;
-                        }
-                    } catch (InterruptedException ie) {
-                        if (this.logger.isDebugEnabled())
-                            this.logger.debug("Start operation was interrupted at pause during " + retries + " retry.");
-                    } catch (Exception ex) {
-                        if (this.logger.isDebugEnabled())
-                            this.logger.debug("Received error from server while starting test: " + retries + " retry.");
-                    } finally {
-                        retries++;
-                    }
-                }
-
-            }
-        }
-        JSONObject result = null;
-        try {
-            result = (JSONObject) jo.get(JsonConstants.RESULT);
-            startResp.put(JsonConstants.ID, String.valueOf(result.get(JsonConstants.ID)));
-            startResp.put(JsonConstants.TEST_ID, collection ? String.valueOf(result.get(JsonConstants.TEST_COLLECTION_ID)) :
-                String.valueOf(result.get(JsonConstants.TEST_ID)));
-            startResp.put(JsonConstants.NAME, result.getString(JsonConstants.NAME));
-        } catch (Exception e) {
-            startResp.put(JsonConstants.ERROR, jo.get(JsonConstants.ERROR).toString());
-        } finally {
-            return startResp;
-        }
+        return new StartResult(okhttp.newCall(r).execute().body().bytes(), collection);
     }
 
     @Override
     public JSONObject stopTest(String testId) throws IOException, JSONException {
+        this.snapshots.remove(testId);
         String url = this.urlManager.masterStop(APP_KEY, testId);
         RequestBody emptyBody = RequestBody.create(null, new byte[0]);
         Request r = new Request.Builder().url(url).post(emptyBody).addHeader(ACCEPT, APP_JSON)
@@ -246,6 +239,7 @@ public class ApiImpl implements Api {
 
     @Override
     public void terminateTest(String testId) throws IOException {
+        this.snapshots.remove(testId);
         String url = this.urlManager.testTerminate(APP_KEY, testId);
         RequestBody emptyBody = RequestBody.create(null, new byte[0]);
         Request r = new Request.Builder().url(url).post(emptyBody).addHeader(ACCEPT, APP_JSON)
@@ -288,122 +282,48 @@ public class ApiImpl implements Api {
 
     @Override
     public LinkedHashMultimap<String, String> testsMultiMap() {
-        LinkedHashMultimap<String, String> testListOrdered = LinkedHashMultimap.create();
-        HashMap<Integer,String> ws = this.workspaces();
         logger.info("Getting tests...");
-        Set<Integer> wsk = ws.keySet();
-        for (Integer k : wsk) {
-            String wsn=ws.get(k);
-            String url = this.urlManager.tests(APP_KEY, k);
-            try {
-                Request r = new Request.Builder().url(url).get().addHeader(ACCEPT, APP_JSON)
-                    .addHeader(AUTHORIZATION, this.credentials).
-                        addHeader(CONTENT_TYPE, APP_JSON_UTF_8).build();
-                JSONObject jo = new JSONObject(okhttp.newCall(r).execute().body().string());
-                JSONArray result = null;
-                this.logger.info("Received json: " + jo.toString());
-                if (jo.has(JsonConstants.ERROR) && (jo.get(JsonConstants.RESULT).equals(JSONObject.NULL)) &&
-                    (((JSONObject) jo.get(JsonConstants.ERROR)).getInt(JsonConstants.CODE) == 401)) {
-                    return testListOrdered;
-                }
-                if (jo.has(JsonConstants.RESULT) && (!jo.get(JsonConstants.RESULT).equals(JSONObject.NULL))) {
-                    result = (JSONArray) jo.get(JsonConstants.RESULT);
-                }
-                LinkedHashMultimap<String, String> wst = LinkedHashMultimap.create();
-                LinkedHashMultimap<String, String> wsc = this.collectionsMultiMap(k);
-                wst.putAll(wsc);
-                if (result != null && result.length() > 0) {
-                    testListOrdered.put(String.valueOf(k) + "." + "workspace", "========" + wsn + "(" + k + ")========");
-                    for (int i = 0; i < result.length(); i++) {
-                        JSONObject entry = null;
-                        try {
-                            entry = result.getJSONObject(i);
-                        } catch (JSONException e) {
-                            this.logger.warn("JSONException while getting tests: " + e);
-                        }
-                        String id;
-                        String name;
-                        try {
-                            if (entry != null) {
-                                id = String.valueOf(entry.get(JsonConstants.ID));
-                                name = entry.has(JsonConstants.NAME) ? entry.getString(JsonConstants.NAME).replaceAll("&", "&amp;") : "";
-                                String testType = null;
-                                try {
-                                    testType = entry.getJSONObject(JsonConstants.CONFIGURATION).getString(JsonConstants.TYPE);
-                                } catch (Exception e) {
-                                    testType = Constants.UNKNOWN_TYPE;
-                                }
-                                wst.put(id + "." + testType, name + "(" + id + "." + testType + ")");
-                            }
-                        } catch (JSONException ie) {
-                            this.logger.warn("JSONException while getting tests: " + ie);
-                        }
-                    }
-                }
-                Comparator c = new Comparator<Map.Entry<String, String>>() {
-                    @Override
-                    public int compare(Map.Entry<String, String> e1, Map.Entry<String, String> e2) {
-                        return e1.getValue().compareToIgnoreCase(e2.getValue());
-                    }
-                };
-                wst.entries().stream().sorted(c).
-                    forEach(entry -> testListOrdered.put(
-                        ((Map.Entry<String, String>) entry).getKey(), ((Map.Entry<String, String>) entry).getValue()));
-            } catch (Exception e) {
-                this.logger.warn("Exception while getting tests: ", e);
-                this.logger.warn("Check connection/proxy settings");
-                testListOrdered.put(Constants.CHECK_SETTINGS, Constants.CHECK_SETTINGS);
+        return LinkedHashMultimap.create(this.catalog(false).getTests());
+    }
+
+    @Override
+    public CatalogCrawler.Result catalog(boolean reload) {
+        return reload ? CatalogCache.getInstance().reload(this, this.credentials) :
+            CatalogCache.getInstance().get(this, this.credentials);
+    }
+
+    @Override
+    public LinkedHashMultimap<String, String> workspaceTests(int workspaceId) throws IOException, JSONException {
+        LinkedHashMultimap<String, String> wst = LinkedHashMultimap.create();
+        LinkedHashMultimap<String, String> wsc = this.workspaceCollections(workspaceId);
+        wst.putAll(wsc);
+        PageIterator<CatalogDecoder.Entry> tests = this.tests(workspaceId);
+        try {
+            while (tests.hasNext()) {
+                CatalogDecoder.Entry e = tests.next();
+                wst.put(e.key(), e.label());
             }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        return testListOrdered;
+        Comparator c = new Comparator<Map.Entry<String, String>>() {
+            @Override
+            public int compare(Map.Entry<String, String> e1, Map.Entry<String, String> e2) {
+                return e1.getValue().compareToIgnoreCase(e2.getValue());
+            }
+        };
+        LinkedHashMultimap<String, String> sorted = LinkedHashMultimap.create();
+        wst.entries().stream().sorted(c).
+            forEach(entry -> sorted.put(
+                ((Map.Entry<String, String>) entry).getKey(), ((Map.Entry<String, String>) entry).getValue()));
+        return sorted;
     }
 
     @Override
     public LinkedHashMultimap<String, String> collectionsMultiMap(int workspaceId) {
         LinkedHashMultimap<String, String> collectionsListOrdered = LinkedHashMultimap.create();
-        logger.info("Getting collections...");
-        String url = this.urlManager.multiTests(APP_KEY, workspaceId);
         try {
-            Request r = new Request.Builder().url(url).get().addHeader(ACCEPT, APP_JSON)
-                .addHeader(AUTHORIZATION, this.credentials).
-                    addHeader(CONTENT_TYPE, APP_JSON_UTF_8).build();
-            JSONObject jo = new JSONObject(okhttp.newCall(r).execute().body().string());
-            JSONArray result = null;
-            this.logger.info("Received json: " + jo.toString());
-            if (jo.has(JsonConstants.ERROR) && (jo.get(JsonConstants.RESULT).equals(JSONObject.NULL)) &&
-                (((JSONObject) jo.get(JsonConstants.ERROR)).getInt(JsonConstants.CODE) == 401)) {
-                return collectionsListOrdered;
-            }
-            if (jo.has(JsonConstants.RESULT) && (!jo.get(JsonConstants.RESULT).equals(JSONObject.NULL))) {
-                result = (JSONArray) jo.get(JsonConstants.RESULT);
-            }
-            if (result != null && result.length() > 0) {
-                for (int i = 0; i < result.length(); i++) {
-                    JSONObject entry = null;
-                    try {
-                        entry = result.getJSONObject(i);
-                    } catch (JSONException e) {
-                        this.logger.warn("JSONException while getting tests: " + e);
-                    }
-                    String id;
-                    String name;
-                    try {
-                        if (entry != null) {
-                            id = String.valueOf(entry.get(JsonConstants.ID));
-                            name = entry.has(JsonConstants.NAME) ? entry.getString(JsonConstants.NAME).replaceAll("&", "&amp;") : "";
-                            String collectionsType = null;
-                            try {
-                                collectionsType = entry.getString(JsonConstants.COLLECTION_TYPE);
-                            } catch (Exception e) {
-                                collectionsType = Constants.UNKNOWN_TYPE;
-                            }
-                            collectionsListOrdered.put(id + "." + collectionsType, name + "(" + id + "." + collectionsType + ")");
-                        }
-                    } catch (JSONException ie) {
-                        this.logger.warn("JSONException while getting tests: " + ie);
-                    }
-                }
-            }
+            collectionsListOrdered.putAll(this.workspaceCollections(workspaceId));
         } catch (Exception e) {
             this.logger.warn("Exception while getting tests: ", e);
             this.logger.warn("Check connection/proxy settings");
@@ -412,6 +332,102 @@ public class ApiImpl implements Api {
         return collectionsListOrdered;
     }
 
+    private LinkedHashMultimap<String, String> workspaceCollections(int workspaceId) throws IOException, JSONException {
+        LinkedHashMultimap<String, String> collectionsListOrdered = LinkedHashMultimap.create();
+        logger.info("Getting collections...");
+        PageIterator<CatalogDecoder.Entry> collections = this.collections(workspaceId);
+        try {
+            while (collections.hasNext()) {
+                CatalogDecoder.Entry e = collections.next();
+                collectionsListOrdered.put(e.key(), e.label());
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return collectionsListOrdered;
+    }
+
+    @Override
+    public PageIterator<CatalogDecoder.Entry> tests(int workspaceId) {
+        return new PageIterator<CatalogDecoder.Entry>((skip, limit) -> {
+            CatalogDecoder.Catalog page = this.catalogPage(this.urlManager.tests(APP_KEY, workspaceId, skip, limit), false);
+            this.logger.info("Received " + page.getEntries().size() + " tests from workspace " + workspaceId
+                + " (skip=" + skip + ", " + page.getBytes() + " bytes read, " + page.getRetained() + " chars kept)");
+            if (page.getErrorCode() == 401 && !page.hasResult()) {
+                throw new IOException("Unauthorized to get tests from workspace " + workspaceId);
+            }
+            return new PageIterator.Page<CatalogDecoder.Entry>(page.getEntries(), page.getReturned());
+        }, this.pageSize);
+    }
+
+    @Override
+    public PageIterator<CatalogDecoder.Entry> collections(int workspaceId) {
+        return new PageIterator<CatalogDecoder.Entry>((skip, limit) -> {
+            CatalogDecoder.Catalog page = this.catalogPage(this.urlManager.multiTests(APP_KEY, workspaceId, skip, limit), true);
+            this.logger.info("Received " + page.getEntries().size() + " collections from workspace " + workspaceId
+                + " (skip=" + skip + ", " + page.getBytes() + " bytes read, " + page.getRetained() + " chars kept)");
+            return new PageIterator.Page<CatalogDecoder.Entry>(page.getEntries(), page.getReturned());
+        }, this.pageSize);
+    }
+
+    private CatalogDecoder.Catalog catalogPage(String url, boolean collections) throws IOException {
+        Request r = new Request.Builder().url(url).get().addHeader(ACCEPT, APP_JSON)
+            .addHeader(AUTHORIZATION, this.credentials).
+                addHeader(CONTENT_TYPE, APP_JSON_UTF_8).build();
+        return CatalogDecoder.decode(okhttp.newCall(r).execute().body(), collections);
+    }
+
+    @Override
+    public boolean testExists(String testKey) throws IOException {
+        for (Integer ws : this.workspaces().keySet()) {
+            try {
+                if (contains(this.collections(ws), testKey) || contains(this.tests(ws), testKey)) {
+                    return true;
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(Iterator<CatalogDecoder.Entry> entries, String testKey) {
+        while (entries.hasNext()) {
+            if (entries.next().key().equals(testKey)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    /**
+     * Taken from the cached catalog if there is one, otherwise from the project of the test:
+     * at most three small requests instead of listing every workspace.
+     */
+    @Override
+    public Integer workspaceOf(String testId) throws IOException {
+        CatalogCrawler.Result catalog = CatalogCache.getInstance().cached(this, this.credentials);
+        if (catalog != null && catalog.workspaceOf(testId) != null) {
+            return catalog.workspaceOf(testId);
+        }
+        JSONObject test = this.find(this.urlManager.test(APP_KEY, testId));
+        if (test == null) {
+            test = this.find(this.urlManager.multiTest(APP_KEY, testId));
+        }
+        if (test == null) {
+            return null;
+        }
+        if (test.has(JsonConstants.WORKSPACE_ID) && !test.isNull(JsonConstants.WORKSPACE_ID)) {
+            return test.getInt(JsonConstants.WORKSPACE_ID);
+        }
+        if (!test.has(JsonConstants.PROJECT_ID) || test.isNull(JsonConstants.PROJECT_ID)) {
+            return null;
+        }
+        JSONObject project = this.find(this.urlManager.project(APP_KEY, test.getInt(JsonConstants.PROJECT_ID)));
+        return project == null || project.isNull(JsonConstants.WORKSPACE_ID) ? null
+            : project.getInt(JsonConstants.WORKSPACE_ID);
+    }
+
+
     @Override
     public JSONObject user() throws IOException, JSONException {
         String url = this.urlManager.user(APP_KEY);
@@ -423,13 +439,17 @@ public class ApiImpl implements Api {
 
     @Override
     public JSONObject getCIStatus(String sessionId) throws JSONException, NullPointerException, IOException {
-        this.logger.info("Trying to get jtl url for the sessionId = " + sessionId);
-        String url = this.urlManager.ciStatus(APP_KEY, sessionId);
+        return this.ciStatus(sessionId).getResult();
+    }
+
+    @Override
+    public CiStatus ciStatus(String masterId) throws IOException {
+        this.logger.info("Trying to get CI status for masterId = " + masterId);
+        String url = this.urlManager.ciStatus(APP_KEY, masterId);
         Request r = new Request.Builder().url(url).get().addHeader(ACCEPT, APP_JSON)
             .addHeader(AUTHORIZATION, this.credentials).
                 addHeader(CONTENT_TYPE, APP_JSON_UTF_8).build();
-        JSONObject jo = new JSONObject(okhttp.newCall(r).execute().body().string()).getJSONObject(JsonConstants.RESULT);
-        return jo;
+        return new CiStatus(okhttp.newCall(r).execute().body().bytes());
     }
 
     @Override
@@ -444,14 +464,17 @@ public class ApiImpl implements Api {
 
     @Override
     public JSONObject retrieveJtlZip(String sessionId) throws IOException, JSONException {
-        this.logger.info("Trying to get jtl url for the sessionId=" + sessionId);
+        return this.jtlDataUrls(sessionId).toJson();
+    }
+
+    @Override
+    public JtlDataUrls jtlDataUrls(String sessionId) throws IOException {
         String url = this.urlManager.retrieveJTLZIP(APP_KEY, sessionId);
         this.logger.info("Trying to retrieve jtl json for the sessionId = " + sessionId);
         Request r = new Request.Builder().url(url).get().addHeader(ACCEPT, APP_JSON)
             .addHeader(AUTHORIZATION, this.credentials).
                 addHeader(CONTENT_TYPE, APP_JSON_UTF_8).build();
-        JSONObject jtlzip = new JSONObject(okhttp.newCall(r).execute().body().string());
-        return jtlzip;
+        return new JtlDataUrls(okhttp.newCall(r).execute().body().bytes());
     }
 
     @Override
@@ -468,68 +491,93 @@ public class ApiImpl implements Api {
 
     @Override
     public List<String> getListOfSessionIds(String masterId) throws IOException, JSONException {
-        List<String> sessionsIds = new ArrayList<String>();
+        SessionList sessions = this.sessions(masterId);
+        try {
+            return sessions.getIds();
+        } catch (Exception e) {
+            this.logger.info("Failed to get list of sessions from response " + sessions, e);
+            return new ArrayList<String>();
+        }
+    }
+
+    @Override
+    public SessionList sessions(String masterId) throws IOException {
         String url = this.urlManager.listOfSessionIds(APP_KEY, masterId);
         Request r = new Request.Builder().url(url).get().addHeader(ACCEPT, APP_JSON)
             .addHeader(AUTHORIZATION, this.credentials).
                 addHeader(CONTENT_TYPE, APP_JSON_UTF_8).build();
-        JSONObject jo = new JSONObject(okhttp.newCall(r).execute().body().string());
-        try {
-            JSONArray sessions = jo.getJSONObject(JsonConstants.RESULT).getJSONArray("sessions");
-            int sessionsLength = sessions.length();
-            for (int i = 0; i < sessionsLength; i++) {
-                sessionsIds.add(sessions.getJSONObject(i).getString(JsonConstants.ID));
+        return new SessionList(okhttp.newCall(r).execute().body().bytes());
+    }
+
+    @Override
+    public Response download(String url, int connectTimeoutMillis, long offset, String validator) throws IOException {
+        // byte offsets only hold for the body as sent, so no transparent gzip
+        Request.Builder b = new Request.Builder().url(url).get().header("Accept-Encoding", "identity");
+        if (offset > 0) {
+            b.header(RANGE, "bytes=" + offset + "-");
+            if (validator != null) {
+                b.header(IF_RANGE, validator);
             }
-        } catch (JSONException je) {
-            this.logger.info("Failed to get list of sessions from JSONObject " + jo, je);
-        } catch (Exception e) {
-            this.logger.info("Failed to get list of sessions from JSONObject " + jo, e);
-        } finally {
-            return sessionsIds;
         }
+        Request r = b.build();
+        Response response = this.downloads.newBuilder().connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+            .build().newCall(r).execute();
+        if (!response.isSuccessful()) {
+            response.body().close();
+            throw new IOException("Failed to download " + url + ": " + response.code() + " " + response.message());
+        }
+        return response;
     }
 
     @Override
     public boolean active(String testId) {
-        boolean isActive = false;
-        HashMap<Integer, String> ws = this.workspaces();
-        Set<Integer> wsk = ws.keySet();
-        for (Integer k : wsk) {
-            String url = this.urlManager.activeTests(APP_KEY, k);
-            JSONObject jo = null;
+        for (Integer k : this.workspaces().keySet()) {
             try {
-                Request r = new Request.Builder().url(url).get().addHeader(ACCEPT, APP_JSON)
-                    .addHeader(AUTHORIZATION, this.credentials).
-                        addHeader(CONTENT_TYPE, APP_JSON_UTF_8).build();
-                jo = new JSONObject(okhttp.newCall(r).execute().body().string());
-                JSONObject result = null;
-                if (jo.has(JsonConstants.RESULT) && (!jo.get(JsonConstants.RESULT).equals(JSONObject.NULL))) {
-                    result = (JSONObject) jo.get(JsonConstants.RESULT);
-                    JSONArray tests = (JSONArray) result.get(JsonConstants.TESTS);
-                    for (int i = 0; i < tests.length(); i++) {
-                        if (String.valueOf(tests.getInt(i)).equals(testId)) {
-                            isActive = true;
-                            return isActive;
-                        }
-                    }
-                    JSONArray collections = (JSONArray) result.get(JsonConstants.COLLECTIONS);
-                    for (int i = 0; i < collections.length(); i++) {
-                        if (String.valueOf(collections.getInt(i)).equals(testId)) {
-                            isActive = true;
-                            return isActive;
-                        }
-                    }
+                if (this.active(testId, k)) {
+                    return true;
                 }
-                return isActive;
-            } catch (JSONException je) {
-                this.logger.info("Failed to check if test=" + testId + " is active: received JSON = " + jo, je);
-                return false;
             } catch (Exception e) {
-                this.logger.info("Failed to check if test=" + testId + " is active: received JSON = " + jo, e);
-                return false;
+                this.logger.info("Failed to check if test=" + testId + " is active in workspace " + k + ": ", e);
             }
         }
-        return isActive;
+        return false;
+    }
+
+    @Override
+    public boolean active(String testId, int workspaceId) throws IOException {
+        return this.activeIds(this.urlManager.activeTests(APP_KEY, workspaceId)).contains(testId);
+    }
+
+    /**
+     * ids of active tests and collections
+     */
+    private Set<String> activeIds(String url) throws IOException {
+        return this.coalesced(url, () -> {
+            Request r = new Request.Builder().url(url).get().addHeader(ACCEPT, APP_JSON)
+                .addHeader(AUTHORIZATION, this.credentials).
+                    addHeader(CONTENT_TYPE, APP_JSON_UTF_8).build();
+            JSONObject jo = new JSONObject(okhttp.newCall(r).execute().body().string());
+            Set<String> ids = new HashSet<String>();
+            if (jo.has(JsonConstants.RESULT) && (!jo.get(JsonConstants.RESULT).equals(JSONObject.NULL))) {
+                JSONObject result = (JSONObject) jo.get(JsonConstants.RESULT);
+                JSONArray tests = (JSONArray) result.get(JsonConstants.TESTS);
+                for (int i = 0; i < tests.length(); i++) {
+                    ids.add(String.valueOf(tests.getInt(i)));
+                }
+                JSONArray collections = (JSONArray) result.get(JsonConstants.COLLECTIONS);
+                for (int i = 0; i < collections.length(); i++) {
+                    ids.add(String.valueOf(collections.getInt(i)));
+                }
+            }
+            return Collections.unmodifiableSet(ids);
+        });
+    }
+
+    /**
+     * Identical concurrent GETs with same credentials share one call; result must not be modified.
+     */
+    private <T> T coalesced(String url, SingleFlight.Loader<T> loader) throws IOException {
+        return SingleFlight.getInstance().execute(SingleFlight.key(this.credentials, url), loader);
     }
 
     @Override
@@ -593,98 +641,105 @@ public class ApiImpl implements Api {
     @Override
     public HashMap<Integer,String> accounts() {
         String url = this.urlManager.accounts(APP_KEY);
-        Request r = new Request.Builder().url(url).get().addHeader(ACCEPT, APP_JSON)
-            .addHeader(AUTHORIZATION, this.credentials).build();
-        JSONObject jo = null;
-        JSONArray result = null;
-        JSONObject dp = null;
-        HashMap<Integer, String> acs = new HashMap<>();
-        try {
-            jo = new JSONObject(okhttp.newCall(r).execute().body().string());
-        } catch (IOException ioe) {
-            logger.error("Failed to get accounts: " + ioe);
-            return acs;
-        }
-        try {
-            result = jo.getJSONArray(JsonConstants.RESULT);
-        } catch (Exception e) {
-            logger.error("Failed to get accounts: " + e);
-            return acs;
-        }
         try {
-            for (int i = 0; i < result.length(); i++) {
-                JSONObject a = result.getJSONObject(i);
-                acs.put(a.getInt(JsonConstants.ID),a.getString(JsonConstants.NAME));
-            }
+            return new HashMap<>(this.coalesced(url, () -> {
+                Request r = new Request.Builder().url(url).get().addHeader(ACCEPT, APP_JSON)
+                    .addHeader(AUTHORIZATION, this.credentials).build();
+                JSONObject jo = new JSONObject(okhttp.newCall(r).execute().body().string());
+                JSONArray result = jo.getJSONArray(JsonConstants.RESULT);
+                HashMap<Integer, String> acs = new HashMap<>();
+                for (int i = 0; i < result.length(); i++) {
+                    JSONObject a = result.getJSONObject(i);
+                    acs.put(a.getInt(JsonConstants.ID), a.getString(JsonConstants.NAME));
+                }
+                return Collections.unmodifiableMap(acs);
+            }));
         } catch (Exception e) {
             logger.error("Failed to get accounts: " + e);
-            return acs;
+            return new HashMap<>();
         }
-        return acs;
     }
 
     @Override
     public HashMap<Integer, String> workspaces() {
-        HashMap<Integer, String> acs = this.accounts();
-        HashMap<Integer, String> ws = new HashMap<>();
+        return new CatalogCrawler(this).workspaces();
+    }
 
-        Set<Integer> keys = acs.keySet();
-        for (Integer key : keys) {
-            String url = this.urlManager.workspaces(APP_KEY, key);
+    @Override
+    public HashMap<Integer, String> workspaces(int accountId) throws IOException, JSONException {
+        return new HashMap<>(this.coalesced(this.urlManager.workspaces(APP_KEY, accountId, 0, this.pageSize),
+            () -> Collections.unmodifiableMap(this.loadWorkspaces(accountId))));
+    }
+
+    private HashMap<Integer, String> loadWorkspaces(int accountId) throws IOException, JSONException {
+        HashMap<Integer, String> ws = new HashMap<>();
+        PageIterator<JSONObject> pages = new PageIterator<JSONObject>((skip, limit) -> {
+            String url = this.urlManager.workspaces(APP_KEY, accountId, skip, limit);
             Request r = new Request.Builder().url(url).get().addHeader(ACCEPT, APP_JSON)
                 .addHeader(AUTHORIZATION, this.credentials).build();
-            JSONObject jo = null;
-            JSONArray result = null;
-            try {
-                jo = new JSONObject(okhttp.newCall(r).execute().body().string());
-            } catch (Exception ioe) {
-                logger.error("Failed to get workspaces: " + ioe);
-                return ws;
-            }
-            try {
-                result = jo.getJSONArray(JsonConstants.RESULT);
-            } catch (Exception e) {
-                logger.error("Failed to get workspaces: " + e);
-                return ws;
+            JSONObject jo = new JSONObject(okhttp.newCall(r).execute().body().string());
+            JSONArray result = jo.getJSONArray(JsonConstants.RESULT);
+            List<JSONObject> page = new ArrayList<JSONObject>(result.length());
+            for (int i = 0; i < result.length(); i++) {
+                page.add(result.getJSONObject(i));
             }
-            try {
-
-                for (int i = 0; i < result.length(); i++) {
-                    JSONObject s = result.getJSONObject(i);
-                    ws.put(s.getInt(JsonConstants.ID), s.getString(JsonConstants.NAME));
-                }
-            } catch (Exception e) {
-                logger.error("Failed to get workspaces: " + e);
-                return ws;
+            return PageIterator.Page.of(page);
+        }, this.pageSize);
+        try {
+            while (pages.hasNext()) {
+                JSONObject s = pages.next();
+                ws.put(s.getInt(JsonConstants.ID), s.getString(JsonConstants.NAME));
             }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
         return ws;
     }
 
+    @Override
+    public boolean collection(String testId, String testType) throws Exception {
+        if (StringUtils.isBlank(testType) || testType.equals(Constants.UNKNOWN_TYPE)) {
+            return this.collection(testId);
+        }
+        if (testType.contains("workspace")) {
+            throw new Exception("Please, select valid testId instead of workspace header");
+        }
+        return testType.contains("multi");
+    }
+
     @Override
     public boolean collection(String testId) throws Exception {
-        boolean exists = false;
-        boolean collection = false;
-
-        LinkedHashMultimap tests = this.testsMultiMap();
-        Set<Map.Entry> entries = tests.entries();
-        for (Map.Entry e : entries) {
-            int point = ((String) e.getKey()).indexOf(".");
-            if (point > 0 && testId.contains(((String) e.getKey()).substring(0, point))) {
-                collection = (((String) e.getKey()).substring(point + 1)).contains("multi");
-                if (((String) e.getKey()).substring(point + 1).contains("workspace")) {
-                    throw new Exception("Please, select valid testId instead of workspace header");
-                }
-                exists = true;
-            }
-            if (collection) {
-                break;
-            }
+        if (this.exists(this.urlManager.test(APP_KEY, testId))) {
+            return false;
+        }
+        if (this.exists(this.urlManager.multiTest(APP_KEY, testId))) {
+            return true;
+        }
+        throw new Exception("Test with test id = " + testId + " is not present on server");
+    }
+
+    private boolean exists(String url) throws IOException, JSONException {
+        return this.find(url) != null;
+    }
+
+    /**
+     * @return result object of the response, null if there is none
+     * @throws IOException if request fails other than with 404
+     */
+    private JSONObject find(String url) throws IOException, JSONException {
+        Request r = new Request.Builder().url(url).get().addHeader(ACCEPT, APP_JSON)
+            .addHeader(AUTHORIZATION, this.credentials).
+                addHeader(CONTENT_TYPE, APP_JSON_UTF_8).build();
+        Response response = okhttp.newCall(r).execute();
+        String body = response.body().string();
+        if (response.code() == 404) {
+            return null;
         }
-        if (!exists) {
-            throw new Exception("Test with test id = " + testId + " is not present on server");
+        if (!response.isSuccessful()) {
+            throw new IOException("Failed to get " + url + ": " + response.code() + " " + response.message());
         }
-        return collection;
+        JSONObject jo = new JSONObject(body);
+        return jo.optJSONObject(JsonConstants.RESULT);
     }
 
 }
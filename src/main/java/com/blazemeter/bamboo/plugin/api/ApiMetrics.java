@@ -0,0 +1,257 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.api;
+
+import okhttp3.Connection;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Per-endpoint latency, connection, retry, traffic and response code statistics.
+ * Requests are grouped by logical endpoint (masterStatus, startTest, tests, ...)
+ * derived from the url path; other requests to the API server are "other", requests
+ * to any other host (signed artifact urls) are "download". Every ApiImpl has its own
+ * instance, which also feeds the plugin-wide one returned by {@link #getInstance()}.
+ * <p>
+ * Three interceptors collect the data: {@link #callInterceptor()} must be the first
+ * application interceptor, {@link #attemptInterceptor()} goes after the retry one and
+ * {@link #networkInterceptor()} is a network interceptor. Calls are expected to be
+ * executed synchronously, as ApiImpl does.
+ */
+public class ApiMetrics {
+
+    private static final ApiMetrics GLOBAL = new ApiMetrics(null, null);
+
+    private static final Map<String, Pattern> ENDPOINTS = new LinkedHashMap<String, Pattern>();
+
+    static {
+        ENDPOINTS.put("masterStatus", Pattern.compile(".*/masters/[^/]+/status"));
+        ENDPOINTS.put("ciStatus", Pattern.compile(".*/masters/[^/]+/ci-status"));
+        ENDPOINTS.put("startTest", Pattern.compile(".*/(tests|collections)/[^/]+/start"));
+        ENDPOINTS.put("stopTest", Pattern.compile(".*/masters/[^/]+/stop"));
+        ENDPOINTS.put("terminateTest", Pattern.compile(".*/masters/[^/]+/terminate"));
+        ENDPOINTS.put("testReport", Pattern.compile(".*/masters/[^/]+/reports/main/summary"));
+        ENDPOINTS.put("junitReport", Pattern.compile(".*/masters/[^/]+/reports/thresholds"));
+        ENDPOINTS.put("jtlReport", Pattern.compile(".*/sessions/[^/]+/reports/logs"));
+        ENDPOINTS.put("sessions", Pattern.compile(".*/masters/[^/]+/sessions"));
+        ENDPOINTS.put("publicToken", Pattern.compile(".*/masters/[^/]+/public-token"));
+        ENDPOINTS.put("properties", Pattern.compile(".*/sessions/[^/]+/properties"));
+        ENDPOINTS.put("master", Pattern.compile(".*/masters/[^/]+"));
+        ENDPOINTS.put("activeTests", Pattern.compile(".*/masters"));
+        ENDPOINTS.put("tests", Pattern.compile(".*/tests"));
+        ENDPOINTS.put("test", Pattern.compile(".*/tests/[^/]+"));
+        ENDPOINTS.put("multiTests", Pattern.compile(".*/multi-tests"));
+        ENDPOINTS.put("multiTest", Pattern.compile(".*/multi-tests/[^/]+"));
+        ENDPOINTS.put("project", Pattern.compile(".*/projects/[^/]+"));
+        ENDPOINTS.put("workspaces", Pattern.compile(".*/workspaces"));
+        ENDPOINTS.put("accounts", Pattern.compile(".*/accounts"));
+        ENDPOINTS.put("user", Pattern.compile(".*/user"));
+    }
+
+    /**
+     * Connections already seen by any instance; a connection seen for the first time was opened for this request.
+     */
+    private static final Map<Connection, Boolean> SEEN = Collections.synchronizedMap(new WeakHashMap<Connection, Boolean>());
+
+    private final ApiMetrics parent;
+    private final String serverHost;
+    private final ConcurrentHashMap<String, EndpointStats> endpoints = new ConcurrentHashMap<String, EndpointStats>();
+    private final ThreadLocal<Long> attemptStart = new ThreadLocal<Long>();
+
+    public ApiMetrics() {
+        this(GLOBAL, null);
+    }
+
+    /**
+     * @param serverUrl url of the API server, tells API requests from downloads
+     */
+    public ApiMetrics(String serverUrl) {
+        this(GLOBAL, serverUrl == null ? null : HttpUrl.parse(serverUrl) == null ? null : HttpUrl.parse(serverUrl).host());
+    }
+
+    private ApiMetrics(ApiMetrics parent, String serverHost) {
+        this.parent = parent;
+        this.serverHost = serverHost;
+    }
+
+    public static ApiMetrics getInstance() {
+        return GLOBAL;
+    }
+
+    public static String endpoint(Request request) {
+        return endpoint(request, null);
+    }
+
+    /**
+     * @param serverHost host of the API server; when unknown, paths outside of the v4 API are taken for downloads
+     */
+    public static String endpoint(Request request, String serverHost) {
+        String path = request.url().encodedPath();
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        for (Map.Entry<String, Pattern> e : ENDPOINTS.entrySet()) {
+            if (e.getValue().matcher(path).matches()) {
+                return e.getKey();
+            }
+        }
+        if (serverHost != null) {
+            return request.url().host().equalsIgnoreCase(serverHost) ? "other" : "download";
+        }
+        return path.startsWith(UrlManager.V4) ? "other" : "download";
+    }
+
+    public EndpointStats endpoint(String name) {
+        return endpoints.computeIfAbsent(name, EndpointStats::new);
+    }
+
+    public List<EndpointStats> endpoints() {
+        List<EndpointStats> list = new ArrayList<EndpointStats>(endpoints.values());
+        list.sort(Comparator.comparing(EndpointStats::getName));
+        return list;
+    }
+
+    /**
+     * One line per endpoint, for the build log.
+     */
+    public List<String> report() {
+        List<String> lines = new ArrayList<String>();
+        for (EndpointStats e : endpoints()) {
+            lines.add(e.toString());
+        }
+        return lines;
+    }
+
+    private void record(String name, Consumer<EndpointStats> update) {
+        update.accept(this.endpoint(name));
+        if (parent != null) {
+            parent.record(name, update);
+        }
+    }
+
+    public Interceptor callInterceptor() {
+        return chain -> {
+            Request request = chain.request();
+            String name = endpoint(request, serverHost);
+            long out = request.body() == null ? 0 : request.body().contentLength();
+            long start = System.nanoTime();
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException e) {
+                long took = millis(start);
+                this.record(name, s -> s.call(took, -1, out));
+                throw e;
+            }
+            long took = millis(start);
+            int code = response.code();
+            this.record(name, s -> s.call(took, code, out));
+            if (response.body() == null) {
+                return response;
+            }
+            return response.newBuilder().body(new CountingBody(response.body(), n -> this.record(name, s -> s.bytesIn(n))))
+                .build();
+        };
+    }
+
+    public Interceptor attemptInterceptor() {
+        return chain -> {
+            this.record(endpoint(chain.request(), serverHost), EndpointStats::attempt);
+            attemptStart.set(System.nanoTime());
+            try {
+                return chain.proceed(chain.request());
+            } finally {
+                attemptStart.remove();
+            }
+        };
+    }
+
+    public Interceptor networkInterceptor() {
+        return chain -> {
+            String name = endpoint(chain.request(), serverHost);
+            Connection connection = chain.connection();
+            Long attempt = attemptStart.get();
+            if (connection != null && SEEN.put(connection, Boolean.TRUE) == null && attempt != null) {
+                long took = millis(attempt);
+                boolean tls = connection.handshake() != null;
+                this.record(name, s -> s.connect(took, tls));
+            }
+            long start = System.nanoTime();
+            Response response = chain.proceed(chain.request());
+            long took = millis(start);
+            this.record(name, s -> s.ttfb(took));
+            return response;
+        };
+    }
+
+    private static long millis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static class CountingBody extends ResponseBody {
+        private final ResponseBody delegate;
+        private final BufferedSource source;
+
+        CountingBody(ResponseBody delegate, Consumer<Long> onRead) {
+            this.delegate = delegate;
+            this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                @Override
+                public long read(Buffer sink, long byteCount) throws IOException {
+                    long n = super.read(sink, byteCount);
+                    if (n > 0) {
+                        onRead.accept(n);
+                    }
+                    return n;
+                }
+            });
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.api;
+
+import com.blazemeter.bamboo.plugin.configuration.constants.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plugin-level cache of the test catalog, keyed by credentials + server url.
+ * Entries younger than the ttl are served as is; older entries are served
+ * stale while a background thread reloads them, until they exceed the
+ * max-stale age, after which the caller reloads synchronously.
+ */
+public class CatalogCache {
+
+    public static final long DEFAULT_TTL_SEC = 300;
+    public static final long DEFAULT_MAX_STALE_SEC = 3600;
+
+    private static final CatalogCache INSTANCE = new CatalogCache(
+        Long.getLong(Constants.CATALOG_TTL, DEFAULT_TTL_SEC) * 1000,
+        Long.getLong(Constants.CATALOG_MAX_STALE, DEFAULT_MAX_STALE_SEC) * 1000);
+
+    private Logger logger = LoggerFactory.getLogger("com.blazemeter");
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "bzm-catalog-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final long ttl;
+    private final long maxStale;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong refreshMillis = new AtomicLong();
+    private volatile long lastRefreshMillis;
+
+    public CatalogCache(long ttlMillis, long maxStaleMillis) {
+        this.ttl = ttlMillis;
+        this.maxStale = Math.max(ttlMillis, maxStaleMillis);
+    }
+
+    public static CatalogCache getInstance() {
+        return INSTANCE;
+    }
+
+    public CatalogCrawler.Result get(Api api, String credentials) {
+        String key = key(credentials, api.getServerUrl());
+        Entry entry = entries.computeIfAbsent(key, k -> new Entry());
+        CatalogCrawler.Result result = entry.result;
+        long age = System.currentTimeMillis() - entry.loadedAt;
+        if (result != null && age < ttl) {
+            hits.incrementAndGet();
+            return result;
+        }
+        if (result != null && age < maxStale) {
+            staleHits.incrementAndGet();
+            if (entry.refreshing.compareAndSet(false, true)) {
+                refresher.submit(() -> {
+                    try {
+                        load(entry, api);
+                    } catch (Exception e) {
+                        logger.warn("Failed to refresh test catalog in background: ", e);
+                    } finally {
+                        entry.refreshing.set(false);
+                    }
+                });
+            }
+            return result;
+        }
+        synchronized (entry) {
+            if (entry.result != null && System.currentTimeMillis() - entry.loadedAt < ttl) {
+                hits.incrementAndGet();
+                return entry.result;
+            }
+            misses.incrementAndGet();
+            return load(entry, api);
+        }
+    }
+
+    /**
+     * Catalog of given credentials if one younger than the max-stale age is cached; never loads it.
+     * Such lookups are not counted in the hits of {@link #stats()}.
+     */
+    public CatalogCrawler.Result cached(Api api, String credentials) {
+        Entry entry = entries.get(key(credentials, api.getServerUrl()));
+        if (entry == null || entry.result == null || System.currentTimeMillis() - entry.loadedAt >= maxStale) {
+            return null;
+        }
+        return entry.result;
+    }
+
+    /**
+     * Reloads the catalog for given credentials, bypassing the cached copy.
+     */
+    public CatalogCrawler.Result reload(Api api, String credentials) {
+        Entry entry = entries.computeIfAbsent(key(credentials, api.getServerUrl()), k -> new Entry());
+        synchronized (entry) {
+            misses.incrementAndGet();
+            return load(entry, api);
+        }
+    }
+
+    public void invalidate(String credentials, String serverUrl) {
+        entries.remove(key(credentials, serverUrl));
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    private CatalogCrawler.Result load(Entry entry, Api api) {
+        long start = System.currentTimeMillis();
+        CatalogCrawler.Result result = new CatalogCrawler(api).crawl();
+        long took = System.currentTimeMillis() - start;
+        refreshes.incrementAndGet();
+        refreshMillis.addAndGet(took);
+        lastRefreshMillis = took;
+        if (result.isComplete()) {
+            entry.result = result;
+            entry.loadedAt = System.currentTimeMillis();
+        }
+        return result;
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long staleHits() {
+        return staleHits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long refreshes() {
+        return refreshes.get();
+    }
+
+    public long lastRefreshMillis() {
+        return lastRefreshMillis;
+    }
+
+    public String stats() {
+        long r = refreshes();
+        return "Test catalog cache: hits=" + hits() + ", stale hits=" + staleHits() + ", misses=" + misses()
+            + ", refreshes=" + r + ", avg refresh=" + (r == 0 ? 0 : refreshMillis.get() / r) + "ms"
+            + ", last refresh=" + lastRefreshMillis() + "ms";
+    }
+
+    private static String key(String credentials, String serverUrl) {
+        return String.valueOf(credentials) + "|" + String.valueOf(serverUrl);
+    }
+
+    private static class Entry {
+        private volatile CatalogCrawler.Result result;
+        private volatile long loadedAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.api;
+
+import com.blazemeter.bamboo.plugin.configuration.constants.Constants;
+import com.google.common.collect.LinkedHashMultimap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Walks accounts -> workspaces -> tests/multi-tests with up to
+ * {@code parallelism} requests in flight and merges the result into
+ * the ordered multimap shown on the task configuration page.
+ * A failed workspace is reported in {@link Result#getFailures()} and
+ * does not abort the rest of the crawl.
+ */
+public class CatalogCrawler {
+
+    public static final int DEFAULT_PARALLELISM = 8;
+
+    private Logger logger = LoggerFactory.getLogger("com.blazemeter");
+
+    private final Api api;
+    private final int parallelism;
+
+    public CatalogCrawler(Api api) {
+        this(api, Integer.getInteger(Constants.CATALOG_PARALLELISM, DEFAULT_PARALLELISM));
+    }
+
+    public CatalogCrawler(Api api, int parallelism) {
+        this.api = api;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public Result crawl() {
+        Result crawl = new Result();
+        ExecutorService pool = newPool();
+        try {
+            HashMap<Integer, String> ws = workspaces(pool);
+            Map<Integer, Future<LinkedHashMultimap<String, String>>> futures =
+                new LinkedHashMap<Integer, Future<LinkedHashMultimap<String, String>>>();
+            for (Integer k : ws.keySet()) {
+                futures.put(k, pool.submit(() -> api.workspaceTests(k)));
+            }
+            for (Map.Entry<Integer, Future<LinkedHashMultimap<String, String>>> f : futures.entrySet()) {
+                Integer k = f.getKey();
+                String wsn = ws.get(k);
+                try {
+                    LinkedHashMultimap<String, String> wst = f.getValue().get();
+                    if (!wst.isEmpty()) {
+                        crawl.tests.put(String.valueOf(k) + "." + "workspace", "========" + wsn + "(" + k + ")========");
+                        crawl.tests.putAll(wst);
+                        for (String key : wst.keySet()) {
+                            crawl.owners.put(key.substring(0, Math.max(0, key.lastIndexOf('.'))), k);
+                        }
+                    }
+                } catch (ExecutionException e) {
+                    this.logger.warn("Exception while getting tests from workspace " + k + ": ", e.getCause());
+                    crawl.failures.put(k, String.valueOf(e.getCause().getMessage()));
+                    crawl.tests.put(String.valueOf(k) + "." + "workspace",
+                        "========" + wsn + "(" + k + "): " + Constants.CHECK_SETTINGS + "========");
+                }
+            }
+            if (!ws.isEmpty() && crawl.failures.size() == ws.size()) {
+                this.logger.warn("Check connection/proxy settings");
+                crawl.tests.put(Constants.CHECK_SETTINGS, Constants.CHECK_SETTINGS);
+            }
+        } catch (InterruptedException e) {
+            this.logger.warn("Getting tests was interrupted", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+        return crawl;
+    }
+
+    public HashMap<Integer, String> workspaces() {
+        ExecutorService pool = newPool();
+        try {
+            return workspaces(pool);
+        } catch (InterruptedException e) {
+            this.logger.warn("Getting workspaces was interrupted", e);
+            Thread.currentThread().interrupt();
+            return new HashMap<Integer, String>();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private HashMap<Integer, String> workspaces(ExecutorService pool) throws InterruptedException {
+        HashMap<Integer, String> acs = api.accounts();
+        HashMap<Integer, String> ws = new HashMap<Integer, String>();
+        Map<Integer, Future<HashMap<Integer, String>>> futures = new LinkedHashMap<Integer, Future<HashMap<Integer, String>>>();
+        for (Integer key : acs.keySet()) {
+            futures.put(key, pool.submit(() -> api.workspaces(key)));
+        }
+        for (Map.Entry<Integer, Future<HashMap<Integer, String>>> f : futures.entrySet()) {
+            try {
+                ws.putAll(f.getValue().get());
+            } catch (ExecutionException e) {
+                this.logger.error("Failed to get workspaces for account " + f.getKey() + ": " + e.getCause());
+            }
+        }
+        return ws;
+    }
+
+    private ExecutorService newPool() {
+        return Executors.newFixedThreadPool(this.parallelism, new ThreadFactory() {
+            private final AtomicInteger n = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "bzm-catalog-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    public static class Result {
+        private final LinkedHashMultimap<String, String> tests = LinkedHashMultimap.create();
+        private final Map<Integer, String> failures = new LinkedHashMap<Integer, String>();
+        private final Map<String, Integer> owners = new HashMap<String, Integer>();
+
+        public LinkedHashMultimap<String, String> getTests() {
+            return tests;
+        }
+
+        /**
+         * workspaceId -> error message for workspaces whose tests could not be loaded
+         */
+        public Map<Integer, String> getFailures() {
+            return failures;
+        }
+
+        /**
+         * @param testId id of test or collection without type suffix
+         * @return workspace listing the test, null if none does
+         */
+        public Integer workspaceOf(String testId) {
+            return owners.get(testId);
+        }
+
+        public boolean isComplete() {
+            return failures.isEmpty();
+        }
+    }
+}
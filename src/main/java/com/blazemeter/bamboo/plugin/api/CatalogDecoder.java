@@ -0,0 +1,213 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.api;
+
+import com.blazemeter.bamboo.plugin.configuration.constants.Constants;
+import com.blazemeter.bamboo.plugin.configuration.constants.JsonConstants;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import okhttp3.ResponseBody;
+import org.apache.commons.io.input.CountingInputStream;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Token-level decoder for /tests and /multi-tests list responses.
+ * Reads the response body as a stream and keeps only id, name and type of
+ * every entry, so memory used per load is bounded by the number of entries
+ * rather than by the size of the payload: besides the fixed buffers of the
+ * readers, a load allocates what {@link Catalog#getRetained()} reports.
+ */
+public class CatalogDecoder {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private CatalogDecoder() {
+    }
+
+    /**
+     * @param body        response body; it is consumed and closed
+     * @param collections true for /multi-tests (type is read from collectionType),
+     *                    false for /tests (type is read from configuration.type)
+     */
+    public static Catalog decode(ResponseBody body, boolean collections) throws IOException {
+        Catalog catalog = new Catalog();
+        CountingInputStream in = new CountingInputStream(body.byteStream());
+        JsonReader reader = new JsonReader(new InputStreamReader(in, UTF_8));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (JsonConstants.RESULT.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    catalog.hasResult = true;
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        catalog.returned++;
+                        Entry e = entry(reader, collections);
+                        if (e != null) {
+                            catalog.entries.add(e);
+                            catalog.retained += e.id.length() + e.name.length() + e.type.length();
+                        }
+                    }
+                    reader.endArray();
+                } else if (JsonConstants.ERROR.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (JsonConstants.CODE.equals(reader.nextName()) && reader.peek() == JsonToken.NUMBER) {
+                            catalog.errorCode = reader.nextInt();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } finally {
+            catalog.bytes = in.getByteCount();
+            reader.close();
+        }
+        return catalog;
+    }
+
+    private static Entry entry(JsonReader reader, boolean collections) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        String id = null;
+        String name = "";
+        String type = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (JsonConstants.ID.equals(field)) {
+                id = string(reader);
+            } else if (JsonConstants.NAME.equals(field)) {
+                String n = string(reader);
+                name = n == null ? "" : n.replaceAll("&", "&amp;");
+            } else if (collections && JsonConstants.COLLECTION_TYPE.equals(field)) {
+                type = string(reader);
+            } else if (!collections && JsonConstants.CONFIGURATION.equals(field)
+                && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (JsonConstants.TYPE.equals(reader.nextName())) {
+                        type = string(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (id == null) {
+            return null;
+        }
+        return new Entry(id, name, type == null ? Constants.UNKNOWN_TYPE : type);
+    }
+
+    private static String string(JsonReader reader) throws IOException {
+        JsonToken t = reader.peek();
+        if (t == JsonToken.STRING || t == JsonToken.NUMBER) {
+            return reader.nextString();
+        }
+        reader.skipValue();
+        return null;
+    }
+
+    public static class Catalog {
+        private final List<Entry> entries = new ArrayList<Entry>();
+        private boolean hasResult = false;
+        private int returned = 0;
+        private int errorCode = -1;
+        private long bytes;
+        private long retained;
+
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        /**
+         * number of items in the result array, including those without id that were dropped
+         */
+        public int getReturned() {
+            return returned;
+        }
+
+        public boolean hasResult() {
+            return hasResult;
+        }
+
+        /**
+         * code of "error" object or -1 if response has no error
+         */
+        public int getErrorCode() {
+            return errorCode;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * characters of id, name and type kept for the entries
+         */
+        public long getRetained() {
+            return retained;
+        }
+    }
+
+    public static class Entry {
+        private final String id;
+        private final String name;
+        private final String type;
+
+        public Entry(String id, String name, String type) {
+            this.id = id;
+            this.name = name;
+            this.type = type;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String key() {
+            return id + "." + type;
+        }
+
+        public String label() {
+            return name + "(" + key() + ")";
+        }
+    }
+}
@@ -0,0 +1,351 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.api;
+
+import com.blazemeter.bamboo.plugin.configuration.constants.Constants;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.ByteString;
+import okio.Okio;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * On-disk cache of accounts, workspaces, tests and multi-tests list responses.
+ * Responses carrying ETag or Last-Modified are stored per credentials + url;
+ * the next request for the same url is sent with If-None-Match/If-Modified-Since
+ * and a 304 is answered from the stored body. Entries are always revalidated,
+ * so the cache never serves a body the server has not confirmed.
+ * Total size of stored bodies is bounded, least recently used entries are removed first.
+ */
+public class ConditionalCache implements Interceptor {
+
+    public static final long DEFAULT_MAX_SIZE = 20 * 1024 * 1024;
+
+    private static final Pattern CACHED_PATHS = Pattern.compile(".*/(accounts|workspaces|tests|multi-tests)/?");
+    private static final String BODY = ".body";
+    private static final String META = ".meta";
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+    private static final String CONTENT_TYPE = "contentType";
+
+    private static final ConditionalCache INSTANCE = new ConditionalCache(
+        new File(System.getProperty(Constants.HTTP_CACHE_DIR,
+            System.getProperty("java.io.tmpdir") + File.separator + "bzm-http-cache")),
+        Long.getLong(Constants.HTTP_CACHE_SIZE, DEFAULT_MAX_SIZE));
+
+    private Logger logger = LoggerFactory.getLogger("com.blazemeter");
+
+    private final File dir;
+    private final long maxSize;
+
+    /**
+     * key -> size of stored body, in access order
+     */
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private long size = 0;
+    private boolean loaded = false;
+    private boolean available = false;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ConditionalCache(File dir, long maxSize) {
+        this.dir = dir;
+        this.maxSize = maxSize;
+    }
+
+    public static ConditionalCache getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!"GET".equals(request.method()) || !CACHED_PATHS.matcher(request.url().encodedPath()).matches()
+            || !this.ensureLoaded()) {
+            return chain.proceed(request);
+        }
+        requests.incrementAndGet();
+        String key = key(request);
+        Properties meta = this.lookup(key);
+        Request.Builder conditional = request.newBuilder();
+        if (meta != null) {
+            if (meta.getProperty(ETAG) != null) {
+                conditional.header("If-None-Match", meta.getProperty(ETAG));
+            }
+            if (meta.getProperty(LAST_MODIFIED) != null) {
+                conditional.header("If-Modified-Since", meta.getProperty(LAST_MODIFIED));
+            }
+        }
+        Response response = chain.proceed(conditional.build());
+        if (response.code() == 304 && meta != null) {
+            File body = new File(dir, key + BODY);
+            InputStream in;
+            try {
+                in = new FileInputStream(body);
+            } catch (IOException e) {
+                // evicted meanwhile: fetch the full body again
+                response.body().close();
+                this.remove(key);
+                return chain.proceed(request);
+            }
+            response.body().close();
+            hits.incrementAndGet();
+            bytesSaved.addAndGet(body.length());
+            return response.newBuilder().code(200).message("OK")
+                .body(ResponseBody.create(MediaType.parse(meta.getProperty(CONTENT_TYPE, Api.APP_JSON)),
+                    body.length(), Okio.buffer(Okio.source(in)))).build();
+        }
+        String etag = response.header("ETag");
+        String lastModified = response.header("Last-Modified");
+        if (response.code() != 200 || (etag == null && lastModified == null) || response.body() == null) {
+            return response;
+        }
+        return this.store(key, response, etag, lastModified);
+    }
+
+    private Response store(String key, Response response, String etag, String lastModified) throws IOException {
+        ResponseBody body = response.body();
+        MediaType contentType = body.contentType();
+        File tmp = File.createTempFile(key, ".tmp", dir);
+        try {
+            BufferedSink sink = Okio.buffer(Okio.sink(tmp));
+            try {
+                sink.writeAll(body.source());
+            } finally {
+                sink.close();
+                body.close();
+            }
+            Properties meta = new Properties();
+            if (etag != null) {
+                meta.setProperty(ETAG, etag);
+            }
+            if (lastModified != null) {
+                meta.setProperty(LAST_MODIFIED, lastModified);
+            }
+            if (contentType != null) {
+                meta.setProperty(CONTENT_TYPE, contentType.toString());
+            }
+            long length = tmp.length();
+            InputStream in;
+            synchronized (this) {
+                File stored = new File(dir, key + BODY);
+                Files.move(tmp.toPath(), stored.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                OutputStream out = new FileOutputStream(new File(dir, key + META));
+                try {
+                    meta.store(out, null);
+                } finally {
+                    out.close();
+                }
+                Long previous = index.put(key, length);
+                size += length - (previous == null ? 0 : previous);
+                in = new FileInputStream(stored);
+                this.trim();
+            }
+            return response.newBuilder()
+                .body(ResponseBody.create(contentType, length, Okio.buffer(Okio.source(in)))).build();
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+    }
+
+    private synchronized Properties lookup(String key) {
+        if (index.get(key) == null) {
+            return null;
+        }
+        Properties meta = new Properties();
+        try {
+            InputStream in = new FileInputStream(new File(dir, key + META));
+            try {
+                meta.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            this.remove(key);
+            return null;
+        }
+        return meta;
+    }
+
+    private synchronized void remove(String key) {
+        Long length = index.remove(key);
+        if (length != null) {
+            size -= length;
+        }
+        new File(dir, key + META).delete();
+        new File(dir, key + BODY).delete();
+    }
+
+    private synchronized void trim() {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            size -= eldest.getValue();
+            new File(dir, eldest.getKey() + META).delete();
+            new File(dir, eldest.getKey() + BODY).delete();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Reads index of stored responses on first use.
+     *
+     * @return false if cache directory is not available
+     */
+    private synchronized boolean ensureLoaded() {
+        if (loaded) {
+            return available && dir.isDirectory();
+        }
+        loaded = true;
+        if (!privateDirectory(dir)) {
+            logger.warn("Failed to create http cache directory " + dir.getAbsolutePath()
+                + " accessible to its owner only, responses will not be cached");
+            return false;
+        }
+        File[] bodies = dir.listFiles((d, name) -> name.endsWith(BODY));
+        if (bodies == null) {
+            return false;
+        }
+        Arrays.sort(bodies, Comparator.comparingLong(File::lastModified));
+        for (File b : bodies) {
+            String key = b.getName().substring(0, b.getName().length() - BODY.length());
+            if (new File(dir, key + META).exists()) {
+                index.put(key, b.length());
+                size += b.length();
+            } else {
+                b.delete();
+            }
+        }
+        this.trim();
+        available = true;
+        return true;
+    }
+
+    /**
+     * Creates dir, or restricts an existing one, so that only the current user can access it,
+     * as cached bodies are readable by anyone who can read the directory.
+     * On file systems without POSIX permissions the directory is only created.
+     *
+     * @return false if dir could not be created, restricted or is owned by another user
+     */
+    public static boolean privateDirectory(File dir) {
+        Path path = dir.toPath();
+        try {
+            if (!Files.getFileStore(existing(path)).supportsFileAttributeView("posix")) {
+                Files.createDirectories(path);
+                return true;
+            }
+            Set<PosixFilePermission> ownerOnly = PosixFilePermissions.fromString("rwx------");
+            if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                Files.createDirectories(path, PosixFilePermissions.asFileAttribute(ownerOnly));
+            }
+            UserPrincipal user = path.getFileSystem().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+            if (!user.equals(Files.getOwner(path, LinkOption.NOFOLLOW_LINKS))) {
+                return false;
+            }
+            Files.setPosixFilePermissions(path, ownerOnly);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    private static Path existing(Path path) {
+        Path p = path.toAbsolutePath();
+        while (!Files.exists(p) && p.getParent() != null) {
+            p = p.getParent();
+        }
+        return p;
+    }
+
+    /**
+     * Removes all stored responses.
+     */
+    public synchronized void clear() {
+        this.ensureLoaded();
+        for (String key : index.keySet().toArray(new String[0])) {
+            this.remove(key);
+        }
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long bytesSaved() {
+        return bytesSaved.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized int entries() {
+        return index.size();
+    }
+
+    public String stats() {
+        long r = requests();
+        return "Http cache: entries=" + entries() + ", size=" + size() + " bytes, hits=" + hits() + "/" + r
+            + " (" + (r == 0 ? 0 : hits() * 100 / r) + "%), bytes saved=" + bytesSaved()
+            + ", evictions=" + evictions();
+    }
+
+    private static String key(Request request) {
+        return ByteString.encodeUtf8(String.valueOf(request.header(Api.AUTHORIZATION)) + " " + request.url()).sha1().hex();
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.api;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of one logical BlazeMeter endpoint, see {@link ApiMetrics}.
+ */
+public class EndpointStats {
+
+    private final String name;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram ttfb = new LatencyHistogram();
+    private final LatencyHistogram connect = new LatencyHistogram();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong attempts = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong tlsHandshakes = new AtomicLong();
+    private final ConcurrentHashMap<Integer, AtomicLong> codes = new ConcurrentHashMap<Integer, AtomicLong>();
+
+    public EndpointStats(String name) {
+        this.name = name;
+    }
+
+    void call(long millis, int code, long out) {
+        calls.incrementAndGet();
+        latency.record(millis);
+        bytesOut.addAndGet(Math.max(0, out));
+        if (code < 0 || code >= 400) {
+            failures.incrementAndGet();
+        }
+        codes.computeIfAbsent(code, c -> new AtomicLong()).incrementAndGet();
+    }
+
+    void attempt() {
+        attempts.incrementAndGet();
+    }
+
+    void ttfb(long millis) {
+        ttfb.record(millis);
+    }
+
+    void connect(long millis, boolean tls) {
+        connect.record(millis);
+        if (tls) {
+            tlsHandshakes.incrementAndGet();
+        }
+    }
+
+    void bytesIn(long bytes) {
+        bytesIn.addAndGet(bytes);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Time until response headers, including retries and waiting between them.
+     */
+    public LatencyHistogram latency() {
+        return latency;
+    }
+
+    /**
+     * Time from sending a request on an open connection until response headers.
+     */
+    public LatencyHistogram ttfb() {
+        return ttfb;
+    }
+
+    /**
+     * DNS + TCP connect + TLS handshake of newly opened connections.
+     */
+    public LatencyHistogram connect() {
+        return connect;
+    }
+
+    public long calls() {
+        return calls.get();
+    }
+
+    public long retries() {
+        return Math.max(0, attempts.get() - calls.get());
+    }
+
+    public long failures() {
+        return failures.get();
+    }
+
+    public long bytesIn() {
+        return bytesIn.get();
+    }
+
+    public long bytesOut() {
+        return bytesOut.get();
+    }
+
+    public long tlsHandshakes() {
+        return tlsHandshakes.get();
+    }
+
+    /**
+     * response code -> count, -1 stands for I/O failure without response
+     */
+    public Map<Integer, Long> codes() {
+        Map<Integer, Long> c = new TreeMap<Integer, Long>();
+        for (Map.Entry<Integer, AtomicLong> e : codes.entrySet()) {
+            c.put(e.getKey(), e.getValue().get());
+        }
+        return c;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": calls=" + calls() + ", p50=" + latency.percentile(50) + "ms, p95=" + latency.percentile(95)
+            + "ms, max=" + latency.max() + "ms, ttfb avg=" + ttfb.mean() + "ms, new connections=" + connect.count()
+            + " (avg " + connect.mean() + "ms, tls=" + tlsHandshakes() + "), retries=" + retries()
+            + ", in=" + bytesIn() + "B, out=" + bytesOut() + "B, codes=" + codes();
+    }
+}
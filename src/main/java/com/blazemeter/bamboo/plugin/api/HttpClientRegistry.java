@@ -0,0 +1,181 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.api;
+
+import okhttp3.Authenticator;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.Proxy;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plugin-wide registry of OkHttpClient instances.
+ * One base client is kept per server url + proxy settings; callers receive
+ * newBuilder() derivatives, so all of them share the base client's
+ * connection pool, dispatcher and TLS sessions.
+ */
+public class HttpClientRegistry {
+
+    private static final int MAX_CLIENTS = 16;
+    private static final int MAX_IDLE_CONNECTIONS = 10;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    private static final HttpClientRegistry INSTANCE = new HttpClientRegistry();
+
+    private Logger logger = LoggerFactory.getLogger("com.blazemeter");
+
+    private final Map<String, OkHttpClient> clients = new LinkedHashMap<String, OkHttpClient>(MAX_CLIENTS, 0.75f, true);
+    private final Map<Connection, Boolean> seenConnections = Collections.synchronizedMap(new WeakHashMap<Connection, Boolean>());
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong networkRequests = new AtomicLong();
+    private final AtomicLong reusedConnections = new AtomicLong();
+
+    private HttpClientRegistry() {
+    }
+
+    public static HttpClientRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns a builder derived from the shared base client for given settings.
+     * Interceptors added to the returned builder (e.g. per-build http-log)
+     * affect only the client built from it.
+     */
+    public OkHttpClient.Builder newBuilder(String serverUrl, Proxy proxy, Authenticator auth,
+                                           String proxyUser, String proxyPass) {
+        return baseClient(serverUrl, proxy, auth, proxyUser, proxyPass).newBuilder();
+    }
+
+    synchronized OkHttpClient baseClient(String serverUrl, Proxy proxy, Authenticator auth,
+                                         String proxyUser, String proxyPass) {
+        String key = key(serverUrl, proxy, proxyUser, proxyPass);
+        OkHttpClient client = clients.get(key);
+        if (client != null) {
+            hits.incrementAndGet();
+            return client;
+        }
+        misses.incrementAndGet();
+        client = new OkHttpClient.Builder()
+            .addInterceptor(ConditionalCache.getInstance())
+            .addInterceptor(new RetryInterceptor(this.logger))
+            .addNetworkInterceptor(new ReuseCounter())
+            .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+            .connectTimeout(10, TimeUnit.SECONDS)
+            .readTimeout(60, TimeUnit.SECONDS)
+            .proxy(proxy)
+            .proxyAuthenticator(auth).build();
+        clients.put(key, client);
+        if (clients.size() > MAX_CLIENTS) {
+            Map.Entry<String, OkHttpClient> eldest = clients.entrySet().iterator().next();
+            clients.remove(eldest.getKey());
+            eldest.getValue().connectionPool().evictAll();
+            evictions.incrementAndGet();
+        }
+        return client;
+    }
+
+    /**
+     * Drops all base clients and closes their idle connections.
+     */
+    public synchronized void clear() {
+        for (OkHttpClient c : clients.values()) {
+            c.connectionPool().evictAll();
+        }
+        evictions.addAndGet(clients.size());
+        clients.clear();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    public long networkRequests() {
+        return networkRequests.get();
+    }
+
+    public long reusedConnections() {
+        return reusedConnections.get();
+    }
+
+    public synchronized int clients() {
+        return clients.size();
+    }
+
+    public synchronized int idleConnections() {
+        int idle = 0;
+        for (OkHttpClient c : clients.values()) {
+            idle += c.connectionPool().idleConnectionCount();
+        }
+        return idle;
+    }
+
+    public synchronized int connections() {
+        int total = 0;
+        for (OkHttpClient c : clients.values()) {
+            total += c.connectionPool().connectionCount();
+        }
+        return total;
+    }
+
+    public String stats() {
+        long requests = networkRequests();
+        long reused = reusedConnections();
+        long reuseRate = requests == 0 ? 0 : reused * 100 / requests;
+        return "Http clients: " + clients() + " (hits=" + hits() + ", misses=" + misses() + ", evictions=" + evictions()
+            + "), connections: " + connections() + " (idle=" + idleConnections() + "), requests=" + requests
+            + ", reused connections=" + reused + " (" + reuseRate + "%)";
+    }
+
+    private static String key(String serverUrl, Proxy proxy, String proxyUser, String proxyPass) {
+        return String.valueOf(serverUrl) + "|" + String.valueOf(proxy) + "|" + String.valueOf(proxyUser)
+            + "|" + (proxyPass == null ? 0 : proxyPass.hashCode());
+    }
+
+    private class ReuseCounter implements Interceptor {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Connection connection = chain.connection();
+            networkRequests.incrementAndGet();
+            if (connection != null && seenConnections.put(connection, Boolean.TRUE) != null) {
+                reusedConnections.incrementAndGet();
+            }
+            return chain.proceed(chain.request());
+        }
+    }
+}
@@ -15,36 +15,200 @@
 package com.blazemeter.bamboo.plugin.api;
 
 import com.blazemeter.bamboo.plugin.configuration.constants.Constants;
-import java.util.logging.SimpleFormatter;
 import okhttp3.logging.HttpLoggingInterceptor;
+import org.slf4j.LoggerFactory;
 
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.logging.FileHandler;
-import java.util.logging.Logger;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Writes http-log of a build on a dedicated thread.
+ * Callers only put the message into a bounded queue; when the queue is full the message
+ * is dropped or, with the "block" policy, the caller waits up to {@link #BLOCK_TIMEOUT_MILLIS}
+ * for free space and drops it after that. Messages longer than the configured limit are truncated.
+ * The writer drains the queue in batches and flushes the file once per batch.
+ */
 public class HttpLogger implements HttpLoggingInterceptor.Logger {
 
-    private Logger httpLog = Logger.getLogger(Constants.HTTP_LOG);
-    private FileHandler http_lfh;
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+    public static final int DEFAULT_MAX_MESSAGE = 64 * 1024;
+    public static final String DROP = "drop";
+    public static final String BLOCK = "block";
+
+    static final long BLOCK_TIMEOUT_MILLIS = 1000;
+    private static final int BATCH_SIZE = 256;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    private org.slf4j.Logger logger = LoggerFactory.getLogger("com.blazemeter");
+
+    private final ConcurrentLinkedQueue<Record> queue = new ConcurrentLinkedQueue<Record>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final int capacity;
+    private final int maxMessage;
+    private final boolean block;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong truncated = new AtomicLong();
+
+    private final Writer out;
+    private final Thread writer;
+    private volatile boolean closed = false;
 
     public HttpLogger(String httpLog_f) {
+        this(httpLog_f, Integer.getInteger(Constants.HTTP_LOG_QUEUE, DEFAULT_QUEUE_SIZE),
+            Integer.getInteger(Constants.HTTP_LOG_MAX_MESSAGE, DEFAULT_MAX_MESSAGE),
+            BLOCK.equalsIgnoreCase(System.getProperty(Constants.HTTP_LOG_POLICY, DROP)));
+    }
+
+    public HttpLogger(String httpLog_f, int capacity, int maxMessage, boolean block) {
+        this.capacity = Math.max(1, capacity);
+        this.maxMessage = Math.max(1, maxMessage);
+        this.block = block;
+        Writer w = null;
         try {
-            http_lfh = new FileHandler(httpLog_f);
+            w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(httpLog_f, true), Charset.forName("UTF-8")));
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.warn("Failed to open http-log " + httpLog_f + ": ", e);
         }
-        http_lfh.setFormatter(new SimpleFormatter());
-        httpLog.addHandler(http_lfh);
-        httpLog.setUseParentHandlers(false);
-
+        this.out = w;
+        this.writer = new Thread(this::drainLoop, "bzm-http-log-" + THREADS.incrementAndGet());
+        this.writer.setDaemon(true);
+        this.writer.start();
     }
 
     @Override
     public void log(String message) {
-        httpLog.info(message);
+        if (closed || out == null) {
+            dropped.incrementAndGet();
+            return;
+        }
+        if (message.length() > maxMessage) {
+            truncated.incrementAndGet();
+            message = message.substring(0, maxMessage) + "... [" + (message.length() - maxMessage) + " chars truncated]";
+        }
+        if (!this.reserve()) {
+            dropped.incrementAndGet();
+            return;
+        }
+        queue.offer(new Record(System.currentTimeMillis(), message));
     }
 
+    private boolean reserve() {
+        long deadline = 0;
+        while (true) {
+            int q = queued.get();
+            if (q < capacity) {
+                if (queued.compareAndSet(q, q + 1)) {
+                    return true;
+                }
+                continue;
+            }
+            if (!block || closed) {
+                return false;
+            }
+            long now = System.currentTimeMillis();
+            if (deadline == 0) {
+                deadline = now + BLOCK_TIMEOUT_MILLIS;
+                LockSupport.unpark(writer);
+            } else if (now >= deadline) {
+                return false;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    private void drainLoop() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        StringBuilder batch = new StringBuilder();
+        while (true) {
+            boolean stop = closed;
+            int n = 0;
+            Record r;
+            while (n < BATCH_SIZE && (r = queue.poll()) != null) {
+                queued.decrementAndGet();
+                batch.append(format.format(new Date(r.time))).append(' ').append(r.message).append('\n');
+                n++;
+            }
+            if (n > 0) {
+                try {
+                    out.write(batch.toString());
+                    out.flush();
+                    written.addAndGet(n);
+                } catch (IOException e) {
+                    dropped.addAndGet(n);
+                }
+                batch.setLength(0);
+            } else if (stop) {
+                return;
+            } else {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Writes out queued messages and closes the file.
+     */
     public void close() {
-        http_lfh.close();
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // logged concurrently with close or left over after timeout
+        dropped.addAndGet(queued.getAndSet(0));
+        queue.clear();
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close http-log: ", e);
+            }
+        }
+    }
+
+    public long written() {
+        return written.get();
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+
+    public long truncated() {
+        return truncated.get();
+    }
+
+    public String stats() {
+        return "Http-log: written=" + written() + ", dropped=" + dropped() + ", truncated=" + truncated()
+            + " (queue=" + capacity + ", policy=" + (block ? BLOCK : DROP) + ", max message=" + maxMessage + " chars)";
+    }
+
+    private static class Record {
+        private final long time;
+        private final String message;
+
+        Record(long time, String message) {
+            this.time = time;
+            this.message = message;
+        }
     }
 }
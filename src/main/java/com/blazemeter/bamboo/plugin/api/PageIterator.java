@@ -0,0 +1,109 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.api;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over a skip/limit paged list endpoint.
+ * Next page is requested only when the current one is exhausted, so a caller
+ * that stops iterating early does not download the rest of the list.
+ * Iteration ends on the first page that is shorter than the page size; pages are
+ * measured by the items the server returned, including ones the fetcher dropped.
+ * I/O failures are rethrown as {@link UncheckedIOException}.
+ */
+public class PageIterator<T> implements Iterator<T> {
+
+    public static final int DEFAULT_PAGE_SIZE = 500;
+
+    public interface Fetcher<T> {
+        Page<T> page(int skip, int limit) throws IOException;
+    }
+
+    /**
+     * Items of one page, and the number of items the server returned for it.
+     */
+    public static class Page<T> {
+        private final List<T> items;
+        private final int returned;
+
+        public Page(List<T> items, int returned) {
+            this.items = items;
+            this.returned = returned;
+        }
+
+        public static <T> Page<T> of(List<T> items) {
+            return new Page<T>(items, items.size());
+        }
+
+        public List<T> getItems() {
+            return items;
+        }
+
+        public int getReturned() {
+            return returned;
+        }
+    }
+
+    private final Fetcher<T> fetcher;
+    private final int pageSize;
+
+    private Iterator<T> current = Collections.<T>emptyList().iterator();
+    private int skip = 0;
+    private int pages = 0;
+    private boolean last = false;
+
+    public PageIterator(Fetcher<T> fetcher, int pageSize) {
+        this.fetcher = fetcher;
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext() && !last) {
+            Page<T> page;
+            try {
+                page = fetcher.page(skip, pageSize);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            pages++;
+            skip += page.getReturned();
+            last = page.getReturned() < pageSize;
+            current = page.getItems().iterator();
+        }
+        return current.hasNext();
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    /**
+     * Number of pages requested so far.
+     */
+    public int pages() {
+        return pages;
+    }
+}
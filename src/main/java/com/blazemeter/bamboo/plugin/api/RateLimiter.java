@@ -0,0 +1,194 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.api;
+
+import com.blazemeter.bamboo.plugin.configuration.constants.Constants;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okio.ByteString;
+
+import java.io.InterruptedIOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Agent-wide token bucket shared by all tasks using the same credentials and BlazeMeter server.
+ * Every attempt sent to the server takes one token; when the bucket is empty the caller waits.
+ * Waiting callers are served by lane: {@link Lane#POLL} before {@link Lane#CATALOG}.
+ * {@link Lane#CONTROL} requests (start, stop, terminate) never wait, they take a token
+ * even if the bucket goes below zero, which delays the other lanes instead.
+ * Requests to other hosts (artifact downloads) are not limited.
+ */
+public class RateLimiter {
+
+    public static final double DEFAULT_PER_SECOND = 10;
+    public static final int DEFAULT_BURST = 20;
+
+    private static final RateLimiter INSTANCE = new RateLimiter(
+        Double.parseDouble(System.getProperty(Constants.RATE_LIMIT, String.valueOf(DEFAULT_PER_SECOND))),
+        Integer.getInteger(Constants.RATE_BURST, DEFAULT_BURST));
+
+    public enum Lane {
+        CONTROL, POLL, CATALOG
+    }
+
+    private final double perSecond;
+    private final int burst;
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<String, Bucket>();
+    private final Map<Lane, LatencyHistogram> waits = new EnumMap<Lane, LatencyHistogram>(Lane.class);
+
+    /**
+     * @param perSecond tokens added per second, <= 0 disables limiting
+     * @param burst     bucket capacity
+     */
+    public RateLimiter(double perSecond, int burst) {
+        this.perSecond = perSecond;
+        this.burst = Math.max(1, burst);
+        for (Lane lane : Lane.values()) {
+            waits.put(lane, new LatencyHistogram());
+        }
+    }
+
+    public static RateLimiter getInstance() {
+        return INSTANCE;
+    }
+
+    public static Lane lane(Request request) {
+        switch (ApiMetrics.endpoint(request)) {
+            case "startTest":
+            case "stopTest":
+            case "terminateTest":
+                return Lane.CONTROL;
+            case "tests":
+            case "test":
+            case "multiTests":
+            case "multiTest":
+            case "project":
+            case "workspaces":
+            case "accounts":
+            case "activeTests":
+            case "user":
+                return Lane.CATALOG;
+            default:
+                return Lane.POLL;
+        }
+    }
+
+    /**
+     * Takes a token from the bucket of given credentials and server, waiting if needed.
+     *
+     * @return milliseconds spent waiting
+     */
+    public long acquire(String credentials, String serverUrl, Lane lane) throws InterruptedIOException {
+        if (perSecond <= 0) {
+            return 0;
+        }
+        String key = ByteString.encodeUtf8(String.valueOf(credentials)).sha1().hex() + " " + serverUrl;
+        Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket());
+        long start = System.nanoTime();
+        try {
+            bucket.take(lane);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for BlazeMeter API rate limit");
+        }
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        waits.get(lane).record(waited);
+        return waited;
+    }
+
+    /**
+     * Limits requests to the host of serverUrl; goes after the retry interceptor so that every attempt is limited.
+     */
+    public Interceptor interceptor(String credentials, String serverUrl) {
+        HttpUrl server = HttpUrl.parse(serverUrl);
+        return chain -> {
+            Request request = chain.request();
+            if (server == null || (request.url().host().equals(server.host()) && request.url().port() == server.port())) {
+                this.acquire(credentials, serverUrl, lane(request));
+            }
+            return chain.proceed(request);
+        };
+    }
+
+    /**
+     * Time spent waiting for a token by requests of given lane.
+     */
+    public LatencyHistogram waits(Lane lane) {
+        return waits.get(lane);
+    }
+
+    public String stats() {
+        if (perSecond <= 0) {
+            return "Rate limiter: disabled";
+        }
+        StringBuilder sb = new StringBuilder("Rate limiter: ").append(perSecond).append("/s, burst=").append(burst)
+            .append(", buckets=").append(buckets.size());
+        for (Lane lane : Lane.values()) {
+            LatencyHistogram h = waits.get(lane);
+            sb.append(", ").append(lane.name().toLowerCase()).append(" wait: n=").append(h.count())
+                .append(" p50=").append(h.percentile(50)).append("ms p95=").append(h.percentile(95))
+                .append("ms max=").append(h.max()).append("ms");
+        }
+        return sb.toString();
+    }
+
+    private class Bucket {
+        private double tokens = burst;
+        private long refilled = System.nanoTime();
+        private final int[] waiting = new int[Lane.values().length];
+
+        private synchronized void take(Lane lane) throws InterruptedException {
+            this.refill();
+            if (lane == Lane.CONTROL) {
+                tokens -= 1;
+                return;
+            }
+            waiting[lane.ordinal()]++;
+            try {
+                while (true) {
+                    this.refill();
+                    if (tokens >= 1 && !this.higherWaiting(lane)) {
+                        tokens -= 1;
+                        return;
+                    }
+                    long sleep = tokens >= 1 ? 1 : (long) Math.ceil((1 - tokens) * 1000 / perSecond);
+                    this.wait(Math.max(1, sleep));
+                }
+            } finally {
+                waiting[lane.ordinal()]--;
+                this.notifyAll();
+            }
+        }
+
+        private boolean higherWaiting(Lane lane) {
+            for (int i = 0; i < lane.ordinal(); i++) {
+                if (waiting[i] > 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - refilled) * perSecond / TimeUnit.SECONDS.toNanos(1));
+            refilled = now;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.api;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits retries to a share of the traffic sent to one host.
+ * Every original request deposits {@code percent}/100 of a token,
+ * every retry withdraws a whole token. Balance is capped at {@code maxTokens},
+ * which is also the initial balance, so short bursts of retries are allowed
+ * while a long run of failures cannot multiply the load on the server.
+ */
+public class RetryBudget {
+
+    private static final long UNIT = 1000;
+
+    private final long deposit;
+    private final long max;
+    private final AtomicLong balance;
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    public RetryBudget(int percent, int maxTokens) {
+        this.deposit = Math.max(0, percent) * UNIT / 100;
+        this.max = Math.max(1, maxTokens) * UNIT;
+        this.balance = new AtomicLong(this.max);
+    }
+
+    public void onRequest() {
+        long b;
+        do {
+            b = balance.get();
+            if (b >= max) {
+                return;
+            }
+        } while (!balance.compareAndSet(b, Math.min(max, b + deposit)));
+    }
+
+    public boolean tryRetry() {
+        long b;
+        do {
+            b = balance.get();
+            if (b < UNIT) {
+                rejected.incrementAndGet();
+                return false;
+            }
+        } while (!balance.compareAndSet(b, b - UNIT));
+        return true;
+    }
+
+    public long rejected() {
+        return rejected.get();
+    }
+}
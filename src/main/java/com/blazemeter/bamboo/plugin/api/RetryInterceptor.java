@@ -14,40 +14,130 @@
 
 package com.blazemeter.bamboo.plugin.api;
 
+import com.blazemeter.bamboo.plugin.configuration.constants.Constants;
 import okhttp3.Interceptor;
 import okhttp3.Request;
 import okhttp3.Response;
 import org.slf4j.Logger;
 
 import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
+/**
+ * Retries failed requests according to {@link RetryPolicy} of the request,
+ * limited by per-host {@link RetryBudget} and {@link CircuitBreaker}.
+ */
 public class RetryInterceptor implements Interceptor {
 
-    private Logger logger =null;
-    public RetryInterceptor(Logger logger){
+    public static final int DEFAULT_BUDGET_PERCENT = 20;
+    public static final int BUDGET_MAX_TOKENS = 10;
+    public static final int DEFAULT_CIRCUIT_FAILURES = 5;
+    public static final long DEFAULT_CIRCUIT_OPEN_SEC = 30;
+
+    private Logger logger = null;
+    private final Function<Request, RetryPolicy> policies;
+    private final int budgetPercent;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private final ConcurrentHashMap<String, RetryBudget> budgets = new ConcurrentHashMap<String, RetryBudget>();
+    private final ConcurrentHashMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<String, CircuitBreaker>();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public RetryInterceptor(Logger logger) {
+        this(logger, RetryPolicy::forRequest,
+            Integer.getInteger(Constants.RETRY_BUDGET_PERCENT, DEFAULT_BUDGET_PERCENT),
+            Integer.getInteger(Constants.CIRCUIT_FAILURES, DEFAULT_CIRCUIT_FAILURES),
+            Long.getLong(Constants.CIRCUIT_OPEN_SEC, DEFAULT_CIRCUIT_OPEN_SEC) * 1000);
+    }
+
+    public RetryInterceptor(Logger logger, Function<Request, RetryPolicy> policies,
+                            int budgetPercent, int failureThreshold, long openMillis) {
         this.logger = logger;
+        this.policies = policies;
+        this.budgetPercent = budgetPercent;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
     }
+
     @Override
     public Response intercept(Chain chain) throws IOException {
         Request request = chain.request();
-        Response response = chain.proceed(request);
-        int retry = 1;
-        int maxRetries=3;
-        while (!respSuccess(response) && retry < maxRetries+1) {
-            try{
-                Thread.sleep(1000*retry);
-            }catch (InterruptedException e){
-                throw new IOException("Retry bzmLog was interrupted on sleep at retry # "+retry);
+        RetryPolicy policy = policies.apply(request);
+        String host = request.url().host() + ":" + request.url().port();
+        RetryBudget budget = budgets.computeIfAbsent(host, h -> new RetryBudget(budgetPercent, BUDGET_MAX_TOKENS));
+        CircuitBreaker breaker = breakers.computeIfAbsent(host, h -> new CircuitBreaker(failureThreshold, openMillis));
+        budget.onRequest();
+        int retry = 0;
+        while (true) {
+            if (!breaker.allowRequest()) {
+                rejected.incrementAndGet();
+                throw new IOException("BlazeMeter server " + host + " is unavailable after " + failureThreshold
+                    + " consecutive failures, next attempt in " + breaker.retryInMillis() / 1000 + " seconds");
+            }
+            Response response = null;
+            IOException failure = null;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException e) {
+                failure = e;
+            } catch (RuntimeException | Error e) {
+                // settle a half-open trial, otherwise the circuit would reject requests for good
+                breaker.onFailure();
+                throw e;
+            }
+            if (failure != null || response.code() >= 500) {
+                boolean wasClosed = breaker.state() == CircuitBreaker.State.CLOSED;
+                breaker.onFailure();
+                if (wasClosed && breaker.state() == CircuitBreaker.State.OPEN) {
+                    logger.warn("BlazeMeter server " + host + " failed " + failureThreshold
+                        + " times in a row, requests will be rejected for " + openMillis / 1000 + " seconds");
+                }
+            } else {
+                breaker.onSuccess();
+            }
+            boolean retryable = failure != null ? policy.retryConnectionErrors() : policy.retryable(response.code());
+            long delay = retryable && retry < policy.maxRetries()
+                ? policy.delay(retry, response == null ? null : response.header("Retry-After")) : -1;
+            // once the circuit opens, return the actual failure instead of the fail-fast error
+            if (delay < 0 || breaker.state() == CircuitBreaker.State.OPEN || !budget.tryRetry()) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return response;
+            }
+            if (response != null) {
+                response.body().close();
             }
-            response = chain.proceed(request);
-            logger.info("Child request: code = "+response.code()+" -> "+retry+" retry");
             retry++;
+            retries.incrementAndGet();
+            logger.info("Child request: " + (failure != null ? failure.getMessage() : "code = " + response.code())
+                + " -> " + retry + " retry in " + delay + " ms (" + policy.name() + " policy)");
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Retry bzmLog was interrupted on sleep at retry # " + retry);
+            }
         }
-        return response;
     }
 
-    private boolean respSuccess(Response response) {
-        boolean respSuccess = response.isSuccessful() || response.code() <= 406;
-        return respSuccess;
+    public long retries() {
+        return retries.get();
+    }
+
+    /**
+     * Requests rejected because circuit of their host was open.
+     */
+    public long rejected() {
+        return rejected.get();
+    }
+
+    public CircuitBreaker.State state(String host) {
+        CircuitBreaker breaker = breakers.get(host);
+        return breaker == null ? CircuitBreaker.State.CLOSED : breaker.state();
     }
 }
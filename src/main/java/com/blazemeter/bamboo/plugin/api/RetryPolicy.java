@@ -0,0 +1,134 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.api;
+
+import okhttp3.Request;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Describes when and how often a request may be retried.
+ * Policy is chosen by {@link #forRequest(Request)} from the method and path:
+ * <ul>
+ * <li>GET - idempotent, retried on connection errors, 408, 429 and 5xx;</li>
+ * <li>test/collection start POST - may start a second test if it reached the server,
+ * so it is retried only on 429 and 503, which mean the request was not processed;</li>
+ * <li>stop/terminate POST - repeating is harmless and important, retried more times;</li>
+ * <li>other POST/PATCH - retried on 429 and 5xx, not on connection errors.</li>
+ * </ul>
+ */
+public class RetryPolicy {
+
+    /**
+     * Retry-After longer than that is not waited for, response is returned to caller.
+     */
+    public static final long MAX_RETRY_AFTER_MILLIS = 60000;
+
+    public static final RetryPolicy IDEMPOTENT = new RetryPolicy("idempotent", 3, 500, 8000, true, true);
+    public static final RetryPolicy START = new RetryPolicy("start", 2, 1000, 8000, false, false);
+    public static final RetryPolicy TERMINATE = new RetryPolicy("terminate", 5, 500, 8000, true, true);
+    public static final RetryPolicy DEFAULT = new RetryPolicy("default", 3, 500, 8000, false, true);
+
+    private final String name;
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final boolean retryConnectionErrors;
+    private final boolean retryServerErrors;
+
+    public RetryPolicy(String name, int maxRetries, long baseDelayMillis, long maxDelayMillis,
+                       boolean retryConnectionErrors, boolean retryServerErrors) {
+        this.name = name;
+        this.maxRetries = maxRetries;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.retryConnectionErrors = retryConnectionErrors;
+        this.retryServerErrors = retryServerErrors;
+    }
+
+    public static RetryPolicy forRequest(Request request) {
+        String method = request.method();
+        String path = request.url().encodedPath();
+        if ("GET".equals(method) || "HEAD".equals(method)) {
+            return IDEMPOTENT;
+        }
+        if (path.endsWith("/start")) {
+            return START;
+        }
+        if (path.endsWith("/stop") || path.endsWith("/terminate")) {
+            return TERMINATE;
+        }
+        return DEFAULT;
+    }
+
+    public boolean retryable(int code) {
+        if (code == 429 || code == 503) {
+            return true;
+        }
+        return retryServerErrors && (code == 408 || code >= 500);
+    }
+
+    public boolean retryConnectionErrors() {
+        return retryConnectionErrors;
+    }
+
+    public int maxRetries() {
+        return maxRetries;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Delay before retry # attempt+1: exponential backoff with jitter,
+     * but not shorter than Retry-After when server sent one.
+     *
+     * @return delay in millis or -1 if server asked to wait longer than {@link #MAX_RETRY_AFTER_MILLIS}
+     */
+    public long delay(int attempt, String retryAfter) {
+        long backoff = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt, 20));
+        long jittered = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        long serverDelay = retryAfterMillis(retryAfter);
+        if (serverDelay > MAX_RETRY_AFTER_MILLIS) {
+            return -1;
+        }
+        return Math.max(jittered, serverDelay);
+    }
+
+    /**
+     * Parses Retry-After given either in seconds or as http-date.
+     *
+     * @return millis to wait or 0 if header is absent or malformed
+     */
+    static long retryAfterMillis(String retryAfter) {
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return 0;
+        }
+        String value = retryAfter.trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, at.toInstant().toEpochMilli() - System.currentTimeMillis());
+            } catch (Exception de) {
+                return 0;
+            }
+        }
+    }
+}
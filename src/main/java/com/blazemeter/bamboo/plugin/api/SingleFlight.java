@@ -0,0 +1,168 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.api;
+
+import com.blazemeter.bamboo.plugin.configuration.constants.Constants;
+import okio.ByteString;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces identical concurrent requests: while a call for a key is in flight,
+ * other callers with the same key wait for it and receive the same result instead
+ * of sending their own request. With a memo window > 0 the result is also reused
+ * by callers arriving within that window after the call has finished.
+ * Shared results must not be modified by callers.
+ */
+public class SingleFlight {
+
+    public static final long DEFAULT_MEMO_MILLIS = 0;
+
+    private static final int PURGE_THRESHOLD = 256;
+
+    private static final SingleFlight INSTANCE = new SingleFlight(
+        Long.getLong(Constants.SINGLE_FLIGHT_MEMO, DEFAULT_MEMO_MILLIS));
+
+    public interface Loader<T> {
+        T load() throws IOException;
+    }
+
+    private final long memoMillis;
+    private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<String, Flight>();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong shared = new AtomicLong();
+    private final AtomicLong memoHits = new AtomicLong();
+
+    public SingleFlight(long memoMillis) {
+        this.memoMillis = memoMillis;
+    }
+
+    public static SingleFlight getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Key of a request sent with given credentials; credentials are not kept in clear text.
+     */
+    public static String key(String credentials, String url) {
+        return ByteString.encodeUtf8(String.valueOf(credentials)).sha1().hex() + " " + url;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Loader<T> loader) throws IOException {
+        requests.incrementAndGet();
+        while (true) {
+            Flight flight = flights.get(key);
+            if (flight != null) {
+                if (flight.expired()) {
+                    flights.remove(key, flight);
+                    continue;
+                }
+                if (flight.future.isDone()) {
+                    memoHits.incrementAndGet();
+                } else {
+                    shared.incrementAndGet();
+                }
+                return (T) await(flight);
+            }
+            Flight own = new Flight();
+            if (flights.putIfAbsent(key, own) != null) {
+                continue;
+            }
+            try {
+                T result = loader.load();
+                own.expiresAt = System.currentTimeMillis() + memoMillis;
+                own.future.complete(result);
+                return result;
+            } catch (IOException | RuntimeException e) {
+                own.expiresAt = 0;
+                own.future.completeExceptionally(e);
+                throw e;
+            } finally {
+                if (memoMillis <= 0 || own.future.isCompletedExceptionally()) {
+                    flights.remove(key, own);
+                } else if (flights.size() > PURGE_THRESHOLD) {
+                    this.purge();
+                }
+            }
+        }
+    }
+
+    private static Object await(Flight flight) throws IOException {
+        try {
+            return flight.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for shared request", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw new IOException(cause.getMessage(), cause);
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private void purge() {
+        for (Map.Entry<String, Flight> e : flights.entrySet()) {
+            if (e.getValue().expired()) {
+                flights.remove(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    /**
+     * Requests that joined a call already in flight.
+     */
+    public long shared() {
+        return shared.get();
+    }
+
+    /**
+     * Requests answered from memoized result.
+     */
+    public long memoHits() {
+        return memoHits.get();
+    }
+
+    public String stats() {
+        long r = requests();
+        long deduped = shared() + memoHits();
+        return "Request coalescing: requests=" + r + ", shared in-flight=" + shared() + ", memo hits=" + memoHits()
+            + ", dedup ratio=" + (r == 0 ? 0 : deduped * 100 / r) + "%";
+    }
+
+    private static class Flight {
+        private final CompletableFuture<Object> future = new CompletableFuture<Object>();
+        private volatile long expiresAt = Long.MAX_VALUE;
+
+        private boolean expired() {
+            return future.isDone() && System.currentTimeMillis() >= expiresAt;
+        }
+    }
+}
@@ -28,9 +28,15 @@ public interface UrlManager {
 
     String masterStatus(String appKey, String testId);
 
-    String tests(String appKey,int workspaceId);
+    String tests(String appKey, int workspaceId, int skip, int limit);
 
-    String multiTests(String appKey,int workspaceId);
+    String multiTests(String appKey, int workspaceId, int skip, int limit);
+
+    String test(String appKey, String testId);
+
+    String multiTest(String appKey, String collectionId);
+
+    String project(String appKey, int projectId);
 
     String activeTests(String appKey,int workspaceId);
 
@@ -60,7 +66,7 @@ public interface UrlManager {
 
     String masterId(String appKey,String masterId);
 
-    String workspaces(String appKey, int accountId);
+    String workspaces(String appKey, int accountId, int skip, int limit);
 
     String accounts(String appKey);
 }
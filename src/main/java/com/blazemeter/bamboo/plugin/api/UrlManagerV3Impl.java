@@ -42,23 +42,55 @@ public class UrlManagerV3Impl implements UrlManager {
     }
 
     @Override
-    public String tests(String appKey,int workspaceId) {
+    public String tests(String appKey, int workspaceId, int skip, int limit) {
         try {
             appKey = URLEncoder.encode(appKey, UrlManager.UTF_8);
         } catch (UnsupportedEncodingException e) {
             e.printStackTrace();
         }
-        return serverUrl + V4+"/tests?limit=10000&workspaceId="+workspaceId+"&app_key=" + appKey + CLIENT_IDENTIFICATION;
+        return serverUrl + V4 + "/tests?skip=" + skip + "&limit=" + limit + "&workspaceId=" + workspaceId+"&app_key=" + appKey + CLIENT_IDENTIFICATION;
     }
 
     @Override
-    public String multiTests(String appKey,int workspaceId) {
+    public String multiTests(String appKey, int workspaceId, int skip, int limit) {
         try {
             appKey = URLEncoder.encode(appKey, UrlManager.UTF_8);
         } catch (UnsupportedEncodingException e) {
             e.printStackTrace();
         }
-        return serverUrl + V4+"/multi-tests?limit=10000&workspaceId="+workspaceId+"&app_key=" + appKey + CLIENT_IDENTIFICATION;
+        return serverUrl + V4 + "/multi-tests?skip=" + skip + "&limit=" + limit + "&workspaceId=" + workspaceId+"&app_key=" + appKey + CLIENT_IDENTIFICATION;
+    }
+
+    @Override
+    public String test(String appKey, String testId) {
+        try {
+            appKey = URLEncoder.encode(appKey, UrlManager.UTF_8);
+            testId = URLEncoder.encode(testId, UrlManager.UTF_8);
+        } catch (UnsupportedEncodingException e) {
+            e.printStackTrace();
+        }
+        return serverUrl + V4 + "/tests/" + testId + "?app_key=" + appKey + CLIENT_IDENTIFICATION;
+    }
+
+    @Override
+    public String multiTest(String appKey, String collectionId) {
+        try {
+            appKey = URLEncoder.encode(appKey, UrlManager.UTF_8);
+            collectionId = URLEncoder.encode(collectionId, UrlManager.UTF_8);
+        } catch (UnsupportedEncodingException e) {
+            e.printStackTrace();
+        }
+        return serverUrl + V4 + "/multi-tests/" + collectionId + "?app_key=" + appKey + CLIENT_IDENTIFICATION;
+    }
+
+    @Override
+    public String project(String appKey, int projectId) {
+        try {
+            appKey = URLEncoder.encode(appKey, UrlManager.UTF_8);
+        } catch (UnsupportedEncodingException e) {
+            e.printStackTrace();
+        }
+        return serverUrl + V4 + "/projects/" + projectId + "?app_key=" + appKey + CLIENT_IDENTIFICATION;
     }
 
     @Override
@@ -213,13 +245,13 @@ public class UrlManagerV3Impl implements UrlManager {
     }
 
     @Override
-    public String workspaces(String appKey,int accountId){
+    public String workspaces(String appKey, int accountId, int skip, int limit) {
         try {
             appKey = URLEncoder.encode(appKey, UrlManager.UTF_8);
         } catch (UnsupportedEncodingException e) {
             e.printStackTrace();
         }
-        return serverUrl + V4 + "/workspaces?limit=1000&enabled=true&app_key=" + appKey + "&"+"accountId="+accountId+CLIENT_IDENTIFICATION;
+        return serverUrl + V4 + "/workspaces?skip=" + skip + "&limit=" + limit + "&enabled=true&app_key=" + appKey + "&"+"accountId="+accountId+CLIENT_IDENTIFICATION;
     }
 
     @Override
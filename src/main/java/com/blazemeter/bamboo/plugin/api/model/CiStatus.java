@@ -0,0 +1,63 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.api.model;
+
+import com.blazemeter.bamboo.plugin.configuration.constants.JsonConstants;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Response of GET /masters/{id}/ci-status: threshold failures and errors of the master.
+ */
+public class CiStatus extends LazyResponse {
+
+    public CiStatus(byte[] body) {
+        super(body);
+    }
+
+    /**
+     * @throws JSONException if response has no failures array
+     */
+    public JSONArray getFailures() {
+        return this.array(JsonConstants.FAILURES);
+    }
+
+    /**
+     * @throws JSONException if response has no errors array
+     */
+    public JSONArray getErrors() {
+        return this.array(JsonConstants.ERRORS);
+    }
+
+    /**
+     * "result" object, as {@link com.blazemeter.bamboo.plugin.api.Api#getCIStatus} returned it
+     */
+    public JSONObject getResult() {
+        Object result = this.tree(JsonConstants.RESULT);
+        if (!(result instanceof JSONObject)) {
+            throw new JSONException("CI status has no result: " + this);
+        }
+        return (JSONObject) result;
+    }
+
+    private JSONArray array(String name) {
+        Object a = this.tree(JsonConstants.RESULT, name);
+        if (!(a instanceof JSONArray)) {
+            throw new JSONException("CI status has no " + name + " array");
+        }
+        return (JSONArray) a;
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.api.model;
+
+import com.blazemeter.bamboo.plugin.configuration.constants.JsonConstants;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Response of GET /sessions/{id}/reports/logs: download urls of session artifacts by title.
+ */
+public class JtlDataUrls extends LazyResponse {
+
+    public static final String ZIP = "Zip";
+
+    private static final String[] DATA = {JsonConstants.RESULT, JsonConstants.DATA};
+
+    public JtlDataUrls(byte[] body) {
+        super(body);
+    }
+
+    /**
+     * title -> dataUrl, in order of response
+     *
+     * @throws JSONException if response has no data array
+     */
+    public Map<String, String> getUrls() {
+        Map<String, String> urls = new LinkedHashMap<String, String>();
+        for (Map<String, Object> d : this.elements(DATA, JsonConstants.TITLE, JsonConstants.DATA_URL)) {
+            Object title = d.get(JsonConstants.TITLE);
+            Object url = d.get(JsonConstants.DATA_URL);
+            if (title != null && url != null && url != JSONObject.NULL && !urls.containsKey(String.valueOf(title))) {
+                urls.put(String.valueOf(title), String.valueOf(url));
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * url of zip with jtl and other artifacts of the session or null if there is none
+     */
+    public String getZipUrl() {
+        return this.getUrls().get(ZIP);
+    }
+
+    /**
+     * whole response, as {@link com.blazemeter.bamboo.plugin.api.Api#retrieveJtlZip} returned it
+     */
+    public JSONObject toJson() {
+        return new JSONObject(this.toString());
+    }
+}
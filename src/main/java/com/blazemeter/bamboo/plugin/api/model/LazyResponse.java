@@ -0,0 +1,218 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.api.model;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable response of BlazeMeter API backed by the raw body.
+ * Nothing is parsed up front: every field is looked up on first access by scanning
+ * the body with a streaming reader, skipping everything off its path, and the
+ * decoded value is remembered. Malformed bodies surface as {@link JSONException}
+ * on access, same as parsing them into JSONObject would.
+ */
+public abstract class LazyResponse {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Object ABSENT = new Object();
+
+    private final byte[] body;
+    private final ConcurrentHashMap<String, Object> decoded = new ConcurrentHashMap<String, Object>();
+
+    protected LazyResponse(byte[] body) {
+        this.body = body == null ? new byte[0] : body;
+    }
+
+    /**
+     * Token found at path or null if path is not present.
+     */
+    protected JsonToken token(String... path) {
+        return (JsonToken) this.memo("t", path, reader -> reader.peek());
+    }
+
+    /**
+     * String, Number, Boolean or JSONObject.NULL found at path;
+     * null if path is not present or holds an object or array.
+     */
+    protected Object scalar(String... path) {
+        return this.memo("s", path, reader -> {
+            JsonToken t = reader.peek();
+            return t == JsonToken.BEGIN_OBJECT || t == JsonToken.BEGIN_ARRAY ? null : read(reader);
+        });
+    }
+
+    protected String string(String... path) {
+        Object v = this.scalar(path);
+        return v == null || v == JSONObject.NULL ? null : String.valueOf(v);
+    }
+
+    protected int integer(int absent, String... path) {
+        Object v = this.scalar(path);
+        if (v instanceof Number) {
+            return ((Number) v).intValue();
+        }
+        if (v instanceof String) {
+            try {
+                return Integer.parseInt((String) v);
+            } catch (NumberFormatException e) {
+                throw new JSONException(Arrays.toString(path) + " is not a number: " + v);
+            }
+        }
+        return absent;
+    }
+
+    /**
+     * Whole value at path decoded into JSONObject/JSONArray, for the rarely used parts of a response.
+     */
+    protected Object tree(String... path) {
+        return this.memo("v", path, LazyResponse::read);
+    }
+
+    /**
+     * Given scalar fields of every object in the array at path; other fields of the elements are skipped.
+     *
+     * @throws JSONException if path is not an array of objects
+     */
+    @SuppressWarnings("unchecked")
+    protected List<Map<String, Object>> elements(String[] path, String... fields) {
+        List<String> wanted = Arrays.asList(fields);
+        return (List<Map<String, Object>>) this.memo("e" + wanted, path, reader -> {
+            if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                throw new JSONException(Arrays.toString(path) + " is not an array");
+            }
+            List<Map<String, Object>> list = new ArrayList<Map<String, Object>>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    throw new JSONException(Arrays.toString(path) + " is not an array of objects");
+                }
+                Map<String, Object> element = new HashMap<String, Object>();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    JsonToken t = reader.peek();
+                    if (wanted.contains(name) && t != JsonToken.BEGIN_OBJECT && t != JsonToken.BEGIN_ARRAY) {
+                        element.put(name, read(reader));
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                list.add(Collections.unmodifiableMap(element));
+            }
+            reader.endArray();
+            return Collections.unmodifiableList(list);
+        });
+    }
+
+    private Object memo(String kind, String[] path, Decoder decoder) {
+        String key = kind + ":" + String.join("/", path);
+        Object v = decoded.get(key);
+        if (v == null) {
+            v = this.find(path, decoder);
+            decoded.putIfAbsent(key, v == null ? ABSENT : v);
+        }
+        return v == ABSENT ? null : v;
+    }
+
+    private Object find(String[] path, Decoder decoder) {
+        JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(body), UTF_8));
+        try {
+            for (String name : path) {
+                if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    return null;
+                }
+                reader.beginObject();
+                boolean found = false;
+                while (reader.hasNext()) {
+                    if (name.equals(reader.nextName())) {
+                        found = true;
+                        break;
+                    }
+                    reader.skipValue();
+                }
+                if (!found) {
+                    return null;
+                }
+            }
+            return decoder.decode(reader);
+        } catch (IOException | IllegalStateException e) {
+            throw new JSONException("Malformed response: " + e.getMessage());
+        }
+    }
+
+    private static Object read(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                JSONObject o = new JSONObject();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    o.put(reader.nextName(), read(reader));
+                }
+                reader.endObject();
+                return o;
+            case BEGIN_ARRAY:
+                JSONArray a = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    a.put(read(reader));
+                }
+                reader.endArray();
+                return a;
+            case NUMBER:
+                String n = reader.nextString();
+                try {
+                    return Long.valueOf(n);
+                } catch (NumberFormatException e) {
+                    return Double.valueOf(n);
+                }
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                return reader.nextString();
+        }
+    }
+
+    /**
+     * Raw response body.
+     */
+    @Override
+    public String toString() {
+        return new String(body, UTF_8);
+    }
+
+    private interface Decoder {
+        Object decode(JsonReader reader) throws IOException;
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.api.model;
+
+import com.blazemeter.bamboo.plugin.TestStatus;
+import com.blazemeter.bamboo.plugin.configuration.constants.JsonConstants;
+import com.google.gson.stream.JsonToken;
+
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Response of GET /masters/{id}/status.
+ */
+public class MasterStatus extends LazyResponse {
+
+    public static final String ENDED = "ENDED";
+
+    private static final String EXECUTIONS = "executions";
+    private static final String HOLD_FOR = "holdFor";
+    private static final String RAMP_UP = "rampUp";
+    private static final Pattern DURATION = Pattern.compile("(\\d+[hms]?)+");
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+)([hms]?)");
+
+    public MasterStatus(byte[] body) {
+        super(body);
+    }
+
+    /**
+     * false if response has no "result" object, e.g. master was not found
+     */
+    public boolean hasResult() {
+        return this.token(JsonConstants.RESULT) == JsonToken.BEGIN_OBJECT;
+    }
+
+    public String getStatus() {
+        return this.string(JsonConstants.RESULT, JsonConstants.STATUS);
+    }
+
+    /**
+     * @return progress of the master or -1 if response has none
+     */
+    public int getProgress() {
+        return this.integer(-1, JsonConstants.RESULT, JsonConstants.PROGRESS);
+    }
+
+    /**
+     * url of session reports or null if it is not present or null
+     */
+    public String getDataUrl() {
+        return this.string(JsonConstants.RESULT, JsonConstants.DATA_URL);
+    }
+
+    /**
+     * Configured duration of the test in seconds: the longest rampUp + holdFor of master executions
+     * or the overridden duration (minutes) of its jmeter/http configuration; -1 if response has neither.
+     */
+    public long getConfiguredDuration() {
+        long longest = -1;
+        if (this.token(JsonConstants.RESULT, EXECUTIONS) == JsonToken.BEGIN_ARRAY) {
+            for (Map<String, Object> e : this.elements(new String[]{JsonConstants.RESULT, EXECUTIONS}, HOLD_FOR, RAMP_UP)) {
+                long hold = seconds(e.get(HOLD_FOR));
+                if (hold >= 0) {
+                    longest = Math.max(longest, hold + Math.max(0, seconds(e.get(RAMP_UP))));
+                }
+            }
+        }
+        if (longest >= 0) {
+            return longest;
+        }
+        for (String plugin : new String[]{"jmeter", "http"}) {
+            Object minutes = this.scalar(JsonConstants.RESULT, JsonConstants.CONFIGURATION, "plugins", plugin, "override", "duration");
+            if (minutes instanceof Number && ((Number) minutes).longValue() > 0) {
+                return ((Number) minutes).longValue() * 60;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * "90", 90, "5m", "1h30m", "300s" -> seconds; -1 if value is not a duration
+     */
+    static long seconds(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (!(value instanceof String)) {
+            return -1;
+        }
+        Matcher m = DURATION.matcher(((String) value).trim());
+        if (!m.matches()) {
+            return -1;
+        }
+        long total = 0;
+        Matcher part = DURATION_PART.matcher(((String) value).trim());
+        while (part.find()) {
+            long n = Long.parseLong(part.group(1));
+            String unit = part.group(2);
+            total += "h".equals(unit) ? n * 3600 : "m".equals(unit) ? n * 60 : n;
+        }
+        return total;
+    }
+
+    public boolean hasErrors() {
+        JsonToken t = this.token(JsonConstants.RESULT, JsonConstants.ERRORS);
+        return t != null && t != JsonToken.NULL;
+    }
+
+    public String getErrors() {
+        return this.hasErrors() ? String.valueOf(this.tree(JsonConstants.RESULT, JsonConstants.ERRORS)) : null;
+    }
+
+    public TestStatus getTestStatus() {
+        if (!this.hasResult()) {
+            return TestStatus.Error;
+        }
+        String status = this.getStatus();
+        if (status != null && !status.equals(ENDED)) {
+            return TestStatus.Running;
+        }
+        return this.hasErrors() ? TestStatus.Error : TestStatus.NotRunning;
+    }
+}
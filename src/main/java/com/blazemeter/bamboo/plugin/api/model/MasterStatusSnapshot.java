@@ -0,0 +1,115 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.api.model;
+
+import com.blazemeter.bamboo.plugin.TestStatus;
+
+/**
+ * Everything status consumers need from one GET /masters/{id}/status, with the time it was fetched.
+ * Snapshots are shared for a short time by all callers asking for the same master,
+ * see {@link com.blazemeter.bamboo.plugin.api.Api#snapshot(String)}.
+ */
+public class MasterStatusSnapshot {
+
+    private final String masterId;
+    private final int progress;
+    private final String status;
+    private final String errors;
+    private final String dataUrl;
+    private final TestStatus testStatus;
+    private final long configuredDuration;
+    private final long fetchedAt;
+
+    public MasterStatusSnapshot(String masterId, MasterStatus status, long fetchedAt) {
+        this.masterId = masterId;
+        this.progress = progress(status);
+        this.status = status.getStatus();
+        this.errors = status.getErrors();
+        this.dataUrl = status.getDataUrl();
+        this.testStatus = status.getTestStatus();
+        this.configuredDuration = duration(status);
+        this.fetchedAt = fetchedAt;
+    }
+
+    private static int progress(MasterStatus status) {
+        try {
+            return status.getProgress();
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static long duration(MasterStatus status) {
+        try {
+            return status.getConfiguredDuration();
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    public String getMasterId() {
+        return masterId;
+    }
+
+    /**
+     * progress code of the master or -1 if response had none
+     */
+    public int getProgress() {
+        return progress;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * errors of the master as text or null if there are none
+     */
+    public String getErrors() {
+        return errors;
+    }
+
+    public String getDataUrl() {
+        return dataUrl;
+    }
+
+    public TestStatus getTestStatus() {
+        return testStatus;
+    }
+
+    /**
+     * configured test duration in seconds or -1 if unknown
+     */
+    public long getConfiguredDuration() {
+        return configuredDuration;
+    }
+
+    /**
+     * System.currentTimeMillis() when the response was received
+     */
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+
+    public long age() {
+        return System.currentTimeMillis() - fetchedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "master " + masterId + ": " + testStatus + ", status=" + status + ", progress=" + progress
+            + (errors == null ? "" : ", errors=" + errors);
+    }
+}
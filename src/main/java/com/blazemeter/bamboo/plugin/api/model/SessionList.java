@@ -0,0 +1,49 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.api.model;
+
+import com.blazemeter.bamboo.plugin.configuration.constants.JsonConstants;
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Response of GET /masters/{id}/sessions; only session ids are decoded.
+ */
+public class SessionList extends LazyResponse {
+
+    private static final String[] SESSIONS = {JsonConstants.RESULT, JsonConstants.SESSIONS};
+
+    public SessionList(byte[] body) {
+        super(body);
+    }
+
+    /**
+     * @throws JSONException if response has no sessions array or a session has no id
+     */
+    public List<String> getIds() {
+        List<String> ids = new ArrayList<String>();
+        for (Map<String, Object> s : this.elements(SESSIONS, JsonConstants.ID)) {
+            Object id = s.get(JsonConstants.ID);
+            if (id == null) {
+                throw new JSONException("Session without id: " + this);
+            }
+            ids.add(String.valueOf(id));
+        }
+        return ids;
+    }
+}
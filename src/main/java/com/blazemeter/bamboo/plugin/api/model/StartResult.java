@@ -0,0 +1,73 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.api.model;
+
+import com.blazemeter.bamboo.plugin.configuration.constants.JsonConstants;
+
+import java.util.HashMap;
+
+/**
+ * Response of POST /tests/{id}/start and /collections/{id}/start.
+ */
+public class StartResult extends LazyResponse {
+
+    private final boolean collection;
+
+    public StartResult(byte[] body, boolean collection) {
+        super(body);
+        this.collection = collection;
+    }
+
+    /**
+     * id of started master or null if test was not started
+     */
+    public String getMasterId() {
+        return this.string(JsonConstants.RESULT, JsonConstants.ID);
+    }
+
+    public String getTestId() {
+        return this.string(JsonConstants.RESULT, collection ? JsonConstants.TEST_COLLECTION_ID : JsonConstants.TEST_ID);
+    }
+
+    public String getName() {
+        return this.string(JsonConstants.RESULT, JsonConstants.NAME);
+    }
+
+    /**
+     * "error" object of response as text
+     */
+    public String getError() {
+        Object error = this.tree(JsonConstants.ERROR);
+        return error == null ? null : error.toString();
+    }
+
+    /**
+     * Same map as {@link com.blazemeter.bamboo.plugin.api.Api#startTest} always returned:
+     * id, testId and name of started master or error if they are not present.
+     */
+    public HashMap<String, String> toMap() {
+        HashMap<String, String> map = new HashMap<String, String>();
+        String id = this.getMasterId();
+        String name = this.getName();
+        if (id == null || name == null) {
+            map.put(JsonConstants.ERROR, this.getError());
+        } else {
+            map.put(JsonConstants.ID, id);
+            map.put(JsonConstants.TEST_ID, String.valueOf(this.getTestId()));
+            map.put(JsonConstants.NAME, name);
+        }
+        return map;
+    }
+}
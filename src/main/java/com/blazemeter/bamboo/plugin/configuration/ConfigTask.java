@@ -22,8 +22,10 @@ import com.atlassian.sal.api.pluginsettings.PluginSettings;
 import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
 import com.blazemeter.bamboo.plugin.api.Api;
 import com.blazemeter.bamboo.plugin.api.ApiImpl;
+import com.blazemeter.bamboo.plugin.api.CatalogCrawler;
 import com.blazemeter.bamboo.plugin.configuration.constants.AdminServletConst;
 import com.blazemeter.bamboo.plugin.configuration.constants.Constants;
+import com.blazemeter.bamboo.plugin.polling.PollingStrategy;
 import com.google.common.collect.LinkedHashMultimap;
 import okhttp3.Credentials;
 import org.apache.commons.lang.StringUtils;
@@ -52,6 +54,8 @@ public class ConfigTask extends AbstractTaskConfigurator implements BuildTaskReq
         String credentials = Credentials.basic(api_id,api_secret);
         this.api = new ApiImpl(credentials, serverUrl);
         context.put(Constants.TEST_LIST, api.getTestsMultiMap());
+        context.put(Constants.POLLING_LIST, PollingStrategy.choices());
+        context.put(Constants.SETTINGS_POLLING, PollingStrategy.ADAPTIVE);
     }
 
     /**
@@ -74,6 +78,9 @@ public class ConfigTask extends AbstractTaskConfigurator implements BuildTaskReq
         context.put(Constants.SETTINGS_JMETER_PROPERTIES, config.get(Constants.SETTINGS_JMETER_PROPERTIES));
         context.put(Constants.SETTINGS_JTL_PATH, config.get(Constants.SETTINGS_JTL_PATH));
         context.put(Constants.SETTINGS_JUNIT_PATH, config.get(Constants.SETTINGS_JUNIT_PATH));
+        context.put(Constants.POLLING_LIST, PollingStrategy.choices());
+        String polling = config.get(Constants.SETTINGS_POLLING);
+        context.put(Constants.SETTINGS_POLLING, StringUtils.isBlank(polling) ? PollingStrategy.ADAPTIVE : polling);
         String credentials = Credentials.basic(psai, psas);
         this.api = new ApiImpl(credentials, pssu);
         try {
@@ -116,15 +123,24 @@ public class ConfigTask extends AbstractTaskConfigurator implements BuildTaskReq
                 errorCollection.addErrorMessage("Cannot load tests from BlazeMeter server. Invalid user key!");
             } else {
                 //verify if the test still exists on BlazeMeter server
+                CatalogCrawler.Result catalog = null;
+                boolean found = false;
                 try{
-                    tests = api.testsMultiMap();
-
+                    catalog = this.api.catalog(false);
+                    tests = catalog.getTests();
+                    // test may be newer than cached catalog: page through workspaces until it is found
+                    found = tests.keySet().contains(selectedTest) || this.api.testExists(selectedTest);
                 }catch (Exception e){
                     errorCollection.addErrorMessage("Failed to get tests from BlazeMeter account: "+e.getMessage());
                 }
                 if (tests != null) {
-                    if (!tests.keySet().contains(selectedTest)) {
-                        errorCollection.addErrorMessage("Test '" + selectedTest + "' doesn't exits on BlazeMeter server.");
+                    if (!found) {
+                        if (catalog != null && !catalog.isComplete()) {
+                            errorCollection.addErrorMessage("Test '" + selectedTest + "' was not found: failed to get tests from workspaces "
+                                + catalog.getFailures().keySet() + ". " + Constants.CHECK_SETTINGS);
+                        } else {
+                            errorCollection.addErrorMessage("Test '" + selectedTest + "' doesn't exits on BlazeMeter server.");
+                        }
                     }
                 } else {
                     errorCollection.addErrorMessage("No tests defined on BlazeMeter server!");
@@ -145,6 +161,8 @@ public class ConfigTask extends AbstractTaskConfigurator implements BuildTaskReq
         config.put(Constants.SETTINGS_NOTES, params.getString(Constants.SETTINGS_NOTES).trim());
         config.put(Constants.SETTINGS_JTL_PATH, params.getString(Constants.SETTINGS_JTL_PATH).trim());
         config.put(Constants.SETTINGS_JUNIT_PATH, params.getString(Constants.SETTINGS_JUNIT_PATH).trim());
+        String polling = params.getString(Constants.SETTINGS_POLLING);
+        config.put(Constants.SETTINGS_POLLING, StringUtils.isBlank(polling) ? PollingStrategy.ADAPTIVE : polling.trim());
         String jtlReport = params.getString(Constants.SETTINGS_JTL_REPORT) == null ? "false" : "true";
         String junitReport = params.getString(Constants.SETTINGS_JUNIT_REPORT) == null ? "false" : "true";
         config.put(Constants.SETTINGS_JTL_REPORT, jtlReport);
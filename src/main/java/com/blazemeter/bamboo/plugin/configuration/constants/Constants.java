@@ -27,13 +27,16 @@ public interface Constants {
      String SETTINGS_NOTES = "notes";
      String SETTINGS_JTL_PATH="jtl.path";
      String SETTINGS_JUNIT_PATH="junit.path";
+     String SETTINGS_POLLING="polling";
 
      String UNKNOWN_TYPE="unknown_type";
 
 
     //BlazeMeterConfigTask
      String TEST_LIST ="testlist";
+     String POLLING_LIST ="pollinglist";
      String REPORT_URL ="reportUrl";
+     String TERMINATION_SAVED ="terminationSavedMillis";
      String BM_KPIS="bm-kpis.jtl";
      String BM_ARTEFACTS="bm-artefacts.zip";
 
@@ -43,6 +46,32 @@ public interface Constants {
     String PROXY_USER="http.proxyUser";
     String PROXY_PASS="http.proxyPass";
 
+    String CATALOG_PARALLELISM="blazemeter.catalog.parallelism";
+    String CATALOG_TTL="blazemeter.catalog.ttl";
+    String CATALOG_MAX_STALE="blazemeter.catalog.maxStale";
+    String CATALOG_PAGE_SIZE="blazemeter.catalog.pageSize";
+    String HTTP_CACHE_DIR="blazemeter.http.cacheDir";
+    String HTTP_CACHE_SIZE="blazemeter.http.cacheSize";
+    String RETRY_BUDGET_PERCENT="blazemeter.retry.budgetPercent";
+    String CIRCUIT_FAILURES="blazemeter.circuit.failures";
+    String CIRCUIT_OPEN_SEC="blazemeter.circuit.openSeconds";
+    String SINGLE_FLIGHT_MEMO="blazemeter.singleflight.memoMillis";
+    String HTTP_LOG_QUEUE="blazemeter.httplog.queue";
+    String HTTP_LOG_MAX_MESSAGE="blazemeter.httplog.maxMessage";
+    String HTTP_LOG_POLICY="blazemeter.httplog.policy";
+    String RATE_LIMIT="blazemeter.ratelimit.perSecond";
+    String RATE_BURST="blazemeter.ratelimit.burst";
+    String MASTER_STATUS_TTL="blazemeter.masterStatus.ttlMillis";
+    String POLLER_TICK="blazemeter.poller.tickMillis";
+    String POLLER_THREADS="blazemeter.poller.threads";
+    String POST_THREADS="blazemeter.post.threads";
+    String POST_STAGE_TIMEOUT="blazemeter.post.stageTimeoutMillis";
+    String JTL_PARALLELISM="blazemeter.jtl.parallelism";
+    String JTL_UNZIP="blazemeter.jtl.unzip";
+    String JTL_ANALYZE_PARALLELISM="blazemeter.jtl.analyzeParallelism";
+    String ARTIFACT_CACHE_DIR="blazemeter.artifacts.cacheDir";
+    String ARTIFACT_CACHE_SIZE="blazemeter.artifacts.cacheSize";
+
     String MASTERS="/masters/";
     String PUBLIC_TOKEN="public-token";
     String CHECK_SETTINGS="Check blazemeter & proxy-settings";
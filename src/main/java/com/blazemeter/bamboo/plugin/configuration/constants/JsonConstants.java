@@ -32,4 +32,9 @@ public interface JsonConstants {
     String ID="id";
     String TEST_COLLECTION_ID="testCollectionId";
     String TEST_ID="testId";
+    String PROJECT_ID="projectId";
+    String WORKSPACE_ID="workspaceId";
+    String PROGRESS="progress";
+    String SESSIONS="sessions";
+    String TITLE="title";
 }
@@ -0,0 +1,244 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.download;
+
+import com.blazemeter.bamboo.plugin.api.ConditionalCache;
+import com.blazemeter.bamboo.plugin.configuration.constants.Constants;
+import okio.ByteString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Agent-local cache of session artifacts. Reports of a finished session do not change, so a zip
+ * is stored once per sessionId + fingerprint of its data url (without the query, which carries
+ * an expiring signature) and handed to later builds as a hard link, or a copy where linking is
+ * not possible. Total size is bounded, least recently used artifacts are removed first;
+ * a size of 0 disables the cache.
+ */
+public class ArtifactCache {
+
+    public static final long DEFAULT_MAX_SIZE = 2048L * 1024 * 1024;
+
+    private static final String ZIP = ".zip";
+
+    private static final ArtifactCache INSTANCE = new ArtifactCache(
+        new File(System.getProperty(Constants.ARTIFACT_CACHE_DIR,
+            System.getProperty("java.io.tmpdir") + File.separator + "bzm-artifact-cache")),
+        Long.getLong(Constants.ARTIFACT_CACHE_SIZE, DEFAULT_MAX_SIZE));
+
+    private Logger logger = LoggerFactory.getLogger("com.blazemeter");
+
+    private final File dir;
+    private final long maxSize;
+
+    /**
+     * key -> size of stored artifact, in access order
+     */
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private long size = 0;
+    private boolean loaded = false;
+    private boolean available = false;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ArtifactCache(File dir, long maxSize) {
+        this.dir = dir;
+        this.maxSize = maxSize;
+    }
+
+    public static ArtifactCache getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean enabled() {
+        return this.maxSize > 0 && this.ensureLoaded();
+    }
+
+    /**
+     * Links or copies the cached artifact to target, replacing it.
+     *
+     * @return size of the artifact, -1 if it is not cached
+     */
+    public long get(String sessionId, String url, File target) {
+        if (!this.enabled()) {
+            return -1;
+        }
+        requests.incrementAndGet();
+        String key = key(sessionId, url);
+        File stored = new File(dir, key + ZIP);
+        synchronized (this) {
+            if (index.get(key) == null) {
+                // may have been stored by another agent sharing the directory
+                if (!stored.isFile()) {
+                    return -1;
+                }
+                index.put(key, stored.length());
+                size += stored.length();
+            }
+            stored.setLastModified(System.currentTimeMillis());
+        }
+        try {
+            target.getAbsoluteFile().getParentFile().mkdirs();
+            link(stored, target);
+        } catch (IOException e) {
+            logger.warn("Failed to take " + stored + " from artifact cache: " + e);
+            this.remove(key);
+            return -1;
+        }
+        hits.incrementAndGet();
+        bytesSaved.addAndGet(target.length());
+        return target.length();
+    }
+
+    /**
+     * Stores a complete artifact. Zips are checked against their central directory first;
+     * the file is left in place.
+     */
+    public void put(String sessionId, String url, File artifact) {
+        long length = artifact.length();
+        if (!this.enabled() || length == 0 || length > maxSize) {
+            return;
+        }
+        String key = key(sessionId, url);
+        File tmp = new File(dir, key + ZIP + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            if (artifact.getName().toLowerCase().endsWith(ZIP)) {
+                ZipExtractor.check(artifact);
+            }
+            link(artifact, tmp);
+            synchronized (this) {
+                Files.move(tmp.toPath(), new File(dir, key + ZIP).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                Long previous = index.put(key, length);
+                size += length - (previous == null ? 0 : previous);
+                this.trim();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to store " + artifact + " in artifact cache: " + e);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * hard link if the file system allows it, copy otherwise
+     */
+    private static void link(File existing, File link) throws IOException {
+        Files.deleteIfExists(link.toPath());
+        try {
+            Files.createLink(link.toPath(), existing.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(existing.toPath(), link.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private synchronized void remove(String key) {
+        Long length = index.remove(key);
+        if (length != null) {
+            size -= length;
+        }
+        new File(dir, key + ZIP).delete();
+    }
+
+    private synchronized void trim() {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            size -= eldest.getValue();
+            new File(dir, eldest.getKey() + ZIP).delete();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Reads index of stored artifacts on first use, last used ones last.
+     *
+     * @return false if cache directory is not available
+     */
+    private synchronized boolean ensureLoaded() {
+        if (loaded) {
+            return available && dir.isDirectory();
+        }
+        loaded = true;
+        if (!ConditionalCache.privateDirectory(dir)) {
+            logger.warn("Failed to create artifact cache directory " + dir.getAbsolutePath()
+                + " accessible to its owner only, artifacts will not be cached");
+            return false;
+        }
+        File[] stored = dir.listFiles((d, name) -> name.endsWith(ZIP));
+        if (stored == null) {
+            return false;
+        }
+        Arrays.sort(stored, Comparator.comparingLong(File::lastModified));
+        for (File f : stored) {
+            index.put(f.getName().substring(0, f.getName().length() - ZIP.length()), f.length());
+            size += f.length();
+        }
+        this.trim();
+        available = true;
+        return true;
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long bytesSaved() {
+        return bytesSaved.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized int entries() {
+        return index.size();
+    }
+
+    public String stats() {
+        long r = requests();
+        return "Artifact cache: entries=" + entries() + ", size=" + size() + " bytes, hits=" + hits() + "/" + r
+            + " (" + (r == 0 ? 0 : hits() * 100 / r) + "%), bytes saved=" + bytesSaved()
+            + ", evictions=" + evictions();
+    }
+
+    static String key(String sessionId, String url) {
+        int query = url.indexOf('?');
+        String fingerprint = ByteString.encodeUtf8(query < 0 ? url : url.substring(0, query)).sha1().hex();
+        return sessionId.replaceAll("[^A-Za-z0-9_.-]", "_") + "-" + fingerprint.substring(0, 16);
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.download;
+
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes a response body to a file through a FileChannel. The file is preallocated from
+ * Content-Length, data goes to the channel in large writes from one direct buffer, and
+ * the file is forced to disk once after the last byte.
+ */
+public final class ArtifactWriter {
+
+    public static final int BUFFER_SIZE = 1024 * 1024;
+    /**
+     * bytes between two calls of {@link Progress#written}
+     */
+    public static final long CHECKPOINT_BYTES = 8 * BUFFER_SIZE;
+    private static final int CHUNK = 64 * 1024;
+
+    /**
+     * Notified of the position up to which the file holds the artifact.
+     */
+    public interface Progress {
+        void written(long position) throws IOException;
+    }
+
+    private ArtifactWriter() {
+    }
+
+    /**
+     * Writes and closes the body.
+     *
+     * @throws IOException if the body ends before Content-Length
+     */
+    public static Transfer write(ResponseBody body, File target) throws IOException {
+        return write(body, target, 0, null);
+    }
+
+    /**
+     * Writes and closes the body, which holds the artifact from offset on. Bytes before offset are
+     * kept, bytes after the body are cut off. Progress is notified every {@link #CHECKPOINT_BYTES}
+     * and, if the body fails, with the position reached.
+     *
+     * @param progress may be null
+     * @throws IOException if the body ends before Content-Length
+     */
+    public static Transfer write(ResponseBody body, File target, long offset, Progress progress) throws IOException {
+        long start = System.currentTimeMillis();
+        long length = body.contentLength();
+        target.getParentFile().mkdirs();
+        BufferedSource source = body.source();
+        RandomAccessFile file = new RandomAccessFile(target, "rw");
+        long written = 0;
+        try {
+            FileChannel channel = file.getChannel();
+            channel.truncate(offset);
+            if (length > 0) {
+                file.setLength(offset + length);
+            }
+            // okio 1.x has no channel API, so data is staged in a direct buffer for large channel writes
+            ByteBuffer direct = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            byte[] chunk = new byte[CHUNK];
+            long checkpoint = CHECKPOINT_BYTES;
+            int n;
+            try {
+                while ((n = source.read(chunk, 0, Math.min(CHUNK, direct.remaining()))) != -1) {
+                    direct.put(chunk, 0, n);
+                    if (!direct.hasRemaining()) {
+                        written += drain(direct, channel, offset + written);
+                        if (progress != null && written >= checkpoint) {
+                            progress.written(offset + written);
+                            checkpoint = written + CHECKPOINT_BYTES;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                written += drain(direct, channel, offset + written);
+                channel.truncate(offset + written);
+                if (progress != null) {
+                    progress.written(offset + written);
+                }
+                throw e;
+            }
+            written += drain(direct, channel, offset + written);
+            if (length > 0 && written < length) {
+                channel.truncate(offset + written);
+                if (progress != null) {
+                    progress.written(offset + written);
+                }
+                throw new IOException("Download of " + target.getName() + " ended after " + written + " of " + length + " bytes");
+            }
+            channel.truncate(offset + written);
+            channel.force(true);
+            return new Transfer(written, written, System.currentTimeMillis() - start);
+        } finally {
+            file.close();
+            body.close();
+        }
+    }
+
+    /**
+     * Buffer casts keep the Java 8 signatures when compiled by a newer JDK, which has covariant ByteBuffer overrides.
+     */
+    private static int drain(ByteBuffer buffer, FileChannel channel, long position) throws IOException {
+        ((Buffer) buffer).flip();
+        int n = buffer.remaining();
+        long p = position;
+        while (buffer.hasRemaining()) {
+            p += channel.write(buffer, p);
+        }
+        ((Buffer) buffer).clear();
+        return n;
+    }
+}
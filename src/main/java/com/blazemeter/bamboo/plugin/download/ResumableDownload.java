@@ -0,0 +1,262 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.download;
+
+import com.atlassian.bamboo.build.logger.BuildLogger;
+import com.blazemeter.bamboo.plugin.api.Api;
+import okhttp3.Response;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads an artifact into a .part file next to the target, recording in a checkpoint
+ * sidecar how far the file holds the artifact. A failed attempt, or a later run finding the
+ * sidecar, continues with a Range request from there; If-Range makes the server send the whole
+ * artifact again if it changed. The complete file is checked against the announced length and,
+ * for zips, against its central directory before it is renamed to the target.
+ */
+public class ResumableDownload {
+
+    public static final String PART = ".part";
+    public static final String CHECKPOINT = ".checkpoint";
+    public static final int DEFAULT_ATTEMPTS = 3;
+
+    private static final String URL = "url";
+    private static final String POSITION = "position";
+    private static final String TOTAL = "total";
+    private static final String VALIDATOR = "validator";
+
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-\\d+/(\\d+|\\*)");
+
+    private final Api api;
+    private final String url;
+    private final File target;
+    private final File part;
+    private final File checkpoint;
+    private final int attempts;
+    private int resumed = 0;
+
+    public ResumableDownload(Api api, String url, File target) {
+        this(api, url, target, DEFAULT_ATTEMPTS);
+    }
+
+    public ResumableDownload(Api api, String url, File target, int attempts) {
+        this.api = api;
+        this.url = url;
+        this.target = target;
+        this.part = new File(target.getPath() + PART);
+        this.checkpoint = new File(target.getPath() + PART + CHECKPOINT);
+        this.attempts = attempts;
+    }
+
+    /**
+     * Connect timeout grows 10s, 30s, 90s over attempts as it did for whole downloads.
+     *
+     * @return bytes downloaded by all attempts and the size of the artifact
+     * @throws IOException if no attempt completed the artifact; .part and checkpoint are kept
+     */
+    public Transfer download(BuildLogger logger) throws IOException {
+        long start = System.currentTimeMillis();
+        long read = 0;
+        IOException failure = null;
+        this.target.getAbsoluteFile().getParentFile().mkdirs();
+        for (int i = 1; i <= this.attempts; i++) {
+            Properties cp = this.load();
+            long position = cp == null ? 0 : Long.parseLong(cp.getProperty(POSITION, "0"));
+            boolean complete = position > 0 && String.valueOf(position).equals(cp.getProperty(TOTAL));
+            if (complete) {
+                logger.addBuildLogEntry("Found complete " + this.part.getName() + ", checking it");
+            } else if (position > 0) {
+                this.resumed++;
+                logger.addBuildLogEntry("Resuming download of " + this.target.getName() + " from byte " + position
+                    + " attempt # " + i);
+            } else {
+                logger.addBuildLogEntry("Downloading " + this.target.getName() + " attempt # " + i);
+            }
+            int conTo = (int) (10000 * Math.pow(3, i - 1));
+            try {
+                if (!complete) {
+                    read += this.attempt(position, cp == null ? null : cp.getProperty(VALIDATOR), conTo);
+                }
+                this.verify();
+                FileUtils.deleteQuietly(this.target);
+                if (!this.part.renameTo(this.target)) {
+                    throw new IOException("Failed to rename " + this.part + " to " + this.target.getName());
+                }
+                FileUtils.deleteQuietly(this.checkpoint);
+                return new Transfer(read, this.target.length(), System.currentTimeMillis() - start);
+            } catch (Counted e) {
+                read += e.read;
+                failure = e.failure;
+                logger.addErrorLogEntry("Download of " + this.url + " failed: " + e.failure);
+            } catch (IOException e) {
+                failure = e;
+                logger.addErrorLogEntry("Download of " + this.url + " failed: " + e);
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * @return bytes read
+     */
+    private long attempt(long position, String validator, int connectTimeout) throws IOException {
+        Response response = this.api.download(this.url, connectTimeout, position, validator);
+        long offset = 0;
+        long total = response.body().contentLength();
+        if (response.code() == 206) {
+            Matcher m = CONTENT_RANGE.matcher(String.valueOf(response.header(Api.CONTENT_RANGE)));
+            if (!m.matches() || Long.parseLong(m.group(1)) != position) {
+                response.body().close();
+                this.discard();
+                throw new IOException("Unexpected Content-Range " + response.header(Api.CONTENT_RANGE));
+            }
+            offset = position;
+            total = "*".equals(m.group(2)) ? -1 : Long.parseLong(m.group(2));
+        }
+        String v = response.header("ETag") != null ? response.header("ETag") : response.header("Last-Modified");
+        if (offset == 0) {
+            try {
+                this.save(0, total, v);
+            } catch (IOException e) {
+                response.body().close();
+                throw e;
+            }
+        }
+        final long announced = total;
+        final String validatorOfBody = offset == 0 ? v : validator;
+        final long[] reached = {offset};
+        try {
+            ArtifactWriter.write(response.body(), this.part, offset, p -> {
+                reached[0] = p;
+                this.save(p, announced, validatorOfBody);
+            });
+        } catch (IOException e) {
+            throw new Counted(e, reached[0] - offset);
+        }
+        long size = this.part.length();
+        this.save(size, announced, validatorOfBody);
+        if (announced >= 0 && size != announced) {
+            this.discard();
+            throw new IOException("Downloaded " + size + " bytes of " + this.target.getName() + ", expected " + announced);
+        }
+        return size - offset;
+    }
+
+    private void verify() throws IOException {
+        if (!this.target.getName().toLowerCase().endsWith(".zip")) {
+            return;
+        }
+        try {
+            ZipExtractor.check(this.part);
+        } catch (IOException e) {
+            this.discard();
+            throw new IOException("Downloaded " + this.target.getName() + " is not a valid zip: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * checkpoint of an earlier attempt at the same url, null if there is none or .part does not match it
+     */
+    private Properties load() {
+        if (!this.checkpoint.exists() || !this.part.exists()) {
+            return null;
+        }
+        Properties p = new Properties();
+        try {
+            InputStream in = new FileInputStream(this.checkpoint);
+            try {
+                p.load(in);
+            } finally {
+                in.close();
+            }
+            long position = Long.parseLong(p.getProperty(POSITION, "0"));
+            if (!this.url.equals(p.getProperty(URL)) || position > this.part.length()) {
+                this.discard();
+                return null;
+            }
+            return p;
+        } catch (IOException | NumberFormatException e) {
+            this.discard();
+            return null;
+        }
+    }
+
+    private void save(long position, long total, String validator) throws IOException {
+        Properties p = new Properties();
+        p.setProperty(URL, this.url);
+        p.setProperty(POSITION, String.valueOf(position));
+        p.setProperty(TOTAL, String.valueOf(total));
+        if (validator != null) {
+            p.setProperty(VALIDATOR, validator);
+        }
+        File tmp = new File(this.checkpoint.getPath() + ".tmp");
+        OutputStream out = new FileOutputStream(tmp);
+        try {
+            p.store(out, null);
+        } finally {
+            out.close();
+        }
+        FileUtils.deleteQuietly(this.checkpoint);
+        if (!tmp.renameTo(this.checkpoint)) {
+            throw new IOException("Failed to write checkpoint " + this.checkpoint);
+        }
+    }
+
+    private void discard() {
+        FileUtils.deleteQuietly(this.part);
+        FileUtils.deleteQuietly(this.checkpoint);
+    }
+
+    /**
+     * attempts that continued a partial download
+     */
+    public int resumed() {
+        return this.resumed;
+    }
+
+    public File getPart() {
+        return this.part;
+    }
+
+    public File getCheckpoint() {
+        return this.checkpoint;
+    }
+
+    /**
+     * failure of an attempt that has read some bytes
+     */
+    private static class Counted extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final IOException failure;
+        private final long read;
+
+        Counted(IOException failure, long read) {
+            super(failure);
+            this.failure = failure;
+            this.read = read;
+        }
+    }
+}
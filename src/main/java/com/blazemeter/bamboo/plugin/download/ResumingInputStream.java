@@ -0,0 +1,110 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.download;
+
+import com.blazemeter.bamboo.plugin.api.Api;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stream of an artifact that reconnects with a Range request when the connection drops,
+ * so a reader such as ZipInputStream continues where it stopped. Fails if the server
+ * does not answer a resume with the requested part.
+ */
+public class ResumingInputStream extends InputStream {
+
+    private final Api api;
+    private final String url;
+    private final int connectTimeout;
+    private final int maxResumes;
+    private long position = 0;
+    private String validator;
+    private InputStream in;
+    private int resumes = 0;
+
+    public ResumingInputStream(Api api, String url, int connectTimeout, int maxResumes) throws IOException {
+        this.api = api;
+        this.url = url;
+        this.connectTimeout = connectTimeout;
+        this.maxResumes = maxResumes;
+        this.open();
+    }
+
+    private void open() throws IOException {
+        Response response = this.api.download(this.url, this.connectTimeout, this.position, this.validator);
+        if (this.position > 0 && (response.code() != 206
+            || !String.valueOf(response.header(Api.CONTENT_RANGE)).startsWith("bytes " + this.position + "-"))) {
+            response.body().close();
+            throw new IOException("Server did not resume " + this.url + " from byte " + this.position);
+        }
+        if (this.position == 0) {
+            this.validator = response.header("ETag") != null ? response.header("ETag") : response.header("Last-Modified");
+        }
+        this.in = response.body().byteStream();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = this.read(b, 0, 1);
+        return n == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        while (true) {
+            try {
+                int n = this.in.read(b, off, len);
+                if (n > 0) {
+                    this.position += n;
+                }
+                return n;
+            } catch (IOException e) {
+                if (this.resumes >= this.maxResumes) {
+                    throw e;
+                }
+                this.resumes++;
+                this.closeQuietly();
+                this.open();
+            }
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            this.in.close();
+        } catch (IOException e) {
+            // connection is broken already
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+
+    /**
+     * bytes read so far
+     */
+    public long position() {
+        return this.position;
+    }
+
+    public int resumes() {
+        return this.resumes;
+    }
+}
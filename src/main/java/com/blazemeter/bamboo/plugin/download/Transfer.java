@@ -0,0 +1,56 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.download;
+
+/**
+ * Bytes read from the network and written to disk by one download.
+ */
+public class Transfer {
+
+    private final long read;
+    private final long written;
+    private final long millis;
+
+    public Transfer(long read, long written, long millis) {
+        this.read = read;
+        this.written = written;
+        this.millis = millis;
+    }
+
+    public long getRead() {
+        return read;
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * MB read per second
+     */
+    public double throughput() {
+        return read / 1048576.0 / (Math.max(1, millis) / 1000.0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d bytes downloaded, %d bytes written in %d ms, %.2f MB/s", read, written, millis,
+            throughput());
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.download;
+
+import com.atlassian.bamboo.build.logger.BuildLogger;
+import org.apache.commons.io.input.CountingInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Enumeration;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Extracts report archives either straight from a stream, so the zip never lands on disk,
+ * or from a downloaded zip file. Both ways check the CRC of every entry: ZipInputStream
+ * does it while reading, for zip files it is computed here while copying.
+ */
+public final class ZipExtractor {
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private ZipExtractor() {
+    }
+
+    /**
+     * Extracts entries read from the stream, which is closed afterwards.
+     *
+     * @return compressed bytes read and extracted bytes written
+     * @throws ZipException if stream is not a zip or an entry is corrupted
+     */
+    public static Transfer extract(InputStream in, File destDir, BuildLogger logger) throws IOException {
+        long start = System.currentTimeMillis();
+        CountingInputStream counting = new CountingInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+        ZipInputStream zip = new ZipInputStream(counting);
+        try {
+            destDir.mkdirs();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int entries = 0;
+            long written = 0;
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entries++;
+                if (entry.isDirectory()) {
+                    target(destDir, entry.getName()).mkdirs();
+                    continue;
+                }
+                logger.addBuildLogEntry("\tExtracting jtl report: " + entry);
+                written += copy(zip, target(destDir, entry.getName()), buffer, null);
+            }
+            if (entries == 0) {
+                throw new ZipException("No zip entries in stream");
+            }
+            // central directory follows the last entry; read it too so the whole archive has passed the stream
+            while (counting.read(buffer) != -1) {
+            }
+            return new Transfer(counting.getByteCount(), written, System.currentTimeMillis() - start);
+        } finally {
+            zip.close();
+        }
+    }
+
+    /**
+     * Extracts zip file, comparing CRC of every extracted entry with the one in the archive.
+     *
+     * @throws ZipException if an entry does not match its checksum
+     */
+    public static void extract(File file, File destDir, BuildLogger logger) throws IOException {
+        ZipFile zipFile = new ZipFile(file, ZipFile.OPEN_READ);
+        try {
+            destDir.mkdirs();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory()) {
+                    target(destDir, entry.getName()).mkdirs();
+                    continue;
+                }
+                logger.addBuildLogEntry("\tExtracting jtl report: " + entry);
+                CRC32 crc = new CRC32();
+                InputStream in = zipFile.getInputStream(entry);
+                try {
+                    copy(in, target(destDir, entry.getName()), buffer, crc);
+                } finally {
+                    in.close();
+                }
+                if (entry.getCrc() != -1 && entry.getCrc() != crc.getValue()) {
+                    throw new ZipException("Checksum mismatch of " + entry.getName() + " in " + file.getName());
+                }
+            }
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    /**
+     * Reads the central directory; a truncated or mixed up file fails here.
+     */
+    public static void check(File zip) throws IOException {
+        ZipFile zipFile = new ZipFile(zip);
+        try {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                entries.nextElement();
+            }
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    /**
+     * file the entry is extracted to; entries pointing outside of destination are rejected
+     */
+    static File target(File destDir, String name) throws IOException {
+        File f = new File(destDir, name);
+        if (!f.getCanonicalPath().startsWith(destDir.getCanonicalPath() + File.separator)) {
+            throw new ZipException("Zip entry outside of target directory: " + name);
+        }
+        return f;
+    }
+
+    private static long copy(InputStream in, File dest, byte[] buffer, CRC32 crc) throws IOException {
+        dest.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(dest);
+        long written = 0;
+        try {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+                written += n;
+                if (crc != null) {
+                    crc.update(buffer, 0, n);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        return written;
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.polling;
+
+import com.blazemeter.bamboo.plugin.api.model.MasterStatusSnapshot;
+
+/**
+ * Polls often while the master boots, backs off exponentially while it runs and
+ * tightens again around the expected end, which is taken from the configured
+ * duration of the test when the status response carries it.
+ * Without known duration the back-off is capped low enough to notice the end quickly.
+ */
+public class AdaptivePolling extends PollingStrategy {
+
+    static final long BOOTING = 5000;
+    static final long STARTING = 3000;
+    static final long TIGHT = 5000;
+    static final long MAX_UNKNOWN_END = 60000;
+    static final long MAX_KNOWN_END = 300000;
+    static final long MIN_END_WINDOW = 30000;
+
+    /**
+     * progress code from which the master is about to run
+     */
+    static final int PROGRESS_STARTING = 70;
+    /**
+     * progress code of a master receiving data
+     */
+    static final int PROGRESS_RUNNING = 100;
+
+    private long expected = -1;
+    private long runningSince = -1;
+    private int runningPolls = 0;
+
+    @Override
+    protected long delay(Phase phase, MasterStatusSnapshot last, long inPhase, int poll) {
+        switch (phase) {
+            case INIT:
+                return booting(last);
+            default:
+                // master reports "running" from boot on; the test clock starts with data
+                if (last != null && last.getProgress() >= 0 && last.getProgress() < PROGRESS_RUNNING) {
+                    return booting(last);
+                }
+                long now = System.currentTimeMillis();
+                if (runningSince < 0) {
+                    runningSince = now;
+                }
+                if (expected < 0 && last != null && last.getConfiguredDuration() > 0) {
+                    expected = last.getConfiguredDuration() * 1000;
+                }
+                return this.running(now - runningSince, runningPolls++);
+        }
+    }
+
+    private static long booting(MasterStatusSnapshot last) {
+        return last != null && last.getProgress() >= PROGRESS_STARTING ? STARTING : BOOTING;
+    }
+
+    private long running(long runningFor, int poll) {
+        if (expected < 0) {
+            return backoff(TIGHT, poll, MAX_UNKNOWN_END);
+        }
+        long window = Math.max(MIN_END_WINDOW, expected / 10);
+        long remaining = expected - runningFor;
+        if (remaining > window) {
+            // do not sleep into the window around expected end
+            return Math.min(backoff(TIGHT, poll, MAX_KNOWN_END), remaining - window);
+        }
+        if (remaining > -window) {
+            return TIGHT;
+        }
+        // test runs longer than configured
+        return backoff(TIGHT, (int) (-remaining / window), MAX_UNKNOWN_END);
+    }
+
+    private static long backoff(long min, int poll, long max) {
+        return poll >= 20 ? max : Math.min(max, min << poll);
+    }
+
+    @Override
+    public String getName() {
+        return ADAPTIVE;
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.polling;
+
+import com.blazemeter.bamboo.plugin.api.model.MasterStatusSnapshot;
+
+/**
+ * Same interval in every phase, as the task always polled.
+ */
+public class FixedPolling extends PollingStrategy {
+
+    public static final long INTERVAL = 30000;
+
+    @Override
+    protected long delay(Phase phase, MasterStatusSnapshot last, long inPhase, int poll) {
+        return INTERVAL;
+    }
+
+    @Override
+    public String getName() {
+        return FIXED;
+    }
+}
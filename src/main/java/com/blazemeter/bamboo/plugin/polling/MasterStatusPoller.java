@@ -0,0 +1,235 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.polling;
+
+import com.blazemeter.bamboo.plugin.api.Api;
+import com.blazemeter.bamboo.plugin.api.model.MasterStatusSnapshot;
+import com.blazemeter.bamboo.plugin.configuration.constants.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Plugin-wide poller of master statuses. Tasks register the master they wait for and
+ * block on a future instead of sleeping and polling on their own; one scheduler thread
+ * wakes up on a shared tick, collects masters whose next check is due and polls them on
+ * a small request pool. BlazeMeter has no endpoint returning statuses of several masters,
+ * so watches of the same master on the same server are aggregated locally into one request
+ * per check. When to check next is decided by the {@link PollingStrategy} of each watch.
+ */
+public class MasterStatusPoller {
+
+    public static final long DEFAULT_TICK_MILLIS = 1000;
+    public static final int DEFAULT_THREADS = 4;
+
+    private static final AtomicInteger POLLERS = new AtomicInteger();
+
+    private static final MasterStatusPoller INSTANCE = new MasterStatusPoller(
+        Long.getLong(Constants.POLLER_TICK, DEFAULT_TICK_MILLIS),
+        Integer.getInteger(Constants.POLLER_THREADS, DEFAULT_THREADS));
+
+    private Logger logger = LoggerFactory.getLogger("com.blazemeter");
+
+    private final Set<Watch> watches = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService requests;
+
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong shared = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+
+    public MasterStatusPoller(long tickMillis, int threads) {
+        int n = POLLERS.incrementAndGet();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemon("bzm-status-poller-" + n));
+        this.requests = Executors.newFixedThreadPool(Math.max(1, threads), daemon("bzm-status-request-" + n));
+        this.scheduler.scheduleWithFixedDelay(this::tick, tickMillis, Math.max(1, tickMillis), TimeUnit.MILLISECONDS);
+    }
+
+    public static MasterStatusPoller getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Checks the master until its status matches the condition.
+     * The future fails if a status request fails and may be cancelled to stop watching.
+     *
+     * @param last  latest known status, used to plan the first check; may be null
+     * @param until condition of the status the caller waits for
+     */
+    public CompletableFuture<MasterStatusSnapshot> watch(Api api, String masterId, PollingStrategy strategy,
+                                                         PollingStrategy.Phase phase, MasterStatusSnapshot last,
+                                                         Predicate<MasterStatusSnapshot> until) {
+        Watch w = new Watch(api, masterId, strategy, phase, until);
+        w.nextAt = System.currentTimeMillis() + strategy.next(phase, last);
+        watches.add(w);
+        return w.future;
+    }
+
+    /**
+     * A throwable escaping the scheduled task would silently cancel all further ticks.
+     */
+    private void tick() {
+        try {
+            this.dispatch();
+        } catch (Throwable t) {
+            logger.warn("Status poller tick failed: " + t);
+        }
+    }
+
+    private void dispatch() {
+        ticks.incrementAndGet();
+        long now = System.currentTimeMillis();
+        Map<String, List<Watch>> due = new HashMap<String, List<Watch>>();
+        for (Watch w : watches) {
+            if (w.future.isDone()) {
+                watches.remove(w);
+            } else if (!w.inFlight && w.nextAt <= now) {
+                due.computeIfAbsent(w.key, k -> new ArrayList<Watch>()).add(w);
+            }
+        }
+        for (List<Watch> group : due.values()) {
+            for (Watch w : group) {
+                w.inFlight = true;
+            }
+            try {
+                requests.execute(() -> this.poll(group));
+            } catch (RuntimeException e) {
+                fail(group, e);
+            }
+        }
+    }
+
+    /**
+     * Any throwable fails the watches of the group, so that no caller waits for a check that never completes.
+     */
+    private void poll(List<Watch> group) {
+        try {
+            this.check(group);
+        } catch (Throwable t) {
+            fail(group, t);
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+        }
+    }
+
+    private void fail(List<Watch> group, Throwable t) {
+        for (Watch w : group) {
+            watches.remove(w);
+            w.future.completeExceptionally(t);
+        }
+    }
+
+    private void check(List<Watch> group) throws IOException {
+        Watch first = group.get(0);
+        polls.incrementAndGet();
+        shared.addAndGet(group.size() - 1);
+        MasterStatusSnapshot status = first.api.snapshot(first.masterId);
+        for (Watch w : group) {
+            try {
+                if (w.until.test(status)) {
+                    watches.remove(w);
+                    completed.incrementAndGet();
+                    w.future.complete(status);
+                } else {
+                    w.nextAt = System.currentTimeMillis() + w.strategy.next(w.phase, status);
+                    w.inFlight = false;
+                }
+            } catch (RuntimeException e) {
+                watches.remove(w);
+                w.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * masters being watched
+     */
+    public int watching() {
+        return watches.size();
+    }
+
+    public long polls() {
+        return polls.get();
+    }
+
+    /**
+     * checks answered by a request made for another watch of the same master
+     */
+    public long shared() {
+        return shared.get();
+    }
+
+    public String stats() {
+        return "Status poller: watching=" + watching() + ", status requests=" + polls() + ", shared=" + shared()
+            + ", completed watches=" + completed.get() + ", ticks=" + ticks.get();
+    }
+
+    /**
+     * Stops the threads; pending watches are not completed. Used by tests only.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        requests.shutdownNow();
+    }
+
+    private static ThreadFactory daemon(String prefix) {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private static class Watch {
+        private final Api api;
+        private final String masterId;
+        private final String key;
+        private final PollingStrategy strategy;
+        private final PollingStrategy.Phase phase;
+        private final Predicate<MasterStatusSnapshot> until;
+        private final CompletableFuture<MasterStatusSnapshot> future = new CompletableFuture<MasterStatusSnapshot>();
+        private volatile long nextAt;
+        private volatile boolean inFlight;
+
+        Watch(Api api, String masterId, PollingStrategy strategy, PollingStrategy.Phase phase,
+              Predicate<MasterStatusSnapshot> until) {
+            this.api = api;
+            this.masterId = masterId;
+            this.key = api.getServerUrl() + " " + masterId;
+            this.strategy = strategy;
+            this.phase = phase;
+            this.until = until;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.polling;
+
+import com.blazemeter.bamboo.plugin.api.model.MasterStatusSnapshot;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decides how long TaskType waits before each status check of a running master.
+ * One instance serves one build: it counts polls per phase and remembers the
+ * interval after which the end of the test was noticed.
+ */
+public abstract class PollingStrategy {
+
+    public static final String ADAPTIVE = "adaptive";
+    public static final String FIXED = "fixed";
+
+    public enum Phase {
+        /**
+         * waiting for the master to start running
+         */
+        INIT,
+        /**
+         * master is running
+         */
+        RUNNING
+    }
+
+    private final Map<Phase, Integer> polls = new EnumMap<Phase, Integer>(Phase.class);
+    private Phase phase;
+    private long phaseStart;
+    private long lastDelay;
+    private long detectionLag = -1;
+
+    /**
+     * @param name value of task setting, {@link #ADAPTIVE} if blank or unknown
+     */
+    public static PollingStrategy forName(String name) {
+        return FIXED.equals(name) ? new FixedPolling() : new AdaptivePolling();
+    }
+
+    /**
+     * choices for task configuration: name -> label
+     */
+    public static Map<String, String> choices() {
+        Map<String, String> c = new LinkedHashMap<String, String>();
+        c.put(ADAPTIVE, "Adaptive: poll often at start and near expected end");
+        c.put(FIXED, "Fixed: poll every " + FixedPolling.INTERVAL / 1000 + " seconds");
+        return c;
+    }
+
+    /**
+     * @param last latest status of the master, null if it is not known
+     * @return milliseconds to wait before next check
+     */
+    public long next(Phase phase, MasterStatusSnapshot last) {
+        long now = System.currentTimeMillis();
+        if (phase != this.phase) {
+            this.phase = phase;
+            this.phaseStart = now;
+        }
+        int n = polls.containsKey(phase) ? polls.get(phase) : 0;
+        polls.put(phase, n + 1);
+        lastDelay = Math.max(0, this.delay(phase, last, now - phaseStart, n));
+        return lastDelay;
+    }
+
+    /**
+     * Called when a check found the master ended; the end happened at most one interval ago.
+     */
+    public void ended() {
+        detectionLag = lastDelay;
+    }
+
+    /**
+     * @param inPhase milliseconds since first poll of the phase
+     * @param poll    number of polls done in the phase before this one
+     */
+    protected abstract long delay(Phase phase, MasterStatusSnapshot last, long inPhase, int poll);
+
+    public abstract String getName();
+
+    public int polls(Phase phase) {
+        return polls.containsKey(phase) ? polls.get(phase) : 0;
+    }
+
+    /**
+     * upper bound of time between end of the test and its detection, -1 if end was not detected
+     */
+    public long detectionLag() {
+        return detectionLag;
+    }
+
+    public String report() {
+        return "Polling (" + this.getName() + "): init polls=" + polls(Phase.INIT) + ", running polls=" + polls(Phase.RUNNING)
+            + (detectionLag < 0 ? "" : ", end detected within " + detectionLag / 1000 + "s");
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo.plugin.polling;
+
+import com.blazemeter.bamboo.plugin.TestStatus;
+import com.blazemeter.bamboo.plugin.api.Api;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Waits after the run loop until the test is over on the server: the master reports ENDED
+ * and the test is no longer listed as active, after which its reports are complete.
+ * The owning workspace is resolved once and only its active tests are checked.
+ * Checks start right away and back off exponentially, so a test that is already over
+ * costs no waiting instead of the 30 seconds the former loop slept before each check.
+ */
+public class TerminationDetector {
+
+    public static final long FIRST_INTERVAL = 1000;
+    public static final long MAX_INTERVAL = 16000;
+
+    /**
+     * interval and number of checks of the replaced loop, used to estimate the time saved
+     */
+    static final long LEGACY_INTERVAL = 30000;
+    static final int LEGACY_CHECKS = 10;
+    public static final long TIMEOUT = LEGACY_INTERVAL * LEGACY_CHECKS;
+
+    private Logger logger = LoggerFactory.getLogger("com.blazemeter");
+
+    private final Api api;
+    private final long firstInterval;
+    private final long maxInterval;
+    private final long timeout;
+
+    private Integer workspace;
+    private int checks = 0;
+    private long elapsed = -1;
+    private boolean terminated = false;
+
+    public TerminationDetector(Api api) {
+        this(api, FIRST_INTERVAL, MAX_INTERVAL, TIMEOUT);
+    }
+
+    public TerminationDetector(Api api, long firstInterval, long maxInterval, long timeout) {
+        this.api = api;
+        this.firstInterval = firstInterval;
+        this.maxInterval = maxInterval;
+        this.timeout = timeout;
+    }
+
+    /**
+     * @param testId id of test or collection without type suffix
+     * @return true if the test was over before timeout
+     */
+    public boolean await(String testId, String masterId) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        try {
+            this.workspace = this.api.workspaceOf(testId);
+        } catch (Exception e) {
+            this.logger.info("Failed to resolve workspace of test=" + testId + ", checking all workspaces: ", e);
+        }
+        long delay = this.firstInterval;
+        while (true) {
+            this.checks++;
+            if (this.ended(masterId) && !this.active(testId)) {
+                this.terminated = true;
+                break;
+            }
+            long passed = System.currentTimeMillis() - start;
+            if (passed >= this.timeout) {
+                break;
+            }
+            Thread.sleep(Math.min(delay, this.timeout - passed));
+            delay = Math.min(this.maxInterval, delay * 2);
+        }
+        this.elapsed = System.currentTimeMillis() - start;
+        return this.terminated;
+    }
+
+    private boolean ended(String masterId) {
+        try {
+            return this.api.snapshot(masterId).getTestStatus() != TestStatus.Running;
+        } catch (Exception e) {
+            // the run loop has already seen the master stop, do not wait for it
+            this.logger.info("Failed to get status of master=" + masterId + ": ", e);
+            return true;
+        }
+    }
+
+    private boolean active(String testId) {
+        if (this.workspace == null) {
+            return this.api.active(testId);
+        }
+        try {
+            return this.api.active(testId, this.workspace);
+        } catch (IOException e) {
+            this.logger.info("Failed to check if test=" + testId + " is active: ", e);
+            return false;
+        }
+    }
+
+    public int checks() {
+        return this.checks;
+    }
+
+    /**
+     * workspace owning the test, null if it was not resolved
+     */
+    public Integer workspace() {
+        return this.workspace;
+    }
+
+    /**
+     * milliseconds spent waiting, -1 before {@link #await}
+     */
+    public long elapsed() {
+        return this.elapsed;
+    }
+
+    /**
+     * Estimated milliseconds saved against the former loop, which slept 30 seconds before
+     * each check and noticed the end at the first check after it.
+     */
+    public long saved() {
+        if (this.elapsed < 0) {
+            return 0;
+        }
+        long legacy = LEGACY_INTERVAL * LEGACY_CHECKS;
+        if (this.terminated) {
+            long legacyChecks = Math.max(1, (this.elapsed + LEGACY_INTERVAL - 1) / LEGACY_INTERVAL);
+            legacy = LEGACY_INTERVAL * Math.min(LEGACY_CHECKS, legacyChecks);
+        }
+        return Math.max(0, legacy - this.elapsed);
+    }
+
+    public String report() {
+        return "Termination " + (this.terminated ? "detected" : "not confirmed") + " after " + this.elapsed / 1000
+            + "s and " + this.checks + " checks" + (this.workspace == null ? "" : " in workspace " + this.workspace)
+            + ", saved ~" + this.saved() / 1000 + "s";
+    }
+}
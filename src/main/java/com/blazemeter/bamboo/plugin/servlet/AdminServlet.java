@@ -16,6 +16,7 @@ package com.blazemeter.bamboo.plugin.servlet;
 import com.atlassian.sal.api.transaction.TransactionCallback;
 import com.blazemeter.bamboo.plugin.api.Api;
 import com.blazemeter.bamboo.plugin.api.ApiImpl;
+import com.blazemeter.bamboo.plugin.api.CatalogCache;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
@@ -104,6 +105,7 @@ public class AdminServlet extends HttpServlet {
 					pluginSettings.put(AdminServletConst.API_ID, api_id);
 					pluginSettings.put(AdminServletConst.API_SECRET, api_secret);
 					pluginSettings.put(AdminServletConst.URL, url);
+					CatalogCache.getInstance().invalidateAll();
 					return null;
 				}
 			});
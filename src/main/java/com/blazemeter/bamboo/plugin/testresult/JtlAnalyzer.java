@@ -0,0 +1,681 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.blazemeter.bamboo.plugin.testresult;
+
+import com.atlassian.bamboo.build.logger.BuildLogger;
+import com.blazemeter.bamboo.plugin.configuration.constants.Constants;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Reads JMeter CSV results (kpi.jtl of a session) once, in constant memory: lines are split
+ * into field offsets inside a reused byte buffer, numbers are parsed from the bytes, and labels
+ * are looked up by their bytes, so a line allocates nothing once its label has been seen.
+ * Columns are taken from the header line; files without one are read in JMeter's default order.
+ * Large files are memory-mapped and parsed in chunks on a fork-join pool, see {@link #read(File, ForkJoinPool, long)}.
+ */
+public class JtlAnalyzer {
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * files from this size on are parsed in parallel by {@link #analyze}
+     */
+    public static final long PARALLEL_THRESHOLD = 64L * 1024 * 1024;
+    public static final long CHUNK_SIZE = 32L * 1024 * 1024;
+    /**
+     * labels beyond this many are counted together, so that generated labels cannot exhaust memory
+     */
+    public static final int MAX_LABELS = 1000;
+    public static final String OTHER_LABELS = "(other labels)";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final long INVALID = Long.MIN_VALUE;
+
+    private final int bufferSize;
+
+    private byte[][] keys = new byte[64][];
+    private int[] hashes = new int[64];
+    private JtlStats[] values = new JtlStats[64];
+    private int labels = 0;
+    private JtlStats other;
+    private final List<JtlStats> ordered = new ArrayList<JtlStats>();
+    /**
+     * label bytes of ordered stats, null for other labels
+     */
+    private final List<byte[]> orderedKeys = new ArrayList<byte[]>();
+
+    /**
+     * fields of the current line: offsets into the buffer, end exclusive, quotes stripped
+     */
+    private int[] starts = new int[32];
+    private int[] ends = new int[32];
+    private int fields;
+
+    private int timeStampCol;
+    private int elapsedCol;
+    private int labelCol;
+    private int successCol;
+    private int bytesCol;
+
+    private long first = Long.MAX_VALUE;
+    private long last = Long.MIN_VALUE;
+    private long samples = 0;
+    private long skipped = 0;
+    private int files = 0;
+
+    /**
+     * region of the file read by a chunk of {@link #read(File, ForkJoinPool, long)}
+     */
+    private long from;
+    private long to;
+
+    public JtlAnalyzer() {
+        this(BUFFER_SIZE);
+    }
+
+    public JtlAnalyzer(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Reads kpi JTL files of the given directories, e.g. extracted artifacts of every session,
+     * and logs statistics per label.
+     *
+     * @return null if there is no kpi JTL file
+     */
+    public static JtlAnalyzer analyze(Collection<File> dirs, BuildLogger logger) {
+        long start = System.currentTimeMillis();
+        JtlAnalyzer analyzer = new JtlAnalyzer();
+        ForkJoinPool pool = null;
+        long bytes = 0;
+        try {
+            for (File dir : dirs) {
+                if (!dir.isDirectory()) {
+                    continue;
+                }
+                List<File> jtls = new ArrayList<File>(FileUtils.listFiles(dir, new String[]{"jtl"}, true));
+                Collections.sort(jtls);
+                for (File f : jtls) {
+                    if (!f.getName().toLowerCase().contains("kpi")) {
+                        continue;
+                    }
+                    try {
+                        if (f.length() >= PARALLEL_THRESHOLD) {
+                            if (pool == null) {
+                                pool = pool(Integer.getInteger(Constants.JTL_ANALYZE_PARALLELISM,
+                                    Runtime.getRuntime().availableProcessors()));
+                            }
+                            analyzer.read(f, pool, CHUNK_SIZE);
+                        } else {
+                            analyzer.read(f);
+                        }
+                        bytes += f.length();
+                    } catch (IOException e) {
+                        logger.addErrorLogEntry("Failed to analyze " + f.getAbsolutePath() + ": " + e);
+                    }
+                }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+        if (analyzer.files == 0) {
+            return null;
+        }
+        long millis = Math.max(1, System.currentTimeMillis() - start);
+        logger.addBuildLogEntry("Analyzed " + analyzer.files + " jtl files in " + millis + " ms"
+            + String.format(" (%.1f MB/s)", bytes / 1048576.0 / (millis / 1000.0))
+            + ": " + analyzer.samples + " samples, " + analyzer.skipped + " lines skipped");
+        for (JtlStats s : analyzer.labels()) {
+            logger.addBuildLogEntry("\t" + s);
+        }
+        logger.addBuildLogEntry("\t" + analyzer.total() + String.format(", throughput=%.2f/s", analyzer.throughput()));
+        return analyzer;
+    }
+
+    public void read(File jtl) throws IOException {
+        InputStream in = new FileInputStream(jtl);
+        try {
+            this.read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Adds samples of one JTL to those read before.
+     */
+    public void read(InputStream in) throws IOException {
+        this.files++;
+        this.columns();
+        this.feed(in, true);
+    }
+
+    /**
+     * Adds samples of one JTL to those read before, parsing it in parallel: the file is memory-mapped
+     * and cut into chunks of about chunkSize ending at line ends, each chunk is parsed into its own
+     * statistics on the pool, and those are merged in file order. A chunk that met more than
+     * {@link #MAX_LABELS} labels may have counted labels of earlier chunks as other labels, so it is
+     * parsed again into the merged statistics instead, which gives the rows of a sequential read.
+     * At most twice the pool's parallelism chunks are parsed or waiting to be merged at a time, so
+     * memory does not grow with the file. Quotes of every chunk are counted first, so each cut knows
+     * whether it falls inside a quoted field and moves on to the first line end outside of quotes;
+     * this relies on quotes appearing only around and, doubled, inside quoted fields, as JMeter
+     * writes them.
+     */
+    public void read(File jtl, ForkJoinPool pool, long chunkSize) throws IOException {
+        FileChannel channel = FileChannel.open(jtl.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer head = ByteBuffer.allocate((int) Math.min(size, this.bufferSize));
+            while (head.hasRemaining() && channel.read(head, head.position()) > 0) {
+            }
+            byte[] b = head.array();
+            int n = head.position();
+            int end = n == 0 ? -1 : this.split(b, 0, n, n == size);
+            if (end < 0) {
+                // empty, or first line longer than the buffer
+                this.read(jtl);
+                return;
+            }
+            this.files++;
+            this.columns();
+            final long dataStart = this.header(b) ? end : 0;
+            final long chunk = Math.max(1, Math.min(chunkSize, Integer.MAX_VALUE / 2));
+            final int chunks = (int) Math.max(1, (size - dataStart + chunk - 1) / chunk);
+            List<ForkJoinTask<Boolean>> parities = new ArrayList<ForkJoinTask<Boolean>>();
+            for (int i = 0; i < chunks; i++) {
+                long from = dataStart + i * chunk;
+                long to = Math.min(size, from + chunk);
+                parities.add(pool.submit(() -> oddQuotes(channel, from, to)));
+            }
+            final boolean[] inQuote = new boolean[chunks + 1];
+            for (int i = 0; i < chunks; i++) {
+                inQuote[i + 1] = inQuote[i] ^ join(parities.get(i));
+            }
+            final int window = 2 * pool.getParallelism();
+            List<ForkJoinTask<JtlAnalyzer>> parts = new ArrayList<ForkJoinTask<JtlAnalyzer>>(chunks);
+            for (int i = 0; i < chunks; i++) {
+                while (parts.size() < Math.min(chunks, i + window)) {
+                    final int c = parts.size();
+                    parts.add(pool.submit(() -> {
+                        long from = c == 0 ? dataStart : align(channel, dataStart + c * chunk, inQuote[c], size);
+                        long to = c == chunks - 1 ? size : align(channel, dataStart + (c + 1) * chunk, inQuote[c + 1], size);
+                        return this.parse(channel, from, to);
+                    }));
+                }
+                JtlAnalyzer part = join(parts.get(i));
+                parts.set(i, null);
+                if (part.other == null) {
+                    this.merge(part);
+                } else if (part.to > part.from) {
+                    this.feed(new MappedInput(channel.map(FileChannel.MapMode.READ_ONLY, part.from, part.to - part.from)), false);
+                }
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * pool of daemon workers for {@link #read(File, ForkJoinPool, long)}
+     */
+    public static ForkJoinPool pool(int parallelism) {
+        return new ForkJoinPool(Math.max(1, parallelism), p -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("bzm-jtl-parse-" + t.getPoolIndex());
+            return t;
+        }, null, false);
+    }
+
+    private static <T> T join(ForkJoinTask<T> task) throws IOException {
+        try {
+            return task.join();
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static boolean oddQuotes(FileChannel channel, long from, long to) throws IOException {
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        byte[] buf = new byte[BUFFER_SIZE];
+        int quotes = 0;
+        while (mapped.hasRemaining()) {
+            int n = Math.min(buf.length, mapped.remaining());
+            mapped.get(buf, 0, n);
+            for (int i = 0; i < n; i++) {
+                if (buf[i] == '"') {
+                    quotes++;
+                }
+            }
+        }
+        return (quotes & 1) == 1;
+    }
+
+    /**
+     * @return index after the first line end from position on that is not inside quotes, size if there is none
+     */
+    private static long align(FileChannel channel, long position, boolean inQuote, long size) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        boolean quoted = inQuote;
+        long p = position;
+        while (p < size) {
+            ((Buffer) buf).clear();
+            int n = channel.read(buf, p);
+            if (n <= 0) {
+                break;
+            }
+            byte[] b = buf.array();
+            for (int i = 0; i < n; i++) {
+                if (b[i] == '"') {
+                    quoted = !quoted;
+                } else if (b[i] == '\n' && !quoted) {
+                    return p + i + 1;
+                }
+            }
+            p += n;
+        }
+        return size;
+    }
+
+    private JtlAnalyzer parse(FileChannel channel, long from, long to) throws IOException {
+        JtlAnalyzer part = new JtlAnalyzer(this.bufferSize);
+        part.timeStampCol = this.timeStampCol;
+        part.elapsedCol = this.elapsedCol;
+        part.labelCol = this.labelCol;
+        part.successCol = this.successCol;
+        part.bytesCol = this.bytesCol;
+        part.from = from;
+        part.to = to;
+        if (to > from) {
+            part.feed(new MappedInput(channel.map(FileChannel.MapMode.READ_ONLY, from, to - from)), false);
+        }
+        return part;
+    }
+
+    private void merge(JtlAnalyzer part) {
+        this.samples += part.samples;
+        this.skipped += part.skipped;
+        this.first = Math.min(this.first, part.first);
+        this.last = Math.max(this.last, part.last);
+        for (int i = 0; i < part.ordered.size(); i++) {
+            byte[] key = part.orderedKeys.get(i);
+            JtlStats target = key == null ? this.other() : this.label(key, 0, key.length);
+            target.add(part.ordered.get(i));
+        }
+    }
+
+    /**
+     * JMeter's default order of columns
+     */
+    private void columns() {
+        this.timeStampCol = 0;
+        this.elapsedCol = 1;
+        this.labelCol = 2;
+        this.successCol = 7;
+        this.bytesCol = 9;
+    }
+
+    private void feed(InputStream in, boolean header) throws IOException {
+        byte[] buf = new byte[this.bufferSize];
+        int start = 0;
+        int limit = 0;
+        boolean eof = false;
+        while (true) {
+            int end = start < limit ? this.split(buf, start, limit, eof) : -1;
+            if (end < 0) {
+                if (eof) {
+                    return;
+                }
+                if (start > 0) {
+                    System.arraycopy(buf, start, buf, 0, limit - start);
+                    limit -= start;
+                    start = 0;
+                }
+                if (limit == buf.length) {
+                    // line longer than the buffer
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                }
+                int n = in.read(buf, limit, buf.length - limit);
+                if (n < 0) {
+                    eof = true;
+                } else {
+                    limit += n;
+                }
+                continue;
+            }
+            if (header) {
+                header = false;
+                if (this.header(buf)) {
+                    start = end;
+                    continue;
+                }
+            }
+            this.line(buf);
+            start = end;
+        }
+    }
+
+    /**
+     * Splits the line starting at from into fields.
+     *
+     * @return index after the line, -1 if the line does not end before limit and more data may come
+     */
+    private int split(byte[] b, int from, int limit, boolean eof) {
+        int f = 0;
+        int i = from;
+        while (true) {
+            if (f == this.starts.length) {
+                this.starts = Arrays.copyOf(this.starts, f * 2);
+                this.ends = Arrays.copyOf(this.ends, f * 2);
+            }
+            if (i < limit && b[i] == '"') {
+                int s = ++i;
+                while (true) {
+                    if (i >= limit) {
+                        if (!eof) {
+                            return -1;
+                        }
+                        break;
+                    }
+                    if (b[i] == '"') {
+                        if (i + 1 >= limit && !eof) {
+                            return -1;
+                        }
+                        if (i + 1 < limit && b[i + 1] == '"') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                this.starts[f] = s;
+                this.ends[f] = Math.min(i, limit);
+                while (i < limit && b[i] != ',' && b[i] != '\n') {
+                    i++;
+                }
+            } else {
+                int s = i;
+                while (i < limit && b[i] != ',' && b[i] != '\n') {
+                    i++;
+                }
+                this.starts[f] = s;
+                this.ends[f] = i > s && b[i - 1] == '\r' ? i - 1 : i;
+            }
+            f++;
+            if (i >= limit) {
+                if (!eof) {
+                    return -1;
+                }
+                this.fields = f;
+                return limit;
+            }
+            if (b[i] == '\n') {
+                this.fields = f;
+                return i + 1;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * @return true if the line is a header; its columns are used for the rest of the file
+     */
+    private boolean header(byte[] b) {
+        if (this.fields > this.elapsedCol && parseLong(b, this.starts[this.elapsedCol], this.ends[this.elapsedCol]) != INVALID) {
+            return false;
+        }
+        this.timeStampCol = -1;
+        this.elapsedCol = -1;
+        this.labelCol = -1;
+        this.successCol = -1;
+        this.bytesCol = -1;
+        for (int f = 0; f < this.fields; f++) {
+            String name = new String(b, this.starts[f], this.ends[f] - this.starts[f], ISO_8859_1).trim();
+            if ("timeStamp".equals(name)) {
+                this.timeStampCol = f;
+            } else if ("elapsed".equals(name)) {
+                this.elapsedCol = f;
+            } else if ("label".equals(name)) {
+                this.labelCol = f;
+            } else if ("success".equals(name)) {
+                this.successCol = f;
+            } else if ("bytes".equals(name)) {
+                this.bytesCol = f;
+            }
+        }
+        return true;
+    }
+
+    private void line(byte[] b) {
+        if (this.fields == 1 && this.starts[0] == this.ends[0]) {
+            return;
+        }
+        long elapsed = this.elapsedCol >= 0 && this.elapsedCol < this.fields
+            ? parseLong(b, this.starts[this.elapsedCol], this.ends[this.elapsedCol]) : INVALID;
+        if (elapsed == INVALID || elapsed < 0) {
+            this.skipped++;
+            return;
+        }
+        boolean success = this.successCol < 0 || this.successCol >= this.fields
+            || isTrue(b, this.starts[this.successCol], this.ends[this.successCol]);
+        long bytes = this.bytesCol >= 0 && this.bytesCol < this.fields
+            ? parseLong(b, this.starts[this.bytesCol], this.ends[this.bytesCol]) : INVALID;
+        if (this.timeStampCol >= 0 && this.timeStampCol < this.fields) {
+            long ts = parseLong(b, this.starts[this.timeStampCol], this.ends[this.timeStampCol]);
+            if (ts != INVALID) {
+                this.first = Math.min(this.first, ts);
+                this.last = Math.max(this.last, ts + elapsed);
+            }
+        }
+        JtlStats stats = this.labelCol >= 0 && this.labelCol < this.fields
+            ? this.label(b, this.starts[this.labelCol], this.ends[this.labelCol]) : this.label(b, 0, 0);
+        stats.record(elapsed, success, bytes == INVALID ? 0 : bytes);
+        this.samples++;
+    }
+
+    private JtlStats label(byte[] b, int s, int e) {
+        int h = 1;
+        for (int i = s; i < e; i++) {
+            h = 31 * h + b[i];
+        }
+        int mask = this.keys.length - 1;
+        int i = (h ^ (h >>> 16)) & mask;
+        while (this.keys[i] != null) {
+            if (this.hashes[i] == h && equal(this.keys[i], b, s, e)) {
+                return this.values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        if (this.labels >= MAX_LABELS) {
+            return this.other();
+        }
+        byte[] key = Arrays.copyOfRange(b, s, e);
+        JtlStats stats = new JtlStats(new String(key, UTF_8).replace("\"\"", "\""));
+        this.keys[i] = key;
+        this.hashes[i] = h;
+        this.values[i] = stats;
+        this.labels++;
+        this.ordered.add(stats);
+        this.orderedKeys.add(key);
+        if (this.labels * 2 > this.keys.length) {
+            this.rehash();
+        }
+        return stats;
+    }
+
+    private JtlStats other() {
+        if (this.other == null) {
+            this.other = new JtlStats(OTHER_LABELS);
+            this.ordered.add(this.other);
+            this.orderedKeys.add(null);
+        }
+        return this.other;
+    }
+
+    private void rehash() {
+        byte[][] oldKeys = this.keys;
+        int[] oldHashes = this.hashes;
+        JtlStats[] oldValues = this.values;
+        this.keys = new byte[oldKeys.length * 2][];
+        this.hashes = new int[oldKeys.length * 2];
+        this.values = new JtlStats[oldKeys.length * 2];
+        int mask = this.keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == null) {
+                continue;
+            }
+            int h = oldHashes[j];
+            int i = (h ^ (h >>> 16)) & mask;
+            while (this.keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            this.keys[i] = oldKeys[j];
+            this.hashes[i] = h;
+            this.values[i] = oldValues[j];
+        }
+    }
+
+    private static boolean equal(byte[] key, byte[] b, int s, int e) {
+        if (key.length != e - s) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != b[s + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isTrue(byte[] b, int s, int e) {
+        return e - s == 4 && (b[s] | 0x20) == 't' && (b[s + 1] | 0x20) == 'r' && (b[s + 2] | 0x20) == 'u'
+            && (b[s + 3] | 0x20) == 'e';
+    }
+
+    /**
+     * @return INVALID if the field is not an integer
+     */
+    private static long parseLong(byte[] b, int s, int e) {
+        while (s < e && b[s] == ' ') {
+            s++;
+        }
+        while (e > s && b[e - 1] == ' ') {
+            e--;
+        }
+        boolean negative = s < e && b[s] == '-';
+        if (negative) {
+            s++;
+        }
+        if (s == e || e - s > 18) {
+            return INVALID;
+        }
+        long v = 0;
+        for (int i = s; i < e; i++) {
+            int d = b[i] - '0';
+            if (d < 0 || d > 9) {
+                return INVALID;
+            }
+            v = v * 10 + d;
+        }
+        return negative ? -v : v;
+    }
+
+    /**
+     * statistics per label, in order of first appearance
+     */
+    public List<JtlStats> labels() {
+        return Collections.unmodifiableList(this.ordered);
+    }
+
+    /**
+     * statistics of all samples
+     */
+    public JtlStats total() {
+        JtlStats total = new JtlStats("TOTAL");
+        for (JtlStats s : this.ordered) {
+            total.add(s);
+        }
+        return total;
+    }
+
+    /**
+     * samples per second between the first start and the last end, -1 if there are no timestamps
+     */
+    public double throughput() {
+        return this.last > this.first ? this.samples * 1000.0 / (this.last - this.first) : -1;
+    }
+
+    public long samples() {
+        return this.samples;
+    }
+
+    public long skipped() {
+        return this.skipped;
+    }
+
+    public int files() {
+        return this.files;
+    }
+
+    /**
+     * stream over a mapped region of the file
+     */
+    private static class MappedInput extends InputStream {
+        private final ByteBuffer buffer;
+
+        MappedInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return this.buffer.hasRemaining() ? this.buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!this.buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, this.buffer.remaining());
+            this.buffer.get(b, off, n);
+            return n;
+        }
+    }
+}
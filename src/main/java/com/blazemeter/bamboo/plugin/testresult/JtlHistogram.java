@@ -0,0 +1,99 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.blazemeter.bamboo.plugin.testresult;
+
+import java.util.Arrays;
+
+/**
+ * Log-linear histogram of elapsed times in milliseconds, laid out like HdrHistogram with
+ * two significant digits: values below 256 have a bucket each, every power of two above is
+ * split into 128 buckets, so a percentile is off by less than 1% of its value. Memory depends
+ * on the largest value recorded, not on the number of values: at most a few thousand counters.
+ */
+public class JtlHistogram {
+
+    private static final int SUB_BUCKETS = 256;
+    private static final int HALF = SUB_BUCKETS / 2;
+    private static final int SHIFT = 7;
+
+    private long[] counts = new long[SUB_BUCKETS];
+    private long count = 0;
+    private long max = 0;
+
+    public void record(long millis) {
+        long v = Math.max(0, millis);
+        int i = index(v);
+        if (i >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(i + 1, counts.length + HALF));
+        }
+        counts[i]++;
+        count++;
+        if (v > max) {
+            max = v;
+        }
+    }
+
+    public void add(JtlHistogram other) {
+        if (other.counts.length > counts.length) {
+            counts = Arrays.copyOf(counts, other.counts.length);
+        }
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        max = Math.max(max, other.max);
+    }
+
+    public long count() {
+        return count;
+    }
+
+    /**
+     * @param p percentile, 0..100
+     * @return highest value of the bucket the percentile falls into, at most the largest value recorded
+     */
+    public long percentile(double p) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * p / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highest(i), max);
+            }
+        }
+        return max;
+    }
+
+    static int index(long v) {
+        if (v < SUB_BUCKETS) {
+            return (int) v;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(v);
+        int shift = magnitude - SHIFT;
+        return SUB_BUCKETS + (magnitude - 8) * HALF + (int) ((v >> shift) - HALF);
+    }
+
+    static long highest(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int magnitude = 8 + (index - SUB_BUCKETS) / HALF;
+        int shift = magnitude - SHIFT;
+        long lowest = (long) (HALF + (index - SUB_BUCKETS) % HALF) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.blazemeter.bamboo.plugin.testresult;
+
+/**
+ * Samples of one label, or of all labels: exact count, errors, mean, min, max and bytes,
+ * percentiles from a {@link JtlHistogram}.
+ */
+public class JtlStats {
+
+    private final String label;
+    private final JtlHistogram histogram = new JtlHistogram();
+    private long count = 0;
+    private long errors = 0;
+    private long sum = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = 0;
+    private long bytes = 0;
+
+    public JtlStats(String label) {
+        this.label = label;
+    }
+
+    void record(long elapsed, boolean success, long bytes) {
+        count++;
+        if (!success) {
+            errors++;
+        }
+        sum += elapsed;
+        min = Math.min(min, elapsed);
+        max = Math.max(max, elapsed);
+        if (bytes > 0) {
+            this.bytes += bytes;
+        }
+        histogram.record(elapsed);
+    }
+
+    void add(JtlStats other) {
+        count += other.count;
+        errors += other.errors;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        bytes += other.bytes;
+        histogram.add(other.histogram);
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long errors() {
+        return errors;
+    }
+
+    public double errorPercentage() {
+        return count == 0 ? 0 : errors * 100.0 / count;
+    }
+
+    public double mean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    public long min() {
+        return count == 0 ? 0 : min;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public long bytes() {
+        return bytes;
+    }
+
+    /**
+     * @param p percentile, 0..100
+     */
+    public long percentile(double p) {
+        return histogram.percentile(p);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: samples=%d, errors=%.2f%%, average=%.1f, min=%d, max=%d, median=%d, "
+                + "90%%=%d, 95%%=%d, 99%%=%d, 99.9%%=%d",
+            label, count, errorPercentage(), mean(), min(), max, percentile(50), percentile(90), percentile(95),
+            percentile(99), percentile(99.9));
+    }
+}
@@ -26,11 +26,14 @@ public class TestResult {
     protected double samples          ;
     protected double median           ;
     protected double percentile90     ;
-    protected double percentile99     ;
+    protected double percentile95     =-1;
+    protected double percentile99     =-1;
+    protected double percentile999    =-1;
     protected double errorPercentage  ;
     protected double hits             ;
     protected double kbs              ;
     protected long   n                ;
+    protected double throughput       =-1;
 
     public TestResult(JSONObject json) throws IOException, JSONException {
 //        this.std = json.getDouble("std");
@@ -57,6 +60,39 @@ public class TestResult {
           this.n=-1;
     }
 
+    /**
+     * Aggregate of downloaded JTL files, used when the server summary is not available.
+     */
+    public TestResult(JtlAnalyzer jtl) {
+        JtlStats total = jtl.total();
+        this.average = total.mean();
+        this.min = total.min();
+        this.max = total.max();
+        this.percentile90 = total.percentile(90);
+        this.errorPercentage = total.errorPercentage();
+        this.hits = total.count();
+        this.kbs = total.bytes() / 1024.0;
+        this.fromJtl(jtl);
+    }
+
+    /**
+     * Fills in what the server summary lacks from downloaded JTL files: sample count (also n),
+     * median, 95th, 99th and 99.9th percentiles and throughput in samples per second.
+     */
+    public void fromJtl(JtlAnalyzer jtl) {
+        JtlStats total = jtl.total();
+        if (total.count() == 0) {
+            return;
+        }
+        this.samples = total.count();
+        this.n = total.count();
+        this.median = total.percentile(50);
+        this.percentile95 = total.percentile(95);
+        this.percentile99 = total.percentile(99);
+        this.percentile999 = total.percentile(99.9);
+        this.throughput = jtl.throughput();
+    }
+
     @Override
     public String toString() {
         try{
@@ -65,12 +101,22 @@ public class TestResult {
             String average=String.valueOf(this.average);
             String min=String.valueOf(this.min);
             String max=String.valueOf(this.max);
-            return "AggregateTestResult ->" +
+            String result = "AggregateTestResult ->" +
                     " hits=" + hits +
                     ", errors percentage=" + errorPercentage +
                     ", average=" + average +
                     ", min=" + min +
                     ", max=" + max;
+            if (this.samples >= 0) {
+                result += ", samples=" + (long) this.samples +
+                    ", median=" + this.median +
+                    ", 90%=" + this.percentile90 +
+                    ", 95%=" + this.percentile95 +
+                    ", 99%=" + this.percentile99 +
+                    ", 99.9%=" + this.percentile999 +
+                    ", throughput=" + String.format("%.2f", this.throughput);
+            }
+            return result;
 
         }catch (Exception e){
             return "Failed to create aggregate report from JSON object - "+e.getMessage();
@@ -141,6 +187,30 @@ public class TestResult {
         this.percentile99 = percentile99;
     }
 
+    public double getPercentile95() {
+        return percentile95;
+    }
+
+    public void setPercentile95(double percentile95) {
+        this.percentile95 = percentile95;
+    }
+
+    public double getPercentile999() {
+        return percentile999;
+    }
+
+    public void setPercentile999(double percentile999) {
+        this.percentile999 = percentile999;
+    }
+
+    public double getThroughput() {
+        return throughput;
+    }
+
+    public void setThroughput(double throughput) {
+        this.throughput = throughput;
+    }
+
     public double getErrorPercentage() {
         return errorPercentage;
     }
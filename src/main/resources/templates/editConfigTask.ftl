@@ -1,6 +1,7 @@
 [@ww.select cssClass="builderSelectWidget" labelKey='blazemeter.test' name='selectedtest' list='testlist' required='true' emptyOption='false'/]
 [@ww.textfield labelKey="blazemeter.config.jmeterProps" name="jmeter.properties" required='false'/]
 [@ww.textarea labelKey="blazemeter.config.notes" name="notes" required='false'/]
+[@ww.select labelKey="blazemeter.config.polling" name="polling" list="pollinglist" required='false' emptyOption='false'/]
 [@ww.checkbox labelKey="blazemeter.config.jtl" name='jtl.report' toggle='true' description=''/]
 [@ww.textfield labelKey="blazemeter.config.jtl.path" name="jtl.path" required='false'/]
 [@ww.checkbox labelKey="blazemeter.config.junit" name='junit.report' toggle='true' description=''/]
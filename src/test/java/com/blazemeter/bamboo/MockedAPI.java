@@ -21,12 +21,15 @@ import okhttp3.Credentials;
 import org.apache.commons.io.FileUtils;
 import org.mockserver.integration.ClientAndProxy;
 import org.mockserver.integration.ClientAndServer;
+import org.mockserver.model.ConnectionOptions;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 
 import static org.mockserver.integration.ClientAndProxy.startClientAndProxy;
 import static org.mockserver.integration.ClientAndServer.startClientAndServer;
+import static org.mockserver.matchers.Times.once;
 import static org.mockserver.matchers.Times.unlimited;
 import static org.mockserver.model.HttpRequest.request;
 import static org.mockserver.model.HttpResponse.response;
@@ -215,6 +218,52 @@ public class MockedAPI {
                                 .withStatusCode(200).withBody(startCollection));
 }
 
+    public static void getTest() throws IOException{
+        File jsonFile = new File(TestConstants.RESOURCES + "/getTest.json");
+        String getTest= FileUtils.readFileToString(jsonFile);
+        String c = Credentials.basic(TestConstants.TEST_API_ID_VALID,TestConstants.TEST_API_SECRET_VALID);
+        mockServer.when(
+                request()
+                        .withMethod("GET")
+                        .withPath(UrlManager.V4+"/tests/"+TestConstants.TEST_ID)
+                        .withHeader(Api.ACCEPT, Api.APP_JSON)
+                        .withHeader(Api.AUTHORIZATION, c),
+                unlimited()
+        )
+                .respond(
+                        response().withHeader( Api.APP_JSON)
+                                .withStatusCode(200).withBody(getTest));
+    }
+
+    public static void project() {
+        String c = Credentials.basic(TestConstants.TEST_API_ID_VALID,TestConstants.TEST_API_SECRET_VALID);
+        mockServer.when(
+                request()
+                        .withMethod("GET")
+                        .withPath(UrlManager.V4+"/projects/7")
+                        .withHeader(Api.AUTHORIZATION, c),
+                unlimited()
+        )
+                .respond(
+                        response().withHeader( Api.APP_JSON)
+                                .withStatusCode(200).withBody("{\"api_version\":4,\"error\":null,"
+                                + "\"result\":{\"id\":7,\"name\":\"Default project\",\"workspaceId\":11}}"));
+    }
+
+    public static void getTestForbidden() {
+        String c = Credentials.basic(TestConstants.TEST_API_ID_VALID,TestConstants.TEST_API_SECRET_VALID);
+        mockServer.when(
+                request()
+                        .withMethod("GET")
+                        .withPath(UrlManager.V4+"/tests/"+TestConstants.TEST_ID_FORBIDDEN)
+                        .withHeader(Api.AUTHORIZATION, c),
+                unlimited()
+        )
+                .respond(
+                        response().withHeader( Api.APP_JSON)
+                                .withStatusCode(403).withBody("{\"error\":{\"code\":403}}"));
+    }
+
     public static void getTestReport()  throws IOException{
         File jsonFile = new File(TestConstants.RESOURCES + "/getTestReport.json");
         String getTestReport= FileUtils.readFileToString(jsonFile);
@@ -375,6 +424,19 @@ public class MockedAPI {
         File jsonFile = new File(TestConstants.RESOURCES + "/workspaces.json");
         String b= FileUtils.readFileToString(jsonFile);
         String c = Credentials.basic(TestConstants.TEST_API_ID_VALID, TestConstants.TEST_API_SECRET_VALID);
+        mockServer.when(
+            request()
+                .withMethod("GET")
+                .withPath(expectedPath)
+                .withQueryStringParameter("accountId", "9322")
+                .withHeader(Api.ACCEPT, Api.APP_JSON)
+                .withHeader(Api.AUTHORIZATION, c)
+                .withHeader("If-None-Match", TestConstants.WORKSPACES_ETAG),
+            unlimited()
+        )
+            .respond(
+                response().withHeader("ETag", TestConstants.WORKSPACES_ETAG)
+                    .withStatusCode(304));
         mockServer.when(
             request()
                 .withMethod("GET")
@@ -385,10 +447,54 @@ public class MockedAPI {
             unlimited()
         )
             .respond(
-                response().withHeader(Api.APP_JSON)
+                response().withHeader(Api.APP_JSON).withHeader("ETag", TestConstants.WORKSPACES_ETAG)
                     .withStatusCode(200).withBody(b));
     }
 
+    /**
+     * binary artifact, served without authorization like session data urls
+     */
+    public static void artifact(String path, byte[] body) {
+        mockServer.when(
+            request()
+                .withMethod("GET")
+                .withPath(path),
+            unlimited()
+        )
+            .respond(
+                response().withHeader("Content-Type", "application/zip")
+                    .withStatusCode(200).withBody(body));
+    }
+
+    /**
+     * artifact whose first download breaks after cut bytes, the connection being closed although
+     * Content-Length announced the whole body; Range requests from cut on get the rest
+     */
+    public static void interruptedArtifact(String path, byte[] body, int cut) {
+        String etag = "\"" + path.hashCode() + "\"";
+        mockServer.when(
+            request()
+                .withMethod("GET")
+                .withPath(path)
+                .withHeader(Api.RANGE, "bytes=" + cut + "-"),
+            unlimited()
+        )
+            .respond(
+                response().withHeader("Content-Type", "application/zip").withHeader("ETag", etag)
+                    .withHeader(Api.CONTENT_RANGE, "bytes " + cut + "-" + (body.length - 1) + "/" + body.length)
+                    .withStatusCode(206).withBody(Arrays.copyOfRange(body, cut, body.length)));
+        mockServer.when(
+            request()
+                .withMethod("GET")
+                .withPath(path),
+            once()
+        )
+            .respond(
+                response().withHeader("Content-Type", "application/zip").withHeader("ETag", etag)
+                    .withStatusCode(200).withBody(Arrays.copyOf(body, cut))
+                    .withConnectionOptions(new ConnectionOptions()
+                        .withContentLengthHeaderOverride(body.length).withCloseSocket(true)));
+    }
 
     public static void stopAPI(){
         mockServer.reset();
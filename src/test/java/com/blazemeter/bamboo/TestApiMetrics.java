@@ -0,0 +1,98 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo;
+
+import com.blazemeter.bamboo.plugin.TestStatus;
+import com.blazemeter.bamboo.plugin.api.Api;
+import com.blazemeter.bamboo.plugin.api.ApiImpl;
+import com.blazemeter.bamboo.plugin.api.ApiMetrics;
+import com.blazemeter.bamboo.plugin.api.EndpointStats;
+import com.blazemeter.bamboo.plugin.api.LatencyHistogram;
+import com.blazemeter.bamboo.plugin.api.UrlManager;
+import com.blazemeter.bamboo.plugin.api.UrlManagerV3Impl;
+import java.io.IOException;
+import okhttp3.Credentials;
+import okhttp3.Request;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestApiMetrics {
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        MockedAPI.startAPI();
+        MockedAPI.getMasterStatus();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        MockedAPI.stopAPI();
+    }
+
+    @Test
+    public void recordsPerEndpoint() {
+        String c = Credentials.basic(TestConstants.TEST_API_ID_VALID, TestConstants.TEST_API_SECRET_VALID);
+        ApiImpl api = new ApiImpl(c, TestConstants.mockedApiUrl);
+        long global = ApiMetrics.getInstance().endpoint("masterStatus").calls();
+        Assert.assertEquals(TestStatus.Running, api.masterStatus(TestConstants.TEST_MASTER_100));
+        Assert.assertEquals(TestStatus.NotRunning, api.masterStatus(TestConstants.TEST_MASTER_140));
+
+        EndpointStats stats = api.metrics().endpoint("masterStatus");
+        Assert.assertEquals(2, stats.calls());
+        Assert.assertEquals(0, stats.retries());
+        Assert.assertEquals(Long.valueOf(2), stats.codes().get(200));
+        Assert.assertTrue(stats.bytesIn() > 0);
+        Assert.assertEquals(2, stats.ttfb().count());
+        Assert.assertEquals(global + 2, ApiMetrics.getInstance().endpoint("masterStatus").calls());
+        Assert.assertEquals(1, api.metrics().report().size());
+    }
+
+    @Test
+    public void classifiesEndpoints() {
+        UrlManager urls = new UrlManagerV3Impl(TestConstants.mockedApiUrl);
+        Assert.assertEquals("masterStatus", endpoint(urls.masterStatus(Api.APP_KEY, "1")));
+        Assert.assertEquals("startTest", endpoint(urls.testStart(Api.APP_KEY, "1")));
+        Assert.assertEquals("startTest", endpoint(urls.collectionStart(Api.APP_KEY, "1")));
+        Assert.assertEquals("terminateTest", endpoint(urls.testTerminate(Api.APP_KEY, "1")));
+        Assert.assertEquals("tests", endpoint(urls.tests(Api.APP_KEY, 1, 0, 500)));
+        Assert.assertEquals("test", endpoint(urls.test(Api.APP_KEY, "1")));
+        Assert.assertEquals("activeTests", endpoint(urls.activeTests(Api.APP_KEY, 1)));
+        Assert.assertEquals("master", endpoint(urls.masterId(Api.APP_KEY, "1")));
+        Assert.assertEquals("jtlReport", endpoint(urls.retrieveJTLZIP(Api.APP_KEY, "1")));
+        Assert.assertEquals("download", endpoint("https://storage.example.com/artifacts/1.zip"));
+        String dataUrl = "https://a.blazemeter.com/api/latest/sessions/1/reports";
+        Assert.assertEquals("other", ApiMetrics.endpoint(new Request.Builder().url(dataUrl).build(), "a.blazemeter.com"));
+        Assert.assertEquals("download", ApiMetrics.endpoint(new Request.Builder().url(TestConstants.mockedApiUrl
+            + "/api/latest/sessions/1/reports").build(), "a.blazemeter.com"));
+    }
+
+    @Test
+    public void histogramPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            h.record(i);
+        }
+        Assert.assertEquals(100, h.count());
+        Assert.assertEquals(50, h.percentile(50));
+        Assert.assertEquals(100, h.percentile(95));
+        Assert.assertEquals(100, h.max());
+    }
+
+    private static String endpoint(String url) {
+        return ApiMetrics.endpoint(new Request.Builder().url(url).build());
+    }
+}
@@ -16,9 +16,22 @@ package com.blazemeter.bamboo;
 
 import com.blazemeter.bamboo.plugin.TestStatus;
 import com.blazemeter.bamboo.plugin.api.*;
+import com.blazemeter.bamboo.plugin.configuration.constants.Constants;
 import com.blazemeter.bamboo.plugin.configuration.constants.JsonConstants;
+import com.atlassian.bamboo.build.logger.BuildLogger;
+import com.blazemeter.bamboo.plugin.download.ArtifactWriter;
+import com.blazemeter.bamboo.plugin.download.ResumableDownload;
+import com.blazemeter.bamboo.plugin.download.ResumingInputStream;
+import com.blazemeter.bamboo.plugin.download.Transfer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.util.HashMap;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import okhttp3.Credentials;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.AfterClass;
@@ -26,10 +39,15 @@ import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.mockito.Mockito;
 import java.io.IOException;
 
 public class TestApiV3Impl {
     private ApiImpl blazemeterApiV3 = null;
+    private static final String ARTIFACT = "/artifacts/session-1.zip";
+    private static final byte[] ARTIFACT_BODY = {80, 75, 3, 4, 0, 1, 2, 3};
+    private static final String INTERRUPTED = "/artifacts/interrupted.zip";
+    private static final String INTERRUPTED_STREAM = "/artifacts/interrupted-stream.zip";
 
 
     @BeforeClass
@@ -40,6 +58,10 @@ public class TestApiV3Impl {
         MockedAPI.startTest();
         MockedAPI.accountId();
         MockedAPI.workspaces();
+        MockedAPI.getTest();
+        MockedAPI.getTestForbidden();
+        MockedAPI.project();
+        MockedAPI.artifact(ARTIFACT, ARTIFACT_BODY);
     }
 
     @AfterClass
@@ -86,6 +108,51 @@ public class TestApiV3Impl {
                 "15105877");
     }
 
+    @Test
+    public void collection_fromType() throws Exception {
+        String c = Credentials.basic(TestConstants.TEST_API_ID_VALID,TestConstants.TEST_API_SECRET_VALID);
+        blazemeterApiV3 = new ApiImpl(c,TestConstants.mockedApiUrl);
+        Assert.assertTrue(blazemeterApiV3.collection(TestConstants.TEST_MASTER_ID, "multi"));
+        Assert.assertFalse(blazemeterApiV3.collection(TestConstants.TEST_MASTER_ID, "http"));
+    }
+
+    @Test
+    public void collection_lookup() throws Exception {
+        String c = Credentials.basic(TestConstants.TEST_API_ID_VALID,TestConstants.TEST_API_SECRET_VALID);
+        blazemeterApiV3 = new ApiImpl(c,TestConstants.mockedApiUrl);
+        Assert.assertFalse(blazemeterApiV3.collection(TestConstants.TEST_ID, null));
+    }
+
+    @Test(expected = Exception.class)
+    public void collection_notPresent() throws Exception {
+        String c = Credentials.basic(TestConstants.TEST_API_ID_VALID,TestConstants.TEST_API_SECRET_VALID);
+        blazemeterApiV3 = new ApiImpl(c,TestConstants.mockedApiUrl);
+        blazemeterApiV3.collection("123", Constants.UNKNOWN_TYPE);
+    }
+
+    @Test
+    public void workspaceOf_fromProject() throws Exception {
+        String c = Credentials.basic(TestConstants.TEST_API_ID_VALID,TestConstants.TEST_API_SECRET_VALID);
+        blazemeterApiV3 = new ApiImpl(c,TestConstants.mockedApiUrl);
+        CatalogCache.getInstance().invalidateAll();
+        Assert.assertEquals(Integer.valueOf(11), blazemeterApiV3.workspaceOf(TestConstants.TEST_ID));
+        Assert.assertEquals(0, blazemeterApiV3.metrics().endpoint("workspaces").calls());
+        Assert.assertEquals(0, blazemeterApiV3.metrics().endpoint("tests").calls());
+        Assert.assertNull(blazemeterApiV3.workspaceOf("123"));
+    }
+
+    @Test
+    public void collection_serverError() throws Exception {
+        String c = Credentials.basic(TestConstants.TEST_API_ID_VALID,TestConstants.TEST_API_SECRET_VALID);
+        blazemeterApiV3 = new ApiImpl(c,TestConstants.mockedApiUrl);
+        try {
+            blazemeterApiV3.collection(TestConstants.TEST_ID_FORBIDDEN, null);
+            Assert.fail("failed lookup is not a missing test");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("403"));
+        }
+    }
+
     @Test
     public void getTestReport() {
         String c = Credentials.basic(TestConstants.TEST_API_ID_VALID,TestConstants.TEST_API_SECRET_VALID);
@@ -140,6 +207,16 @@ public class TestApiV3Impl {
         Assert.assertTrue(status == 0);
     }
 
+    @Test
+    public void statusSnapshotShared() throws IOException {
+        String c = Credentials.basic(TestConstants.TEST_API_ID_VALID,TestConstants.TEST_API_SECRET_VALID);
+        blazemeterApiV3 = new ApiImpl(c, TestConstants.mockedApiUrl);
+        Assert.assertEquals(TestStatus.Running, blazemeterApiV3.masterStatus(TestConstants.TEST_MASTER_100));
+        Assert.assertEquals(100, blazemeterApiV3.getTestMasterStatusCode(TestConstants.TEST_MASTER_100));
+        Assert.assertEquals("DATA_RECIEVED", blazemeterApiV3.snapshot(TestConstants.TEST_MASTER_100).getStatus());
+        Assert.assertEquals(1, blazemeterApiV3.metrics().endpoint("masterStatus").calls());
+    }
+
     @Test
     public void accountId() {
         String c = Credentials.basic(TestConstants.TEST_API_ID_VALID,TestConstants.TEST_API_SECRET_VALID);
@@ -156,4 +233,88 @@ public class TestApiV3Impl {
         Assert.assertTrue("DWorkspace".equals(ws.get(32563)));
     }
 
+
+    @Test
+    public void downloadArtifact() throws IOException {
+        String c = Credentials.basic(TestConstants.TEST_API_ID_VALID,TestConstants.TEST_API_SECRET_VALID);
+        blazemeterApiV3 = new ApiImpl(c,TestConstants.mockedApiUrl);
+        File target = File.createTempFile("artifact", ".zip");
+        try {
+            Transfer t = ArtifactWriter.write(blazemeterApiV3.download(TestConstants.mockedApiUrl + ARTIFACT, 1000, 0, null).body(),
+                target);
+            Assert.assertEquals(ARTIFACT_BODY.length, t.getWritten());
+            Assert.assertArrayEquals(ARTIFACT_BODY, FileUtils.readFileToByteArray(target));
+        } finally {
+            target.delete();
+        }
+        try {
+            blazemeterApiV3.download(TestConstants.mockedApiUrl + "/artifacts/missing.zip", 1000, 0, null);
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("404"));
+        }
+    }
+
+    @Test
+    public void resumeInterruptedArtifact() throws IOException {
+        byte[] zip = zipOf("kpis.jtl", 300000);
+        MockedAPI.interruptedArtifact(INTERRUPTED, zip, zip.length / 3);
+        blazemeterApiV3 = withoutProxy();
+        File target = File.createTempFile("interrupted", ".zip");
+        ResumableDownload download = new ResumableDownload(blazemeterApiV3, TestConstants.mockedApiUrl + INTERRUPTED, target);
+        try {
+            Transfer t = download.download(Mockito.mock(BuildLogger.class));
+            Assert.assertArrayEquals(zip, FileUtils.readFileToByteArray(target));
+            Assert.assertEquals(1, download.resumed());
+            Assert.assertTrue(t.getRead() < 2 * zip.length);
+            Assert.assertFalse(download.getPart().exists());
+            Assert.assertFalse(download.getCheckpoint().exists());
+        } finally {
+            target.delete();
+        }
+    }
+
+    @Test
+    public void resumeInterruptedStream() throws IOException {
+        byte[] zip = zipOf("kpis.jtl", 300000);
+        MockedAPI.interruptedArtifact(INTERRUPTED_STREAM, zip, zip.length / 2);
+        blazemeterApiV3 = withoutProxy();
+        ResumingInputStream in = new ResumingInputStream(blazemeterApiV3, TestConstants.mockedApiUrl + INTERRUPTED_STREAM,
+            1000, 1);
+        byte[] read;
+        try {
+            read = IOUtils.toByteArray(in);
+        } finally {
+            in.close();
+        }
+        Assert.assertArrayEquals(zip, read);
+        Assert.assertEquals(1, in.resumes());
+    }
+
+    /**
+     * the recording proxy waits for the whole body, so disconnects only reach a client talking to the mock server
+     */
+    private static ApiImpl withoutProxy() {
+        String host = System.clearProperty(Constants.PROXY_HOST);
+        try {
+            return new ApiImpl(Credentials.basic(TestConstants.TEST_API_ID_VALID,TestConstants.TEST_API_SECRET_VALID),
+                TestConstants.mockedApiUrl);
+        } finally {
+            if (host != null) {
+                System.setProperty(Constants.PROXY_HOST, host);
+            }
+        }
+    }
+
+    private static byte[] zipOf(String entry, int size) throws IOException {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream out = new ZipOutputStream(bytes);
+        out.putNextEntry(new ZipEntry(entry));
+        out.write(data);
+        out.closeEntry();
+        out.close();
+        return bytes.toByteArray();
+    }
 }
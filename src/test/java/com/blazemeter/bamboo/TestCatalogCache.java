@@ -0,0 +1,93 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo;
+
+import com.blazemeter.bamboo.plugin.api.Api;
+import com.blazemeter.bamboo.plugin.api.CatalogCache;
+import com.blazemeter.bamboo.plugin.api.CatalogCrawler;
+import com.google.common.collect.LinkedHashMultimap;
+import java.util.HashMap;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class TestCatalogCache {
+    private Api api = Mockito.mock(Api.class);
+    private String c = "Basic credentials";
+
+    @Before
+    public void setUp() throws Exception {
+        HashMap<Integer, String> accounts = new HashMap<Integer, String>();
+        accounts.put(1, "account");
+        HashMap<Integer, String> ws = new HashMap<Integer, String>();
+        ws.put(10, "ws10");
+        LinkedHashMultimap<String, String> tests = LinkedHashMultimap.create();
+        tests.put("101.http", "a(101.http)");
+        Mockito.when(api.getServerUrl()).thenReturn(TestConstants.mockedApiUrl);
+        Mockito.when(api.accounts()).thenReturn(accounts);
+        Mockito.when(api.workspaces(1)).thenReturn(ws);
+        Mockito.when(api.workspaceTests(10)).thenReturn(tests);
+    }
+
+    @Test
+    public void hitWithinTtl() throws Exception {
+        CatalogCache cache = new CatalogCache(60000, 60000);
+        CatalogCrawler.Result r1 = cache.get(api, c);
+        CatalogCrawler.Result r2 = cache.get(api, c);
+        Assert.assertSame(r1, r2);
+        Assert.assertEquals(1, cache.misses());
+        Assert.assertEquals(1, cache.hits());
+        Mockito.verify(api, Mockito.times(1)).workspaceTests(10);
+    }
+
+    @Test
+    public void staleWhileRevalidate() throws Exception {
+        CatalogCache cache = new CatalogCache(50, 60000);
+        CatalogCrawler.Result r1 = cache.get(api, c);
+        Thread.sleep(100);
+        CatalogCrawler.Result r2 = cache.get(api, c);
+        Assert.assertSame(r1, r2);
+        Assert.assertEquals(1, cache.staleHits());
+        for (int i = 0; i < 50 && cache.refreshes() < 2; i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(2, cache.refreshes());
+        Assert.assertNotSame(r1, cache.get(api, c));
+    }
+
+    @Test
+    public void workspaceFromCachedCatalog() throws Exception {
+        CatalogCache cache = new CatalogCache(60000, 60000);
+        Assert.assertNull(cache.cached(api, c));
+        cache.get(api, c);
+        CatalogCrawler.Result cached = cache.cached(api, c);
+        Assert.assertEquals(Integer.valueOf(10), cached.workspaceOf("101"));
+        Assert.assertNull(cached.workspaceOf("102"));
+        Assert.assertEquals(0, cache.hits());
+        Assert.assertEquals(1, cache.misses());
+        Mockito.verify(api, Mockito.times(1)).workspaceTests(10);
+    }
+
+    @Test
+    public void invalidate() throws Exception {
+        CatalogCache cache = new CatalogCache(60000, 60000);
+        cache.get(api, c);
+        cache.invalidate(c, TestConstants.mockedApiUrl);
+        cache.get(api, c);
+        Assert.assertEquals(2, cache.misses());
+        Mockito.verify(api, Mockito.times(2)).workspaceTests(10);
+    }
+}
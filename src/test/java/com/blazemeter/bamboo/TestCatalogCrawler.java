@@ -0,0 +1,81 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo;
+
+import com.blazemeter.bamboo.plugin.api.Api;
+import com.blazemeter.bamboo.plugin.api.CatalogCrawler;
+import com.blazemeter.bamboo.plugin.configuration.constants.Constants;
+import com.google.common.collect.LinkedHashMultimap;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class TestCatalogCrawler {
+    private Api api = Mockito.mock(Api.class);
+
+    @Before
+    public void setUp() throws Exception {
+        HashMap<Integer, String> accounts = new HashMap<Integer, String>();
+        accounts.put(1, "account");
+        HashMap<Integer, String> ws = new HashMap<Integer, String>();
+        ws.put(10, "ws10");
+        ws.put(20, "ws20");
+        ws.put(30, "ws30");
+        Mockito.when(api.accounts()).thenReturn(accounts);
+        Mockito.when(api.workspaces(1)).thenReturn(ws);
+        LinkedHashMultimap<String, String> ws10 = LinkedHashMultimap.create();
+        ws10.put("101.http", "a(101.http)");
+        ws10.put("102.multi", "b(102.multi)");
+        LinkedHashMultimap<String, String> ws30 = LinkedHashMultimap.create();
+        ws30.put("301.jmeter", "c(301.jmeter)");
+        Mockito.when(api.workspaceTests(10)).thenReturn(ws10);
+        Mockito.when(api.workspaceTests(20)).thenThrow(new IOException("timeout"));
+        Mockito.when(api.workspaceTests(30)).thenReturn(ws30);
+    }
+
+    @Test
+    public void partialFailure() {
+        CatalogCrawler.Result result = new CatalogCrawler(api, 4).crawl();
+        Assert.assertFalse(result.isComplete());
+        Assert.assertEquals(1, result.getFailures().size());
+        Assert.assertEquals("timeout", result.getFailures().get(20));
+        Assert.assertTrue(result.getTests().containsKey("101.http"));
+        Assert.assertTrue(result.getTests().containsKey("301.jmeter"));
+        Assert.assertTrue(result.getTests().containsKey("20.workspace"));
+        Assert.assertFalse(result.getTests().containsKey(Constants.CHECK_SETTINGS));
+    }
+
+    @Test
+    public void keepsWorkspaceOrder() {
+        List<String> parallel = new ArrayList<String>(new CatalogCrawler(api, 8).crawl().getTests().keySet());
+        List<String> serial = new ArrayList<String>(new CatalogCrawler(api, 1).crawl().getTests().keySet());
+        Assert.assertEquals(serial, parallel);
+        Assert.assertEquals("10.workspace", parallel.get(0));
+        Assert.assertEquals("101.http", parallel.get(1));
+    }
+
+    @Test
+    public void allWorkspacesFailed() throws Exception {
+        Mockito.when(api.workspaceTests(Mockito.anyInt())).thenThrow(new IOException("down"));
+        CatalogCrawler.Result result = new CatalogCrawler(api, 2).crawl();
+        Assert.assertEquals(3, result.getFailures().size());
+        Assert.assertTrue(result.getTests().containsKey(Constants.CHECK_SETTINGS));
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo;
+
+import com.blazemeter.bamboo.plugin.api.CatalogDecoder;
+import com.blazemeter.bamboo.plugin.configuration.constants.Constants;
+import java.io.File;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestCatalogDecoder {
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    @Test
+    public void decodeTests() throws Exception {
+        String json = FileUtils.readFileToString(new File(TestConstants.RESOURCES + "/getTests_5.json"));
+        CatalogDecoder.Catalog catalog = CatalogDecoder.decode(ResponseBody.create(JSON, json), false);
+        Assert.assertTrue(catalog.hasResult());
+        Assert.assertEquals(-1, catalog.getErrorCode());
+        Assert.assertEquals(5, catalog.getEntries().size());
+        Assert.assertEquals(json.getBytes("UTF-8").length, catalog.getBytes());
+        CatalogDecoder.Entry first = catalog.getEntries().get(0);
+        Assert.assertEquals("5039530", first.getId());
+        Assert.assertEquals("5039530." + Constants.UNKNOWN_TYPE, first.key());
+        Assert.assertEquals("tut.gy - multi(5039530." + Constants.UNKNOWN_TYPE + ")", first.label());
+    }
+
+    @Test
+    public void decodeTypes() throws Exception {
+        String tests = "{\"api_version\":3,\"error\":null,\"result\":[{\"id\":1,\"name\":\"a&b\","
+            + "\"configuration\":{\"plugins\":{\"x\":[1,2]},\"type\":\"http\"},\"overrideExecutions\":[]}]}";
+        CatalogDecoder.Catalog catalog = CatalogDecoder.decode(ResponseBody.create(JSON, tests), false);
+        // plugins and executions are skipped, only "1", "a&amp;b" and "http" are kept
+        Assert.assertEquals(1 + 7 + 4, catalog.getRetained());
+        CatalogDecoder.Entry t = catalog.getEntries().get(0);
+        Assert.assertEquals("1.http", t.key());
+        Assert.assertEquals("a&amp;b(1.http)", t.label());
+
+        String collections = "{\"result\":[{\"id\":\"2\",\"name\":\"c\",\"collectionType\":\"multi\","
+            + "\"configuration\":{\"type\":\"ignored\"}}]}";
+        CatalogDecoder.Entry c = CatalogDecoder.decode(ResponseBody.create(JSON, collections), true).getEntries().get(0);
+        Assert.assertEquals("2.multi", c.key());
+    }
+
+    @Test
+    public void countsDroppedEntries() throws Exception {
+        String json = "{\"result\":[{\"id\":1,\"name\":\"a\"},{\"name\":\"no id\"},42,{\"id\":2,\"name\":\"b\"}]}";
+        CatalogDecoder.Catalog catalog = CatalogDecoder.decode(ResponseBody.create(JSON, json), false);
+        Assert.assertEquals(2, catalog.getEntries().size());
+        Assert.assertEquals(4, catalog.getReturned());
+    }
+
+    @Test
+    public void decodeError() throws Exception {
+        String json = "{\"api_version\":3,\"error\":{\"code\":401,\"message\":\"Unauthorized\"},\"result\":null}";
+        CatalogDecoder.Catalog catalog = CatalogDecoder.decode(ResponseBody.create(JSON, json), false);
+        Assert.assertFalse(catalog.hasResult());
+        Assert.assertEquals(401, catalog.getErrorCode());
+        Assert.assertTrue(catalog.getEntries().isEmpty());
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo;
+
+import com.blazemeter.bamboo.plugin.api.Api;
+import com.blazemeter.bamboo.plugin.api.ConditionalCache;
+import com.blazemeter.bamboo.plugin.api.UrlManager;
+import com.blazemeter.bamboo.plugin.api.UrlManagerV3Impl;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import okhttp3.Credentials;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.apache.commons.io.FileUtils;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestConditionalCache {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private UrlManager urlManager = new UrlManagerV3Impl(TestConstants.mockedApiUrl);
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        MockedAPI.startAPI();
+        MockedAPI.workspaces();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        MockedAPI.stopAPI();
+    }
+
+    private Response get(OkHttpClient client, String credentials) throws IOException {
+        Request r = new Request.Builder().url(urlManager.workspaces(Api.APP_KEY, 9322, 0, 500)).get()
+            .addHeader(Api.ACCEPT, Api.APP_JSON)
+            .addHeader(Api.AUTHORIZATION, credentials).build();
+        return client.newCall(r).execute();
+    }
+
+    @Test
+    public void revalidatesAndServesStoredBody() throws IOException {
+        ConditionalCache cache = new ConditionalCache(folder.getRoot(), 1024 * 1024);
+        OkHttpClient client = new OkHttpClient.Builder().addInterceptor(cache).build();
+        String c = Credentials.basic(TestConstants.TEST_API_ID_VALID, TestConstants.TEST_API_SECRET_VALID);
+        String expected = FileUtils.readFileToString(new File(TestConstants.RESOURCES + "/workspaces.json"));
+
+        Response first = get(client, c);
+        Assert.assertEquals(200, first.code());
+        Assert.assertEquals(expected, first.body().string());
+        Assert.assertEquals(0, cache.hits());
+        Assert.assertEquals(1, cache.entries());
+
+        Response second = get(client, c);
+        Assert.assertEquals(200, second.code());
+        Assert.assertEquals(expected, second.body().string());
+        Assert.assertEquals(1, cache.hits());
+        Assert.assertEquals(expected.getBytes("UTF-8").length, cache.bytesSaved());
+
+        // index is restored from disk
+        ConditionalCache reopened = new ConditionalCache(folder.getRoot(), 1024 * 1024);
+        Response third = get(new OkHttpClient.Builder().addInterceptor(reopened).build(), c);
+        Assert.assertEquals(expected, third.body().string());
+        Assert.assertEquals(1, reopened.hits());
+    }
+
+    @Test
+    public void evictsWhenOverSize() throws IOException {
+        ConditionalCache cache = new ConditionalCache(folder.getRoot(), 10);
+        OkHttpClient client = new OkHttpClient.Builder().addInterceptor(cache).build();
+        String c = Credentials.basic(TestConstants.TEST_API_ID_VALID, TestConstants.TEST_API_SECRET_VALID);
+        Assert.assertEquals(200, get(client, c).code());
+        Assert.assertEquals(0, cache.entries());
+        Assert.assertEquals(1, cache.evictions());
+        Assert.assertEquals(200, get(client, c).code());
+        Assert.assertEquals(0, cache.hits());
+    }
+
+    @Test
+    public void directoryIsOwnerOnly() throws IOException {
+        Assume.assumeTrue(Files.getFileStore(folder.getRoot().toPath()).supportsFileAttributeView("posix"));
+        File created = new File(folder.getRoot(), "a/cache");
+        Assert.assertTrue(ConditionalCache.privateDirectory(created));
+        Assert.assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(created.toPath())));
+
+        File shared = folder.newFolder("shared");
+        Files.setPosixFilePermissions(shared.toPath(), PosixFilePermissions.fromString("rwxr-xr-x"));
+        ConditionalCache cache = new ConditionalCache(shared, 1024 * 1024);
+        OkHttpClient client = new OkHttpClient.Builder().addInterceptor(cache).build();
+        String c = Credentials.basic(TestConstants.TEST_API_ID_VALID, TestConstants.TEST_API_SECRET_VALID);
+        Assert.assertEquals(200, get(client, c).code());
+        Assert.assertEquals(1, cache.entries());
+        Assert.assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(shared.toPath())));
+    }
+}
@@ -34,6 +34,9 @@ public interface TestConstants {
     String proxyPort="2345";
     String mockedApiUrl="http://127.0.0.1:"+mockedApiPort;
 
+    String TEST_ID ="5039530";
+    String TEST_ID_FORBIDDEN ="5039531";
+    String WORKSPACES_ETAG ="\"ws-9322-v1\"";
     String TEST_MASTER_ID ="testMasterId";
     String TEST_MASTER_NOT_FOUND ="testMaster-not-found";
     String TEST_MASTER_0 ="testMaster-0";
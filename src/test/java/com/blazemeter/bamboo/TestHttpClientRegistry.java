@@ -0,0 +1,70 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo;
+
+import com.blazemeter.bamboo.plugin.api.HttpClientRegistry;
+import java.net.Proxy;
+import okhttp3.Authenticator;
+import okhttp3.OkHttpClient;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestHttpClientRegistry {
+    private HttpClientRegistry registry = HttpClientRegistry.getInstance();
+
+    @Before
+    public void setUp() {
+        registry.clear();
+    }
+
+    @Test
+    public void sharesPoolForSameSettings() {
+        long hits = registry.hits();
+        OkHttpClient c1 = registry.newBuilder(TestConstants.mockedApiUrl, Proxy.NO_PROXY, Authenticator.NONE, null, null).build();
+        OkHttpClient c2 = registry.newBuilder(TestConstants.mockedApiUrl, Proxy.NO_PROXY, Authenticator.NONE, null, null).build();
+        Assert.assertNotSame(c1, c2);
+        Assert.assertSame(c1.connectionPool(), c2.connectionPool());
+        Assert.assertSame(c1.dispatcher(), c2.dispatcher());
+        Assert.assertEquals(hits + 1, registry.hits());
+        Assert.assertEquals(1, registry.clients());
+    }
+
+    @Test
+    public void separatesPoolForOtherServer() {
+        OkHttpClient c1 = registry.newBuilder(TestConstants.mockedApiUrl, Proxy.NO_PROXY, Authenticator.NONE, null, null).build();
+        OkHttpClient c2 = registry.newBuilder("https://a.blazemeter.com", Proxy.NO_PROXY, Authenticator.NONE, null, null).build();
+        Assert.assertNotSame(c1.connectionPool(), c2.connectionPool());
+        Assert.assertEquals(2, registry.clients());
+    }
+
+    @Test
+    public void perBuildInterceptorIsNotShared() {
+        OkHttpClient base = registry.newBuilder(TestConstants.mockedApiUrl, Proxy.NO_PROXY, Authenticator.NONE, null, null).build();
+        OkHttpClient logged = registry.newBuilder(TestConstants.mockedApiUrl, Proxy.NO_PROXY, Authenticator.NONE, null, null)
+            .addInterceptor(chain -> chain.proceed(chain.request())).build();
+        Assert.assertEquals(base.interceptors().size() + 1, logged.interceptors().size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        long evictions = registry.evictions();
+        for (int i = 0; i < 20; i++) {
+            registry.newBuilder("http://server-" + i, Proxy.NO_PROXY, Authenticator.NONE, null, null);
+        }
+        Assert.assertEquals(16, registry.clients());
+        Assert.assertEquals(evictions + 4, registry.evictions());
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo;
+
+import com.blazemeter.bamboo.plugin.api.HttpLogger;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestHttpLogger {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writesAllOnClose() throws IOException {
+        File f = folder.newFile("http-log");
+        HttpLogger logger = new HttpLogger(f.getAbsolutePath(), 1000, 20, true);
+        for (int i = 0; i < 500; i++) {
+            logger.log("message " + i);
+        }
+        logger.log("this message is longer than twenty chars");
+        logger.close();
+        Assert.assertEquals(501, logger.written());
+        Assert.assertEquals(0, logger.dropped());
+        Assert.assertEquals(1, logger.truncated());
+        List<String> lines = Files.readAllLines(f.toPath(), Charset.forName("UTF-8"));
+        Assert.assertEquals(501, lines.size());
+        Assert.assertTrue(lines.get(0).endsWith(" message 0"));
+        Assert.assertTrue(lines.get(500).endsWith(" this message is long... [20 chars truncated]"));
+    }
+
+    @Test
+    public void dropsWhenFull() throws IOException {
+        File f = folder.newFile("http-log");
+        HttpLogger logger = new HttpLogger(f.getAbsolutePath(), 1, 1000, false);
+        for (int i = 0; i < 10000; i++) {
+            logger.log("message " + i);
+        }
+        logger.close();
+        Assert.assertEquals(10000, logger.written() + logger.dropped());
+        Assert.assertTrue(logger.dropped() > 0);
+        logger.log("after close");
+        Assert.assertEquals(10001, logger.written() + logger.dropped());
+        Assert.assertEquals(logger.written(), Files.readAllLines(f.toPath(), Charset.forName("UTF-8")).size());
+    }
+}
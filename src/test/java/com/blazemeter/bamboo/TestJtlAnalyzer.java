@@ -0,0 +1,288 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo;
+
+import com.atlassian.bamboo.build.logger.BuildLogger;
+import com.blazemeter.bamboo.plugin.testresult.JtlAnalyzer;
+import com.blazemeter.bamboo.plugin.testresult.JtlStats;
+import com.blazemeter.bamboo.plugin.testresult.TestResult;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.apache.commons.io.FileUtils;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+public class TestJtlAnalyzer {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String HEADER = "timeStamp,elapsed,label,responseCode,responseMessage,threadName,dataType,"
+        + "success,failureMessage,bytes,sentBytes,grpThreads,allThreads,Latency,IdleTime,Connect\n";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void headerAndQuotedFields() throws IOException {
+        JtlAnalyzer a = read(HEADER
+            + "1000,100,home,200,OK,Thread 1-1,text,true,,1000,10,1,1,90,0,5\n"
+            + "1100,300,\"login, \"\"admin\"\"\",500,\"Internal, error\",Thread 1-1,text,false,\"bad\nrequest\",2000,10,1,1,90,0,5\n"
+            + "1200,200,home,200,OK,Thread 1-1,text,true,,1000,10,1,1,90,0,5\n", JtlAnalyzer.BUFFER_SIZE);
+        Assert.assertEquals(3, a.samples());
+        Assert.assertEquals(0, a.skipped());
+        Assert.assertEquals(2, a.labels().size());
+        JtlStats home = a.labels().get(0);
+        Assert.assertEquals("home", home.getLabel());
+        Assert.assertEquals(2, home.count());
+        Assert.assertEquals(150.0, home.mean(), 0.001);
+        Assert.assertEquals(100, home.min());
+        Assert.assertEquals(200, home.max());
+        JtlStats login = a.labels().get(1);
+        Assert.assertEquals("login, \"admin\"", login.getLabel());
+        Assert.assertEquals(1, login.errors());
+        JtlStats total = a.total();
+        Assert.assertEquals(100.0 / 3, total.errorPercentage(), 0.001);
+        Assert.assertEquals(4000, total.bytes());
+        Assert.assertEquals(200, total.percentile(50));
+        // 3 samples between 1000 and 1400
+        Assert.assertEquals(7.5, a.throughput(), 0.001);
+    }
+
+    @Test
+    public void defaultColumnsWithoutHeader() throws IOException {
+        JtlAnalyzer a = read("1000,10,a,200,OK,t,text,true,,100\r\n"
+            + "\r\n"
+            + "not,a,sample\r\n"
+            + "1010,30,a,200,OK,t,text,FALSE,,100", 16);
+        Assert.assertEquals(2, a.samples());
+        Assert.assertEquals(1, a.skipped());
+        Assert.assertEquals(1, a.total().errors());
+        Assert.assertEquals(200, a.total().bytes());
+        Assert.assertEquals(30, a.total().max());
+    }
+
+    @Test
+    public void percentilesWithinOnePercent() throws IOException {
+        Random r = new Random(7);
+        long[] values = new long[200000];
+        StringBuilder jtl = new StringBuilder(HEADER);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(3 + 2 * r.nextGaussian());
+            jtl.append(1000 + i).append(',').append(values[i]).append(",label ").append(i % 7)
+                .append(",200,OK,t,text,").append(i % 50 != 0).append(",,512,1,1,1,0,0,0\n");
+        }
+        // small buffer: lines cross buffer boundaries all the time
+        JtlAnalyzer a = read(jtl.toString(), 100);
+        Arrays.sort(values);
+        JtlStats total = a.total();
+        Assert.assertEquals(values.length, total.count());
+        Assert.assertEquals(7, a.labels().size());
+        Assert.assertEquals(2.0, total.errorPercentage(), 0.001);
+        Assert.assertEquals(values[0], total.min());
+        Assert.assertEquals(values[values.length - 1], total.max());
+        for (double p : new double[]{50, 90, 95, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(values.length * p / 100) - 1];
+            long estimate = total.percentile(p);
+            Assert.assertTrue(p + "%: " + estimate + " vs " + exact, estimate >= exact && estimate <= exact * 1.01 + 1);
+        }
+    }
+
+    @Test
+    public void labelsAreBounded() throws IOException {
+        StringBuilder jtl = new StringBuilder(HEADER);
+        for (int i = 0; i < JtlAnalyzer.MAX_LABELS + 5; i++) {
+            jtl.append("1000,1,/item/").append(i).append(",200,OK,t,text,true,,1\n");
+        }
+        JtlAnalyzer a = read(jtl.toString(), JtlAnalyzer.BUFFER_SIZE);
+        Assert.assertEquals(JtlAnalyzer.MAX_LABELS + 1, a.labels().size());
+        JtlStats other = a.labels().get(JtlAnalyzer.MAX_LABELS);
+        Assert.assertEquals(JtlAnalyzer.OTHER_LABELS, other.getLabel());
+        Assert.assertEquals(5, other.count());
+        Assert.assertEquals(JtlAnalyzer.MAX_LABELS + 5, a.total().count());
+    }
+
+    @Test
+    public void analyzeSessionDirectories() throws IOException {
+        File s1 = tmp.newFolder("s1-bm-artefacts");
+        File s2 = tmp.newFolder("s2-bm-artefacts");
+        FileUtils.writeStringToFile(new File(s1, "kpi.jtl"), HEADER + "1000,100,a,200,OK,t,text,true,,10\n", UTF_8);
+        FileUtils.writeStringToFile(new File(s2, "kpi.jtl"), HEADER + "1000,300,a,200,OK,t,text,true,,10\n", UTF_8);
+        FileUtils.writeStringToFile(new File(s2, "error.jtl"), HEADER + "1000,900,a,500,ERR,t,text,false,,10\n", UTF_8);
+        BuildLogger log = Mockito.mock(BuildLogger.class);
+        JtlAnalyzer a = JtlAnalyzer.analyze(Arrays.asList(s1, s2, new File(tmp.getRoot(), "missing")), log);
+        Assert.assertEquals(2, a.files());
+        Assert.assertEquals(2, a.samples());
+        Assert.assertEquals(300, a.total().max());
+        Mockito.verify(log).addBuildLogEntry(Matchers.startsWith("Analyzed 2 jtl files"));
+        Assert.assertNull(JtlAnalyzer.analyze(Arrays.asList(tmp.newFolder("empty")), log));
+    }
+
+    @Test
+    public void testResultPlaceholdersFilled() throws IOException {
+        JSONObject summary = new JSONObject("{\"avg\":150,\"min\":100,\"max\":200,\"tp90\":200,\"failed\":0,"
+            + "\"hits\":2,\"bytes\":2048}");
+        TestResult result = new TestResult(summary);
+        Assert.assertEquals(-1, result.getSamples(), 0);
+        Assert.assertEquals(-1, result.getMedian(), 0);
+        Assert.assertEquals(-1, result.getN());
+
+        JtlAnalyzer a = read(HEADER + "1000,100,a,200,OK,t,text,true,,1024\n1100,200,a,200,OK,t,text,true,,1024\n",
+            JtlAnalyzer.BUFFER_SIZE);
+        result.fromJtl(a);
+        Assert.assertEquals(2, result.getSamples(), 0);
+        Assert.assertEquals(2, result.getN());
+        Assert.assertEquals(100, result.getMedian(), 0);
+        Assert.assertEquals(200, result.getPercentile99(), 0);
+        Assert.assertEquals(200, result.getPercentile999(), 0);
+        Assert.assertEquals(2 / 0.3, result.getThroughput(), 0.001);
+        // server summary is kept
+        Assert.assertEquals(150, result.getAverage(), 0);
+
+        TestResult fromJtl = new TestResult(a);
+        Assert.assertEquals(2, fromJtl.getHits(), 0);
+        Assert.assertEquals(2, fromJtl.getKbs(), 0);
+        Assert.assertEquals(0, fromJtl.getErrorPercentage(), 0);
+        Assert.assertTrue(fromJtl.toString().contains("samples=2"));
+    }
+
+    @Test
+    public void parallelMatchesSequential() throws IOException {
+        File jtl = tmp.newFile("kpi.jtl");
+        write(jtl, 20000, 11);
+        JtlAnalyzer sequential = new JtlAnalyzer();
+        sequential.read(jtl);
+        ForkJoinPool pool = JtlAnalyzer.pool(4);
+        try {
+            // chunks much shorter than lines with quoted line breaks: many cuts fall inside quotes
+            for (long chunkSize : new long[]{97, 4096, jtl.length()}) {
+                JtlAnalyzer parallel = new JtlAnalyzer();
+                parallel.read(jtl, pool, chunkSize);
+                Assert.assertEquals(1, parallel.files());
+                Assert.assertEquals(sequential.samples(), parallel.samples());
+                Assert.assertEquals(sequential.skipped(), parallel.skipped());
+                Assert.assertEquals(sequential.throughput(), parallel.throughput(), 0.0001);
+                Assert.assertEquals(sequential.labels().size(), parallel.labels().size());
+                for (int i = 0; i < sequential.labels().size(); i++) {
+                    Assert.assertEquals(sequential.labels().get(i).toString(), parallel.labels().get(i).toString());
+                }
+                Assert.assertEquals(sequential.total().toString(), parallel.total().toString());
+            }
+            File noHeader = tmp.newFile("no-header-kpi.jtl");
+            FileUtils.writeStringToFile(noHeader, "1000,10,a,200,OK,t,text,true,,100\n1010,30,\"a\nb\",200,OK,t,text,false,,100\n", UTF_8);
+            JtlAnalyzer parallel = new JtlAnalyzer();
+            parallel.read(noHeader, pool, 7);
+            Assert.assertEquals(2, parallel.samples());
+            Assert.assertEquals("a\nb", parallel.labels().get(1).getLabel());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void parallelLabelLimitMatchesSequential() throws IOException {
+        File jtl = tmp.newFile("kpi.jtl");
+        StringBuilder lines = new StringBuilder(HEADER);
+        lines.append("1000,5,first,200,OK,t,text,true,,1\n");
+        for (int i = 0; i < JtlAnalyzer.MAX_LABELS; i++) {
+            lines.append("1000,1,/a/").append(i).append(",200,OK,t,text,true,,1\n");
+        }
+        for (int i = 0; i < JtlAnalyzer.MAX_LABELS * 3 / 2; i++) {
+            lines.append("1000,1,/b/").append(i).append(",200,OK,t,text,true,,1\n");
+        }
+        // both have rows in a sequential read, but come after more than MAX_LABELS labels of the second chunk
+        lines.append("1000,7,first,200,OK,t,text,true,,1\n1000,9,/a/5,200,OK,t,text,true,,1\n");
+        FileUtils.writeStringToFile(jtl, lines.toString(), UTF_8);
+        JtlAnalyzer sequential = new JtlAnalyzer();
+        sequential.read(jtl);
+        ForkJoinPool pool = JtlAnalyzer.pool(2);
+        try {
+            JtlAnalyzer parallel = new JtlAnalyzer();
+            parallel.read(jtl, pool, jtl.length() / 2);
+            Assert.assertEquals(sequential.labels().size(), parallel.labels().size());
+            for (int i = 0; i < sequential.labels().size(); i++) {
+                Assert.assertEquals(sequential.labels().get(i).toString(), parallel.labels().get(i).toString());
+            }
+            Assert.assertEquals(2, parallel.labels().get(0).count());
+            Assert.assertEquals(sequential.total().toString(), parallel.total().toString());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Parsing throughput, run with -Dblazemeter.benchmark=true
+     */
+    @Test
+    public void benchmark() throws IOException {
+        Assume.assumeTrue(Boolean.getBoolean("blazemeter.benchmark"));
+        File jtl = tmp.newFile("kpi.jtl");
+        write(jtl, 4000000, 3);
+        double mb = jtl.length() / 1048576.0;
+        int cores = Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = JtlAnalyzer.pool(cores);
+        try {
+            for (int round = 0; round < 3; round++) {
+                long start = System.nanoTime();
+                new JtlAnalyzer().read(jtl);
+                double sequential = mb / ((System.nanoTime() - start) / 1e9);
+                start = System.nanoTime();
+                new JtlAnalyzer().read(jtl, pool, JtlAnalyzer.CHUNK_SIZE / 8);
+                double parallel = mb / ((System.nanoTime() - start) / 1e9);
+                System.out.println(String.format("%.0f MB: sequential %.0f MB/s, parallel on %d cores %.0f MB/s (%.0f MB/s per core)",
+                    mb, sequential, cores, parallel, parallel / cores));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void write(File jtl, int lines, long seed) throws IOException {
+        Random r = new Random(seed);
+        Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(jtl), UTF_8));
+        try {
+            w.write(HEADER);
+            for (int i = 0; i < lines; i++) {
+                boolean failed = r.nextInt(20) == 0;
+                w.write((1500000000000L + i * 10) + "," + (long) Math.exp(4 + r.nextGaussian()) + ",");
+                w.write(i % 13 == 0 ? "\"login, \"\"step\"\" " + (i % 3) + "\"" : "page " + (i % 11));
+                w.write(failed ? ",500,\"Internal, error\",Thread 1-1,text,false,\"bad\nrequest, \"\"x\"\"\"," :
+                    ",200,OK,Thread 1-1,text,true,,");
+                w.write(r.nextInt(10000) + ",120,10,10,50,0,3\n");
+            }
+        } finally {
+            w.close();
+        }
+    }
+
+    private static JtlAnalyzer read(String jtl, int bufferSize) throws IOException {
+        JtlAnalyzer a = new JtlAnalyzer(bufferSize);
+        a.read(new ByteArrayInputStream(jtl.getBytes(UTF_8)));
+        return a;
+    }
+}
@@ -0,0 +1,364 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo;
+
+import com.atlassian.bamboo.build.logger.BuildLogger;
+import com.blazemeter.bamboo.plugin.ServiceManager;
+import com.blazemeter.bamboo.plugin.api.Api;
+import com.blazemeter.bamboo.plugin.api.model.JtlDataUrls;
+import com.blazemeter.bamboo.plugin.api.model.SessionList;
+import com.blazemeter.bamboo.plugin.configuration.constants.Constants;
+import com.blazemeter.bamboo.plugin.download.ArtifactCache;
+import com.blazemeter.bamboo.plugin.download.ArtifactWriter;
+import com.blazemeter.bamboo.plugin.download.ResumableDownload;
+import com.blazemeter.bamboo.plugin.download.Transfer;
+import com.blazemeter.bamboo.plugin.download.ZipExtractor;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+public class TestJtlDownload {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String ETAG = "\"v1\"";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    BuildLogger log = Mockito.mock(BuildLogger.class);
+
+    @Test
+    public void allSessions() throws IOException {
+        Api api = Mockito.mock(Api.class);
+        Mockito.when(api.sessions("m")).thenReturn(sessions("s1", "s2", "s3"));
+        for (String s : new String[]{"s1", "s2", "s3"}) {
+            serve(api, s, zip(s, "kpis of " + s));
+        }
+        File jtlDir = tmp.newFolder("jtl");
+        List<File> dirs = ServiceManager.downloadJtlReports(api, "m", jtlDir, cache(), log);
+        Assert.assertEquals(3, dirs.size());
+        Assert.assertEquals(new File(jtlDir, "s1-bm-artefacts").getCanonicalFile(), dirs.get(0));
+        for (String s : new String[]{"s1", "s2", "s3"}) {
+            File kpis = new File(jtlDir, s + "-bm-artefacts/kpis.jtl");
+            Assert.assertEquals("kpis of " + s, FileUtils.readFileToString(kpis, UTF_8));
+            Assert.assertFalse(new File(jtlDir, s + "-bm-artefacts.zip").exists());
+        }
+        Mockito.verify(log).addBuildLogEntry(Matchers.startsWith("Downloaded jtl reports of 3/3 sessions"));
+        // extracted while downloading, no zip file
+        Mockito.verify(log, Mockito.never()).addBuildLogEntry(Matchers.startsWith("Saving ZIP"));
+    }
+
+    @Test
+    public void zipFileMode() throws IOException {
+        Api api = Mockito.mock(Api.class);
+        serve(api, "s1", zip("s1", "kpis"));
+        File jtlDir = tmp.newFolder("jtl");
+        System.setProperty(Constants.JTL_UNZIP, ServiceManager.JTL_UNZIP_FILE);
+        try {
+            Assert.assertTrue(ServiceManager.downloadJtlReport(api, "s1", jtlDir, cache(), log) > 0);
+        } finally {
+            System.clearProperty(Constants.JTL_UNZIP);
+        }
+        Assert.assertEquals("kpis", FileUtils.readFileToString(new File(jtlDir, "s1-bm-artefacts/kpis.jtl"), UTF_8));
+        Assert.assertFalse(new File(jtlDir, "s1-bm-artefacts.zip").exists());
+        Mockito.verify(log).addBuildLogEntry(Matchers.startsWith("Saving ZIP for sessionId = s1"));
+    }
+
+    @Test
+    public void cachedSessionsAreNotDownloadedAgain() throws IOException {
+        Api api = Mockito.mock(Api.class);
+        Mockito.when(api.sessions("m")).thenReturn(sessions("s1", "s2"));
+        serve(api, "s1", zip("s1", "kpis of s1"));
+        serve(api, "s2", zip("s2", "kpis of s2"));
+        ArtifactCache cache = cache();
+        ServiceManager.downloadJtlReports(api, "m", tmp.newFolder("first"), cache, log);
+        Mockito.verify(log).addBuildLogEntry(Matchers.startsWith("Artifact cache: 0/2 hits (0%)"));
+
+        File jtlDir = tmp.newFolder("second");
+        ServiceManager.downloadJtlReports(api, "m", jtlDir, cache, log);
+        for (String s : new String[]{"s1", "s2"}) {
+            File kpis = new File(jtlDir, s + "-bm-artefacts/kpis.jtl");
+            Assert.assertEquals("kpis of " + s, FileUtils.readFileToString(kpis, UTF_8));
+            Mockito.verify(api).download(Matchers.eq("http://artifacts.local/" + s + ".zip"), Matchers.anyInt(),
+                Matchers.anyLong(), Matchers.anyString());
+        }
+        Mockito.verify(log).addBuildLogEntry(Matchers.startsWith("Artifact cache: 2/2 hits (100%)"));
+        Assert.assertEquals(2, cache.hits());
+        Assert.assertEquals(2, cache.entries());
+    }
+
+    @Test
+    public void cacheEvictsLeastRecentlyUsed() throws IOException {
+        File a = zip("a", random(5000));
+        File b = zip("b", random(5001));
+        File c = zip("c", random(5002));
+        ArtifactCache cache = new ArtifactCache(tmp.newFolder("cache"), a.length() + b.length() + c.length() - 1);
+        cache.put("a", "http://artifacts.local/a.zip?signature=1", a);
+        cache.put("b", "http://artifacts.local/b.zip", b);
+        // expiring signature in the query does not change the key
+        File out = new File(tmp.getRoot(), "out/a.zip");
+        Assert.assertEquals(a.length(), cache.get("a", "http://artifacts.local/a.zip?signature=2", out));
+        Assert.assertArrayEquals(FileUtils.readFileToByteArray(a), FileUtils.readFileToByteArray(out));
+        cache.put("c", "http://artifacts.local/c.zip", c);
+
+        Assert.assertEquals(-1, cache.get("b", "http://artifacts.local/b.zip", new File(tmp.getRoot(), "out/b.zip")));
+        Assert.assertEquals(c.length(), cache.get("c", "http://artifacts.local/c.zip", new File(tmp.getRoot(), "out/c.zip")));
+        Assert.assertEquals(-1, cache.get("a", "http://artifacts.local/other.zip", new File(tmp.getRoot(), "out/x.zip")));
+        Assert.assertEquals(1, cache.evictions());
+        Assert.assertEquals(a.length() + c.length(), cache.bytesSaved());
+        Assert.assertEquals(a.length() + c.length(), cache.size());
+
+        // index of a new instance keeps what is on disk
+        ArtifactCache reopened = new ArtifactCache(new File(tmp.getRoot(), "cache"), cache.size());
+        Assert.assertTrue(reopened.enabled());
+        Assert.assertEquals(2, reopened.entries());
+    }
+
+    @Test
+    public void cacheRejectsInvalidZip() throws IOException {
+        File bad = tmp.newFile("bad.zip");
+        FileUtils.writeStringToFile(bad, "not a zip", UTF_8);
+        ArtifactCache cache = cache();
+        cache.put("s1", "http://artifacts.local/bad.zip", bad);
+        Assert.assertEquals(0, cache.entries());
+        Assert.assertEquals(-1, cache.get("s1", "http://artifacts.local/bad.zip", new File(tmp.getRoot(), "out.zip")));
+    }
+
+    @Test
+    public void writerPreallocatesAndWrites() throws IOException {
+        byte[] data = new byte[3 * ArtifactWriter.BUFFER_SIZE + 17];
+        new Random(1).nextBytes(data);
+        File target = new File(tmp.getRoot(), "out/artifact.zip");
+        Transfer t = ArtifactWriter.write(ResponseBody.create(null, data), target);
+        Assert.assertEquals(data.length, t.getWritten());
+        Assert.assertArrayEquals(data, FileUtils.readFileToByteArray(target));
+        Assert.assertTrue(t.toString().contains(data.length + " bytes written"));
+    }
+
+    @Test
+    public void writerRejectsShortBody() throws IOException {
+        Buffer body = new Buffer().write(new byte[10]);
+        try {
+            ArtifactWriter.write(ResponseBody.create(null, 20, body), tmp.newFile("short.zip"));
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("ended after 10 of 20 bytes"));
+        }
+    }
+
+    @Test
+    public void resumeFromCheckpoint() throws IOException {
+        byte[] zip = FileUtils.readFileToByteArray(zip("s1", random(200000)));
+        int cut = zip.length / 2;
+        String url = "http://artifacts.local/s1.zip";
+        Api api = Mockito.mock(Api.class);
+        // connection breaks after cut bytes of the announced length
+        Mockito.when(api.download(url, 10000, 0, null)).thenReturn(response(url, 200,
+            ResponseBody.create(null, zip.length, new Buffer().write(zip, 0, cut)), null));
+        File target = new File(tmp.getRoot(), "jtl/s1-bm-artefacts.zip");
+        ResumableDownload first = new ResumableDownload(api, url, target, 1);
+        try {
+            first.download(log);
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals(cut, first.getPart().length());
+            Assert.assertTrue(first.getCheckpoint().exists());
+        }
+
+        Mockito.when(api.download(url, 10000, cut, ETAG)).thenReturn(response(url, 206,
+            ResponseBody.create(null, Arrays.copyOfRange(zip, cut, zip.length)),
+            "bytes " + cut + "-" + (zip.length - 1) + "/" + zip.length));
+        ResumableDownload next = new ResumableDownload(api, url, target);
+        Transfer t = next.download(log);
+        Assert.assertArrayEquals(zip, FileUtils.readFileToByteArray(target));
+        Assert.assertEquals(zip.length - cut, t.getRead());
+        Assert.assertEquals(1, next.resumed());
+        Assert.assertFalse(next.getPart().exists());
+        Assert.assertFalse(next.getCheckpoint().exists());
+        Mockito.verify(log).addBuildLogEntry("Resuming download of s1-bm-artefacts.zip from byte " + cut + " attempt # 1");
+    }
+
+    @Test
+    public void invalidZipDiscarded() throws IOException {
+        byte[] data = new byte[1000];
+        new Random(2).nextBytes(data);
+        String url = "http://artifacts.local/bad.zip";
+        Api api = Mockito.mock(Api.class);
+        Mockito.when(api.download(Matchers.eq(url), Matchers.anyInt(), Matchers.anyLong(), Matchers.anyString()))
+            .thenAnswer(i -> response(url, data));
+        File target = new File(tmp.getRoot(), "bad.zip");
+        ResumableDownload download = new ResumableDownload(api, url, target, 2);
+        try {
+            download.download(log);
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("is not a valid zip"));
+        }
+        Assert.assertFalse(target.exists());
+        Assert.assertFalse(download.getPart().exists());
+        Assert.assertFalse(download.getCheckpoint().exists());
+        // nothing kept to resume from, second attempt starts over
+        Mockito.verify(api).download(url, 30000, 0, null);
+    }
+
+    @Test
+    public void corruptedEntry() throws IOException {
+        File zip = tmp.newFile("stored.zip");
+        byte[] data = "abcdefgh".getBytes(UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ZipEntry e = new ZipEntry("kpis.jtl");
+        e.setMethod(ZipEntry.STORED);
+        e.setSize(data.length);
+        e.setCrc(crc.getValue());
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+        try {
+            out.putNextEntry(e);
+            out.write(data);
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+        byte[] bytes = FileUtils.readFileToByteArray(zip);
+        String content = new String(bytes, Charset.forName("ISO-8859-1"));
+        bytes[content.indexOf("abcdefgh") + 3] = 'X';
+        FileUtils.writeByteArrayToFile(zip, bytes);
+
+        try {
+            ZipExtractor.extract(zip, tmp.newFolder("file"), log);
+            Assert.fail();
+        } catch (ZipException ex) {
+            Assert.assertTrue(ex.getMessage().startsWith("Checksum mismatch of kpis.jtl"));
+        }
+        try {
+            ZipExtractor.extract(new FileInputStream(zip), tmp.newFolder("stream"), log);
+            Assert.fail();
+        } catch (ZipException ex) {
+            Assert.assertTrue(ex.getMessage().contains("CRC"));
+        }
+    }
+
+    @Test
+    public void entryOutsideTarget() throws IOException {
+        File zip = tmp.newFile("slip.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+        try {
+            out.putNextEntry(new ZipEntry("../outside.jtl"));
+            out.write(1);
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+        File dest = tmp.newFolder("dest");
+        try {
+            ZipExtractor.extract(new FileInputStream(zip), dest, log);
+            Assert.fail();
+        } catch (ZipException ex) {
+            Assert.assertFalse(new File(dest.getParentFile(), "outside.jtl").exists());
+        }
+    }
+
+    @Test
+    public void failedSessionDoesNotStopOthers() throws IOException {
+        Api api = Mockito.mock(Api.class);
+        Mockito.when(api.sessions("m")).thenReturn(sessions("bad", "good"));
+        Mockito.when(api.jtlDataUrls("bad")).thenThrow(new IOException("no data"));
+        serve(api, "good", zip("good", "ok"));
+        File jtlDir = tmp.newFolder("jtl");
+        ServiceManager.downloadJtlReports(api, "m", jtlDir, cache(), log);
+        Assert.assertTrue(new File(jtlDir, "good-bm-artefacts/kpis.jtl").exists());
+        Mockito.verify(log).addBuildLogEntry(Matchers.startsWith("Jtl report of sessionId = bad failed"));
+        Mockito.verify(log).addBuildLogEntry(Matchers.startsWith("Downloaded jtl reports of 1/2 sessions"));
+    }
+
+    private File zip(String name, String kpis) throws IOException {
+        File f = tmp.newFile(name + ".zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(f));
+        try {
+            out.putNextEntry(new ZipEntry("kpis.jtl"));
+            out.write(kpis.getBytes(UTF_8));
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+        return f;
+    }
+
+    private static SessionList sessions(String... ids) {
+        StringBuilder json = new StringBuilder("{\"result\":{\"sessions\":[");
+        for (int i = 0; i < ids.length; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":\"").append(ids[i]).append("\"}");
+        }
+        return new SessionList(json.append("]}}").toString().getBytes(UTF_8));
+    }
+
+    /**
+     * session data url pointing to the zip, downloaded through the api
+     */
+    static void serve(Api api, String sessionId, File zip) throws IOException {
+        String url = "http://artifacts.local/" + zip.getName();
+        String json = "{\"result\":{\"data\":[{\"title\":\"Zip\",\"dataUrl\":\"" + url + "\"}]}}";
+        Mockito.when(api.jtlDataUrls(sessionId)).thenReturn(new JtlDataUrls(json.getBytes(UTF_8)));
+        Mockito.when(api.download(Matchers.eq(url), Matchers.anyInt(), Matchers.anyLong(), Matchers.anyString()))
+            .thenAnswer(i -> response(url,
+            FileUtils.readFileToByteArray(zip)));
+    }
+
+    private ArtifactCache cache() throws IOException {
+        return new ArtifactCache(tmp.newFolder("cache"), ArtifactCache.DEFAULT_MAX_SIZE);
+    }
+
+    static Response response(String url, int code, ResponseBody body, String contentRange) {
+        Response.Builder b = new Response.Builder().request(new Request.Builder().url(url).build())
+            .protocol(Protocol.HTTP_1_1).code(code).header("ETag", ETAG).body(body);
+        return contentRange == null ? b.build() : b.header(Api.CONTENT_RANGE, contentRange).build();
+    }
+
+    private static String random(int length) {
+        StringBuilder sb = new StringBuilder();
+        Random r = new Random(length);
+        while (sb.length() < length) {
+            sb.append(r.nextInt()).append(',').append(r.nextInt(1000)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    static Response response(String url, byte[] body) {
+        return new Response.Builder().request(new Request.Builder().url(url).build()).protocol(Protocol.HTTP_1_1)
+            .code(200).body(ResponseBody.create(MediaType.parse("application/zip"), body)).build();
+    }
+}
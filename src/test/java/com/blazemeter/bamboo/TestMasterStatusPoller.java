@@ -0,0 +1,151 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo;
+
+import com.blazemeter.bamboo.plugin.TestStatus;
+import com.blazemeter.bamboo.plugin.api.Api;
+import com.blazemeter.bamboo.plugin.api.model.MasterStatus;
+import com.blazemeter.bamboo.plugin.api.model.MasterStatusSnapshot;
+import com.blazemeter.bamboo.plugin.polling.MasterStatusPoller;
+import com.blazemeter.bamboo.plugin.polling.PollingStrategy;
+import com.blazemeter.bamboo.plugin.polling.PollingStrategy.Phase;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class TestMasterStatusPoller {
+
+    private static final Predicate<MasterStatusSnapshot> ENDED = s -> s.getTestStatus() != TestStatus.Running;
+
+    private MasterStatusPoller poller;
+
+    @Before
+    public void setUp() {
+        poller = new MasterStatusPoller(5, 2);
+    }
+
+    @After
+    public void tearDown() {
+        poller.shutdown();
+    }
+
+    @Test
+    public void completesOnChange() throws Exception {
+        Api api = api();
+        Mockito.when(api.snapshot("1")).thenReturn(status("1", "DATA_RECEIVED"), status("1", "DATA_RECEIVED"),
+            status("1", "ENDED"));
+        MasterStatusSnapshot s = poller.watch(api, "1", new Every(10), Phase.RUNNING, null, ENDED)
+            .get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(TestStatus.NotRunning, s.getTestStatus());
+        Mockito.verify(api, Mockito.times(3)).snapshot("1");
+        Assert.assertEquals(0, poller.watching());
+    }
+
+    @Test
+    public void sameMasterShared() throws Exception {
+        Api api = api();
+        Mockito.when(api.snapshot("2")).thenReturn(status("2", "DATA_RECEIVED"), status("2", "ENDED"));
+        Every strategy = new Every(50);
+        CompletableFuture<MasterStatusSnapshot> a = poller.watch(api, "2", strategy, Phase.RUNNING, null, ENDED);
+        CompletableFuture<MasterStatusSnapshot> b = poller.watch(api, "2", strategy, Phase.RUNNING, null, ENDED);
+        Assert.assertEquals(TestStatus.NotRunning, a.get(5, TimeUnit.SECONDS).getTestStatus());
+        Assert.assertEquals(TestStatus.NotRunning, b.get(5, TimeUnit.SECONDS).getTestStatus());
+        Mockito.verify(api, Mockito.times(2)).snapshot("2");
+        Assert.assertEquals(2, poller.polls());
+        Assert.assertEquals(2, poller.shared());
+    }
+
+    @Test
+    public void failsOnError() throws Exception {
+        Api api = api();
+        Mockito.when(api.snapshot("3")).thenThrow(new IOException("boom"));
+        CompletableFuture<MasterStatusSnapshot> f = poller.watch(api, "3", new Every(0), Phase.RUNNING, null, ENDED);
+        try {
+            f.get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertEquals("boom", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void errorFailsWatchAndPollerKeepsRunning() throws Exception {
+        Api api = api();
+        Mockito.when(api.snapshot("5")).thenThrow(new NoClassDefFoundError("okhttp3/Call"));
+        CompletableFuture<MasterStatusSnapshot> f = poller.watch(api, "5", new Every(0), Phase.RUNNING, null, ENDED);
+        try {
+            f.get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof NoClassDefFoundError);
+        }
+        Mockito.when(api.snapshot("6")).thenReturn(status("6", "ENDED"));
+        MasterStatusSnapshot s = poller.watch(api, "6", new Every(0), Phase.RUNNING, null, ENDED)
+            .get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(TestStatus.NotRunning, s.getTestStatus());
+    }
+
+    @Test
+    public void cancelStopsPolling() throws Exception {
+        Api api = api();
+        Mockito.when(api.snapshot("4")).thenReturn(status("4", "DATA_RECEIVED"));
+        CompletableFuture<MasterStatusSnapshot> f = poller.watch(api, "4", new Every(0), Phase.RUNNING, null, ENDED);
+        Thread.sleep(50);
+        f.cancel(true);
+        Thread.sleep(50);
+        long polls = poller.polls();
+        Thread.sleep(50);
+        Assert.assertEquals(0, poller.watching());
+        Assert.assertEquals(polls, poller.polls());
+    }
+
+    private static Api api() {
+        Api api = Mockito.mock(Api.class);
+        Mockito.when(api.getServerUrl()).thenReturn(TestConstants.mockedApiUrl);
+        return api;
+    }
+
+    private static MasterStatusSnapshot status(String id, String status) {
+        String json = "{\"result\":{\"progress\":100,\"status\":\"" + status + "\"}}";
+        return new MasterStatusSnapshot(id, new MasterStatus(json.getBytes(Charset.forName("UTF-8"))),
+            System.currentTimeMillis());
+    }
+
+    private static class Every extends PollingStrategy {
+        private final long interval;
+
+        Every(long interval) {
+            this.interval = interval;
+        }
+
+        @Override
+        protected long delay(Phase phase, MasterStatusSnapshot last, long inPhase, int poll) {
+            return interval;
+        }
+
+        @Override
+        public String getName() {
+            return "every";
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo;
+
+import com.blazemeter.bamboo.plugin.api.PageIterator;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestPageIterator {
+
+    private static PageIterator.Fetcher<Integer> range(int total, List<Integer> skips) {
+        return (skip, limit) -> {
+            skips.add(skip);
+            List<Integer> page = new ArrayList<Integer>();
+            for (int i = skip; i < Math.min(total, skip + limit); i++) {
+                page.add(i);
+            }
+            return PageIterator.Page.of(page);
+        };
+    }
+
+    @Test
+    public void readsAllPages() {
+        List<Integer> skips = new ArrayList<Integer>();
+        PageIterator<Integer> it = new PageIterator<Integer>(range(25, skips), 10);
+        int n = 0;
+        while (it.hasNext()) {
+            Assert.assertEquals(n++, it.next().intValue());
+        }
+        Assert.assertEquals(25, n);
+        Assert.assertEquals(3, it.pages());
+        Assert.assertEquals("[0, 10, 20]", skips.toString());
+    }
+
+    @Test
+    public void exactMultipleEndsOnEmptyPage() {
+        List<Integer> skips = new ArrayList<Integer>();
+        PageIterator<Integer> it = new PageIterator<Integer>(range(20, skips), 10);
+        while (it.hasNext()) {
+            it.next();
+        }
+        Assert.assertEquals(3, it.pages());
+    }
+
+    @Test
+    public void stopsEarly() {
+        List<Integer> skips = new ArrayList<Integer>();
+        PageIterator<Integer> it = new PageIterator<Integer>(range(1000, skips), 10);
+        while (it.hasNext()) {
+            if (it.next() == 15) {
+                break;
+            }
+        }
+        Assert.assertEquals(2, it.pages());
+    }
+
+    @Test
+    public void droppedItemsDoNotEndIteration() {
+        List<Integer> skips = new ArrayList<Integer>();
+        PageIterator.Fetcher<Integer> all = range(25, skips);
+        PageIterator<Integer> it = new PageIterator<Integer>((skip, limit) -> {
+            PageIterator.Page<Integer> page = all.page(skip, limit);
+            // fetcher drops item 3, as the catalog decoder drops entries without id
+            List<Integer> kept = new ArrayList<Integer>(page.getItems());
+            kept.remove(Integer.valueOf(3));
+            return new PageIterator.Page<Integer>(kept, page.getReturned());
+        }, 10);
+        int n = 0;
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        Assert.assertEquals(24, n);
+        Assert.assertEquals("[0, 10, 20]", skips.toString());
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void rethrowsFailure() {
+        PageIterator<Integer> it = new PageIterator<Integer>((skip, limit) -> {
+            throw new IOException("timeout");
+        }, 10);
+        it.hasNext();
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo;
+
+import com.blazemeter.bamboo.plugin.api.model.MasterStatus;
+import com.blazemeter.bamboo.plugin.api.model.MasterStatusSnapshot;
+import com.blazemeter.bamboo.plugin.polling.FixedPolling;
+import com.blazemeter.bamboo.plugin.polling.PollingStrategy;
+import com.blazemeter.bamboo.plugin.polling.PollingStrategy.Phase;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestPollingStrategy {
+
+    @Test
+    public void fixed() {
+        PollingStrategy p = PollingStrategy.forName(PollingStrategy.FIXED);
+        for (Phase phase : Phase.values()) {
+            Assert.assertEquals(FixedPolling.INTERVAL, p.next(phase, null));
+        }
+        Assert.assertEquals(1, p.polls(Phase.RUNNING));
+    }
+
+    @Test
+    public void initByProgress() {
+        PollingStrategy p = PollingStrategy.forName(null);
+        Assert.assertEquals(PollingStrategy.ADAPTIVE, p.getName());
+        Assert.assertEquals(5000, p.next(Phase.INIT, status(25, null)));
+        Assert.assertEquals(3000, p.next(Phase.INIT, status(70, null)));
+        // booting master is reported as running
+        Assert.assertEquals(3000, p.next(Phase.RUNNING, status(70, null)));
+    }
+
+    @Test
+    public void backoffWithoutDuration() {
+        PollingStrategy p = PollingStrategy.forName(PollingStrategy.ADAPTIVE);
+        long[] expected = {5000, 10000, 20000, 40000, 60000, 60000};
+        for (long e : expected) {
+            Assert.assertEquals(e, p.next(Phase.RUNNING, status(100, null)));
+        }
+        p.ended();
+        Assert.assertEquals(60000, p.detectionLag());
+        Assert.assertTrue(p.report().contains("running polls=6"));
+    }
+
+    @Test
+    public void tightNearExpectedEnd() {
+        PollingStrategy p = PollingStrategy.forName(PollingStrategy.ADAPTIVE);
+        MasterStatusSnapshot oneMinute = status(100, "\"1m\"");
+        Assert.assertEquals(5000, p.next(Phase.RUNNING, oneMinute));
+        Assert.assertEquals(10000, p.next(Phase.RUNNING, oneMinute));
+        Assert.assertEquals(20000, p.next(Phase.RUNNING, oneMinute));
+        // 40s back-off would reach into the 30s window before expected end
+        long d = p.next(Phase.RUNNING, oneMinute);
+        Assert.assertTrue(d <= 30000 && d > 25000);
+
+        PollingStrategy shortTest = PollingStrategy.forName(PollingStrategy.ADAPTIVE);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(5000, shortTest.next(Phase.RUNNING, status(100, "20")));
+        }
+    }
+
+    @Test
+    public void configuredDuration() throws IOException {
+        byte[] body = Files.readAllBytes(new File(TestConstants.RESOURCES, "masterStatus_0.json").toPath());
+        Assert.assertEquals(300, new MasterStatus(body).getConfiguredDuration());
+        Assert.assertEquals(5400, status(100, "\"1h30m\"").getConfiguredDuration());
+        Assert.assertEquals(3, status(100, "\"x\"").getConfiguredDuration());
+        Assert.assertEquals(-1, status(100, null).getConfiguredDuration());
+    }
+
+    private static MasterStatusSnapshot status(int progress, String holdFor) {
+        String json = "{\"result\":{\"progress\":" + progress + ",\"status\":\"DATA_RECEIVED\""
+            + (holdFor == null ? "" : ",\"executions\":[{\"holdFor\":" + holdFor + "},{\"holdFor\":\"1s\",\"rampUp\":\"2s\"}]")
+            + "}}";
+        return new MasterStatusSnapshot("1", new MasterStatus(json.getBytes(Charset.forName("UTF-8"))),
+            System.currentTimeMillis());
+    }
+}
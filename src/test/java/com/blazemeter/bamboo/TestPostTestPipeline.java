@@ -0,0 +1,95 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo;
+
+import com.atlassian.bamboo.build.logger.BuildLogger;
+import com.atlassian.bamboo.task.TaskState;
+import com.blazemeter.bamboo.plugin.PostTestPipeline;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+public class TestPostTestPipeline {
+
+    @Test
+    public void concurrentWithOrderedLog() {
+        BuildLogger logger = Mockito.mock(BuildLogger.class);
+        CountDownLatch both = new CountDownLatch(2);
+        PostTestPipeline p = new PostTestPipeline(4, 5000);
+        PostTestPipeline.Stage<String> first = p.add("first", "none", log -> {
+            log.addBuildLogEntry("first 1");
+            both.countDown();
+            await(both);
+            log.addBuildLogEntry("first 2");
+            return "a";
+        });
+        PostTestPipeline.Stage<String> second = p.add("second", "none", log -> {
+            both.countDown();
+            await(both);
+            log.addErrorLogEntry("second 1");
+            return "b";
+        });
+        p.run(logger);
+        // stages waited for each other, so they ran at the same time
+        Assert.assertEquals("a", first.get());
+        Assert.assertEquals("b", second.get());
+        InOrder inOrder = Mockito.inOrder(logger);
+        inOrder.verify(logger).addBuildLogEntry("first 1");
+        inOrder.verify(logger).addBuildLogEntry("first 2");
+        inOrder.verify(logger).addErrorLogEntry("second 1");
+        Assert.assertTrue(p.report().contains("first="));
+        Assert.assertTrue(p.wallMillis() >= 0);
+    }
+
+    @Test
+    public void timeoutUsesFallback() {
+        BuildLogger logger = Mockito.mock(BuildLogger.class);
+        PostTestPipeline p = new PostTestPipeline(2, 5000);
+        PostTestPipeline.Stage<TaskState> slow = p.add("slow", 100, TaskState.SUCCESS, log -> {
+            log.addBuildLogEntry("started");
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            log.addBuildLogEntry("after cancel");
+            return TaskState.FAILED;
+        });
+        PostTestPipeline.Stage<String> failing = p.add("failing", "fallback", log -> {
+            throw new IllegalStateException("broken");
+        });
+        long start = System.currentTimeMillis();
+        p.run(logger);
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        Assert.assertEquals(TaskState.SUCCESS, slow.get());
+        Assert.assertTrue(slow.timedOut());
+        Assert.assertEquals("fallback", failing.get());
+        Mockito.verify(logger).addBuildLogEntry("started");
+        Mockito.verify(logger, Mockito.never()).addBuildLogEntry("after cancel");
+        Mockito.verify(logger).addErrorLogEntry("slow did not finish in time and was cancelled");
+        Mockito.verify(logger).addErrorLogEntry("failing failed: java.lang.IllegalStateException: broken");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo;
+
+import com.blazemeter.bamboo.plugin.api.Api;
+import com.blazemeter.bamboo.plugin.api.RateLimiter;
+import com.blazemeter.bamboo.plugin.api.RateLimiter.Lane;
+import com.blazemeter.bamboo.plugin.api.UrlManager;
+import com.blazemeter.bamboo.plugin.api.UrlManagerV3Impl;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+import okhttp3.Request;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestRateLimiter {
+
+    private static final String SERVER = "https://a.blazemeter.com";
+
+    @Test
+    public void waitsWhenEmpty() throws InterruptedIOException {
+        RateLimiter limiter = new RateLimiter(10, 2);
+        Assert.assertEquals(0, limiter.acquire("c", SERVER, Lane.POLL), 5);
+        Assert.assertEquals(0, limiter.acquire("c", SERVER, Lane.POLL), 5);
+        Assert.assertTrue(limiter.acquire("c", SERVER, Lane.POLL) >= 50);
+        // other credentials have own bucket
+        Assert.assertEquals(0, limiter.acquire("d", SERVER, Lane.POLL), 5);
+        Assert.assertEquals(4, limiter.waits(Lane.POLL).count());
+    }
+
+    @Test
+    public void controlNeverWaits() throws InterruptedIOException {
+        RateLimiter limiter = new RateLimiter(1, 1);
+        limiter.acquire("c", SERVER, Lane.CATALOG);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(0, limiter.acquire("c", SERVER, Lane.CONTROL), 5);
+        }
+    }
+
+    @Test
+    public void pollBeforeCatalog() throws Exception {
+        RateLimiter limiter = new RateLimiter(5, 1);
+        limiter.acquire("c", SERVER, Lane.POLL);
+        AtomicLong catalogDone = new AtomicLong();
+        AtomicLong pollDone = new AtomicLong();
+        Thread catalog = new Thread(() -> take(limiter, Lane.CATALOG, catalogDone));
+        Thread poll = new Thread(() -> take(limiter, Lane.POLL, pollDone));
+        catalog.start();
+        Thread.sleep(20);
+        poll.start();
+        catalog.join(5000);
+        poll.join(5000);
+        Assert.assertTrue(pollDone.get() > 0);
+        Assert.assertTrue(pollDone.get() < catalogDone.get());
+    }
+
+    @Test
+    public void lanes() {
+        UrlManager urls = new UrlManagerV3Impl(SERVER);
+        Assert.assertEquals(Lane.CONTROL, lane(urls.testStart(Api.APP_KEY, "1")));
+        Assert.assertEquals(Lane.CONTROL, lane(urls.testTerminate(Api.APP_KEY, "1")));
+        Assert.assertEquals(Lane.POLL, lane(urls.masterStatus(Api.APP_KEY, "1")));
+        Assert.assertEquals(Lane.CATALOG, lane(urls.tests(Api.APP_KEY, 1, 0, 500)));
+        Assert.assertEquals(Lane.CATALOG, lane(urls.activeTests(Api.APP_KEY, 1)));
+    }
+
+    @Test
+    public void disabled() throws InterruptedIOException {
+        RateLimiter limiter = new RateLimiter(0, 1);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(0, limiter.acquire("c", SERVER, Lane.CATALOG));
+        }
+        Assert.assertEquals("Rate limiter: disabled", limiter.stats());
+    }
+
+    private static void take(RateLimiter limiter, Lane lane, AtomicLong done) {
+        try {
+            limiter.acquire("c", SERVER, lane);
+            done.set(System.nanoTime());
+        } catch (InterruptedIOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Lane lane(String url) {
+        return RateLimiter.lane(new Request.Builder().url(url).build());
+    }
+}
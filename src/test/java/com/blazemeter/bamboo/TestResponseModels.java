@@ -0,0 +1,109 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo;
+
+import com.blazemeter.bamboo.plugin.TestStatus;
+import com.blazemeter.bamboo.plugin.api.model.CiStatus;
+import com.blazemeter.bamboo.plugin.api.model.JtlDataUrls;
+import com.blazemeter.bamboo.plugin.api.model.MasterStatus;
+import com.blazemeter.bamboo.plugin.api.model.SessionList;
+import com.blazemeter.bamboo.plugin.api.model.StartResult;
+import com.blazemeter.bamboo.plugin.configuration.constants.JsonConstants;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import org.json.JSONException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestResponseModels {
+
+    @Test
+    public void masterStatus() throws IOException {
+        MasterStatus running = new MasterStatus(read("masterStatus_100.json"));
+        Assert.assertEquals(100, running.getProgress());
+        Assert.assertEquals("DATA_RECIEVED", running.getStatus());
+        Assert.assertEquals(TestStatus.Running, running.getTestStatus());
+
+        MasterStatus ended = new MasterStatus(read("masterStatus_140.json"));
+        Assert.assertEquals(140, ended.getProgress());
+        Assert.assertEquals(TestStatus.NotRunning, ended.getTestStatus());
+
+        MasterStatus notFound = new MasterStatus(read("not_found.json"));
+        Assert.assertFalse(notFound.hasResult());
+        Assert.assertEquals(-1, notFound.getProgress());
+        Assert.assertEquals(TestStatus.Error, notFound.getTestStatus());
+    }
+
+    @Test
+    public void startResult() throws IOException {
+        StartResult collection = new StartResult(read("startCollection.json"), true);
+        Assert.assertEquals("15105877", collection.getMasterId());
+        Assert.assertEquals("10000679", collection.getTestId());
+        HashMap<String, String> map = collection.toMap();
+        Assert.assertEquals("15105877", map.get(JsonConstants.ID));
+        Assert.assertEquals("PASSED-1+FAILED-2", map.get(JsonConstants.NAME));
+
+        StartResult failed = new StartResult(read("not_found.json"), false);
+        Assert.assertNull(failed.getMasterId());
+        Assert.assertTrue(failed.toMap().get(JsonConstants.ERROR).contains("404"));
+    }
+
+    @Test
+    public void ciStatus() throws IOException {
+        CiStatus failure = new CiStatus(read("getCIStatus_failure.json"));
+        Assert.assertEquals(1, failure.getFailures().length());
+        Assert.assertEquals(61000, failure.getFailures().getJSONObject(0).getInt(JsonConstants.CODE));
+        Assert.assertEquals(0, failure.getErrors().length());
+        Assert.assertEquals("failure", failure.getResult().getString(JsonConstants.STATUS));
+
+        CiStatus error = new CiStatus(read("getCIStatus_error_0.json"));
+        Assert.assertEquals(0, error.getErrors().getJSONObject(0).getInt(JsonConstants.CODE));
+    }
+
+    @Test(expected = JSONException.class)
+    public void ciStatusWithoutResult() throws IOException {
+        new CiStatus(read("not_found.json")).getFailures();
+    }
+
+    @Test
+    public void sessionsAndDataUrls() {
+        SessionList sessions = new SessionList(bytes("{\"result\":{\"sessions\":[{\"id\":\"r-1\",\"name\":\"a\","
+            + "\"configuration\":{\"id\":5}},{\"id\":\"r-2\"}]},\"error\":null}"));
+        Assert.assertEquals(Arrays.asList("r-1", "r-2"), sessions.getIds());
+
+        JtlDataUrls urls = new JtlDataUrls(bytes("{\"api_version\":3,\"result\":{\"data\":[{\"title\":\"Log\","
+            + "\"dataUrl\":\"https://a/log\"},{\"title\":\"Zip\",\"filename\":\"a.zip\",\"dataUrl\":\"https://a/zip\"}]}}"));
+        Assert.assertEquals("https://a/zip", urls.getZipUrl());
+        Assert.assertEquals(2, urls.getUrls().size());
+        Assert.assertEquals(3, urls.toJson().getInt("api_version"));
+    }
+
+    @Test(expected = JSONException.class)
+    public void malformed() {
+        new SessionList(bytes("<html>Bad Gateway</html>")).getIds();
+    }
+
+    private static byte[] read(String name) throws IOException {
+        return Files.readAllBytes(new File(TestConstants.RESOURCES, name).toPath());
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(Charset.forName("UTF-8"));
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo;
+
+import com.blazemeter.bamboo.plugin.api.Api;
+import com.blazemeter.bamboo.plugin.api.CircuitBreaker;
+import com.blazemeter.bamboo.plugin.api.RetryBudget;
+import com.blazemeter.bamboo.plugin.api.RetryInterceptor;
+import com.blazemeter.bamboo.plugin.api.RetryPolicy;
+import java.io.IOException;
+import java.util.LinkedList;
+import okhttp3.Connection;
+import okhttp3.Interceptor;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+public class TestRetryInterceptor {
+
+    private static final RetryPolicy FAST = new RetryPolicy("fast", 3, 1, 2, true, true);
+    private static final RetryPolicy FAST_START = new RetryPolicy("fast-start", 3, 1, 2, false, false);
+
+    private static Request get() {
+        return new Request.Builder().url(TestConstants.mockedApiUrl + "/api/v4/user").get().build();
+    }
+
+    private static Request start() {
+        return new Request.Builder().url(TestConstants.mockedApiUrl + "/api/v4/tests/1/start")
+            .post(RequestBody.create(Api.JSON, "")).build();
+    }
+
+    private static RetryInterceptor interceptor(int failures) {
+        return new RetryInterceptor(LoggerFactory.getLogger("com.blazemeter"),
+            r -> "POST".equals(r.method()) ? FAST_START : FAST, 20, failures, 60000);
+    }
+
+    /**
+     * Answers with queued codes; -1 stands for connection failure, -2 for an unexpected exception.
+     */
+    private static class Chain implements Interceptor.Chain {
+        private final Request request;
+        private final LinkedList<Integer> codes = new LinkedList<Integer>();
+        private int calls = 0;
+
+        Chain(Request request, Integer... codes) {
+            this.request = request;
+            for (Integer c : codes) {
+                this.codes.add(c);
+            }
+        }
+
+        @Override
+        public Request request() {
+            return request;
+        }
+
+        @Override
+        public Response proceed(Request request) throws IOException {
+            calls++;
+            int code = codes.size() > 1 ? codes.removeFirst() : codes.getFirst();
+            if (code == -2) {
+                throw new IllegalStateException("unexpected");
+            }
+            if (code < 0) {
+                throw new IOException("connection reset");
+            }
+            return new Response.Builder().request(request).protocol(Protocol.HTTP_1_1).code(code)
+                .body(ResponseBody.create(Api.JSON, "{}")).build();
+        }
+
+        @Override
+        public Connection connection() {
+            return null;
+        }
+    }
+
+    @Test
+    public void retriesServerErrorsForGet() throws IOException {
+        Chain chain = new Chain(get(), 502, -1, 200);
+        Response response = interceptor(10).intercept(chain);
+        Assert.assertEquals(200, response.code());
+        Assert.assertEquals(3, chain.calls);
+    }
+
+    @Test
+    public void doesNotRetryClientErrors() throws IOException {
+        Chain chain = new Chain(get(), 404, 200);
+        Assert.assertEquals(404, interceptor(10).intercept(chain).code());
+        Assert.assertEquals(1, chain.calls);
+    }
+
+    @Test
+    public void startIsRetriedOnlyWhenNotProcessed() throws IOException {
+        Chain failed = new Chain(start(), 500, 200);
+        Assert.assertEquals(500, interceptor(10).intercept(failed).code());
+        Assert.assertEquals(1, failed.calls);
+
+        Chain throttled = new Chain(start(), 429, 200);
+        Assert.assertEquals(200, interceptor(10).intercept(throttled).code());
+        Assert.assertEquals(2, throttled.calls);
+    }
+
+    @Test
+    public void circuitOpensAndFailsFast() throws IOException {
+        RetryInterceptor retry = interceptor(2);
+        Chain chain = new Chain(get(), 503);
+        Assert.assertEquals(503, retry.intercept(chain).code());
+        Assert.assertEquals(2, chain.calls);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, retry.state("127.0.0.1:" + TestConstants.mockedApiPort));
+        try {
+            retry.intercept(new Chain(get(), 200));
+            Assert.fail("circuit should be open");
+        } catch (IOException e) {
+            Assert.assertEquals(1, retry.rejected());
+        }
+    }
+
+    @Test
+    public void halfOpenTrialClosesCircuit() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(1, 10);
+        breaker.onFailure();
+        Assert.assertFalse(breaker.allowRequest());
+        Thread.sleep(20);
+        Assert.assertTrue(breaker.allowRequest());
+        Assert.assertFalse(breaker.allowRequest());
+        breaker.onSuccess();
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    public void unexpectedExceptionSettlesTrial() throws IOException, InterruptedException {
+        RetryInterceptor retry = new RetryInterceptor(LoggerFactory.getLogger("com.blazemeter"), r -> FAST, 20, 1, 10);
+        String host = "127.0.0.1:" + TestConstants.mockedApiPort;
+        Assert.assertEquals(503, retry.intercept(new Chain(get(), 503)).code());
+        Thread.sleep(20);
+        try {
+            retry.intercept(new Chain(get(), -2));
+            Assert.fail("exception should be rethrown");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(CircuitBreaker.State.OPEN, retry.state(host));
+        }
+        Thread.sleep(20);
+        Assert.assertEquals(200, retry.intercept(new Chain(get(), 200)).code());
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, retry.state(host));
+    }
+
+    @Test
+    public void budgetLimitsRetries() {
+        RetryBudget budget = new RetryBudget(20, 2);
+        Assert.assertTrue(budget.tryRetry());
+        Assert.assertTrue(budget.tryRetry());
+        Assert.assertFalse(budget.tryRetry());
+        for (int i = 0; i < 5; i++) {
+            budget.onRequest();
+        }
+        Assert.assertTrue(budget.tryRetry());
+        Assert.assertFalse(budget.tryRetry());
+    }
+
+    @Test
+    public void honorsRetryAfter() {
+        Assert.assertTrue(RetryPolicy.IDEMPOTENT.delay(0, "3") >= 3000);
+        Assert.assertTrue(RetryPolicy.IDEMPOTENT.delay(0, null) <= 500);
+        Assert.assertEquals(-1, RetryPolicy.IDEMPOTENT.delay(0, "3600"));
+        Assert.assertTrue(RetryPolicy.IDEMPOTENT.delay(10, null) <= 8000);
+    }
+
+    @Test
+    public void choosesPolicyByEndpoint() {
+        Assert.assertSame(RetryPolicy.IDEMPOTENT, RetryPolicy.forRequest(get()));
+        Assert.assertSame(RetryPolicy.START, RetryPolicy.forRequest(start()));
+        Request terminate = new Request.Builder().url(TestConstants.mockedApiUrl + "/api/v4/masters/1/terminate")
+            .post(RequestBody.create(Api.JSON, "")).build();
+        Assert.assertSame(RetryPolicy.TERMINATE, RetryPolicy.forRequest(terminate));
+    }
+}
@@ -63,6 +63,14 @@ public class TestServiceManager {
 
 
 
+    @Test
+    public void startTest_collection(){
+        String c = Credentials.basic(TestConstants.TEST_API_ID_VALID,TestConstants.TEST_API_SECRET_VALID);
+        Api api = new ApiImpl(c, TestConstants.mockedApiUrl);
+        String masterId = ServiceManager.startTest(api, TestConstants.TEST_MASTER_ID + ".multi", log);
+        Assert.assertEquals("15105877", masterId);
+    }
+
     @Test
     public void getCIStatus_success(){
         String c = Credentials.basic(TestConstants.TEST_API_ID_VALID,TestConstants.TEST_API_SECRET_VALID);
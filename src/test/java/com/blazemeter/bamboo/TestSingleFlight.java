@@ -0,0 +1,99 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo;
+
+import com.blazemeter.bamboo.plugin.api.SingleFlight;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestSingleFlight {
+
+    @Test
+    public void concurrentCallersShareOneCall() throws Exception {
+        SingleFlight flight = new SingleFlight(0);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 8; i++) {
+                results.add(pool.submit(() -> flight.execute("key", () -> {
+                    loads.incrementAndGet();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    return "value";
+                })));
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (flight.shared() < 7 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            for (Future<String> f : results) {
+                Assert.assertEquals("value", f.get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(7, flight.shared());
+        Assert.assertTrue(flight.stats().contains("dedup ratio=87%"));
+    }
+
+    @Test
+    public void memoWindowReusesResult() throws IOException, InterruptedException {
+        SingleFlight flight = new SingleFlight(50);
+        AtomicInteger loads = new AtomicInteger();
+        SingleFlight.Loader<Integer> loader = () -> loads.incrementAndGet();
+        Assert.assertEquals(1, flight.execute("key", loader).intValue());
+        Assert.assertEquals(1, flight.execute("key", loader).intValue());
+        Assert.assertEquals(1, flight.memoHits());
+        Thread.sleep(60);
+        Assert.assertEquals(2, flight.execute("key", loader).intValue());
+    }
+
+    @Test
+    public void failureIsNotMemoized() throws IOException {
+        SingleFlight flight = new SingleFlight(10000);
+        try {
+            flight.execute("key", () -> {
+                throw new IOException("down");
+            });
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals("down", e.getMessage());
+        }
+        Assert.assertEquals("up", flight.execute("key", () -> "up"));
+    }
+
+    @Test
+    public void keyDoesNotExposeCredentials() {
+        String key = SingleFlight.key("Basic secret", "http://a/accounts");
+        Assert.assertFalse(key.contains("secret"));
+        Assert.assertFalse(key.equals(SingleFlight.key("Basic other", "http://a/accounts")));
+    }
+}
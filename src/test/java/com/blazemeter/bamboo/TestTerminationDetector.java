@@ -0,0 +1,74 @@
+/**
+ Copyright 2016 BlazeMeter Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.blazemeter.bamboo;
+
+import com.blazemeter.bamboo.plugin.api.Api;
+import com.blazemeter.bamboo.plugin.api.model.MasterStatus;
+import com.blazemeter.bamboo.plugin.api.model.MasterStatusSnapshot;
+import com.blazemeter.bamboo.plugin.polling.TerminationDetector;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class TestTerminationDetector {
+
+    @Test
+    public void endedAtOnce() throws Exception {
+        Api api = Mockito.mock(Api.class);
+        Mockito.when(api.workspaceOf("5")).thenReturn(7);
+        Mockito.when(api.snapshot("10")).thenReturn(status("ENDED"));
+        Mockito.when(api.active("5", 7)).thenReturn(false);
+        TerminationDetector d = new TerminationDetector(api);
+        Assert.assertTrue(d.await("5", "10"));
+        Assert.assertEquals(1, d.checks());
+        Assert.assertEquals(Integer.valueOf(7), d.workspace());
+        Assert.assertTrue(d.saved() > 29000);
+        Mockito.verify(api, Mockito.never()).active("5");
+    }
+
+    @Test
+    public void backsOffUntilInactive() throws Exception {
+        Api api = Mockito.mock(Api.class);
+        Mockito.when(api.workspaceOf("5")).thenReturn(7);
+        Mockito.when(api.snapshot("10")).thenReturn(status("DATA_RECEIVED"), status("ENDED"));
+        Mockito.when(api.active("5", 7)).thenReturn(true, false);
+        TerminationDetector d = new TerminationDetector(api, 10, 40, 5000);
+        Assert.assertTrue(d.await("5", "10"));
+        Assert.assertEquals(3, d.checks());
+        // 10ms + 20ms between checks
+        Assert.assertTrue(d.elapsed() >= 30);
+    }
+
+    @Test
+    public void unknownWorkspace() throws Exception {
+        Api api = Mockito.mock(Api.class);
+        Mockito.when(api.workspaceOf("5")).thenThrow(new IOException("offline"));
+        Mockito.when(api.snapshot("10")).thenReturn(status("ENDED"));
+        Mockito.when(api.active("5")).thenReturn(true);
+        TerminationDetector d = new TerminationDetector(api, 10, 20, 100);
+        Assert.assertFalse(d.await("5", "10"));
+        Assert.assertNull(d.workspace());
+        Assert.assertTrue(d.checks() > 2);
+        Assert.assertEquals(TerminationDetector.TIMEOUT - d.elapsed(), d.saved());
+    }
+
+    private static MasterStatusSnapshot status(String status) {
+        String json = "{\"result\":{\"progress\":100,\"status\":\"" + status + "\"}}";
+        return new MasterStatusSnapshot("10", new MasterStatus(json.getBytes(Charset.forName("UTF-8"))),
+            System.currentTimeMillis());
+    }
+}
@@ -49,18 +49,39 @@ public class TestUrlManager {
 
     @Test
     public void getTests(){
-    String expGetTestsUrl=bmUrlManager.getServerUrl()+UrlManager.V4+"/tests?limit=10000&workspaceId=1&app_key="+appKey+UrlManager.CLIENT_IDENTIFICATION;
-    String actGetTestsUrl=bmUrlManager.tests(appKey,1);
+    String expGetTestsUrl=bmUrlManager.getServerUrl()+UrlManager.V4+"/tests?skip=0&limit=500&workspaceId=1&app_key="+appKey+UrlManager.CLIENT_IDENTIFICATION;
+    String actGetTestsUrl=bmUrlManager.tests(appKey,1,0,500);
         Assert.assertEquals(expGetTestsUrl, actGetTestsUrl);
     }
 
     @Test
     public void getMultiTests(){
-    String expGetTestsUrl=bmUrlManager.getServerUrl()+UrlManager.V4+"/multi-tests?limit=10000&workspaceId=1&app_key="+appKey+UrlManager.CLIENT_IDENTIFICATION;
-    String actGetTestsUrl=bmUrlManager.multiTests(appKey,1);
+    String expGetTestsUrl=bmUrlManager.getServerUrl()+UrlManager.V4+"/multi-tests?skip=500&limit=500&workspaceId=1&app_key="+appKey+UrlManager.CLIENT_IDENTIFICATION;
+    String actGetTestsUrl=bmUrlManager.multiTests(appKey,1,500,500);
         Assert.assertEquals(expGetTestsUrl, actGetTestsUrl);
     }
 
+    @Test
+    public void getTest(){
+        String exp=bmUrlManager.getServerUrl()+UrlManager.V4+"/tests/"+testId+"?app_key="+appKey+UrlManager.CLIENT_IDENTIFICATION;
+        String act=bmUrlManager.test(appKey,testId);
+        Assert.assertEquals(exp, act);
+    }
+
+    @Test
+    public void getProject(){
+        String exp=bmUrlManager.getServerUrl()+UrlManager.V4+"/projects/7?app_key="+appKey+UrlManager.CLIENT_IDENTIFICATION;
+        String act=bmUrlManager.project(appKey,7);
+        Assert.assertEquals(exp, act);
+    }
+
+    @Test
+    public void getMultiTest(){
+        String exp=bmUrlManager.getServerUrl()+UrlManager.V4+"/multi-tests/"+testId+"?app_key="+appKey+UrlManager.CLIENT_IDENTIFICATION;
+        String act=bmUrlManager.multiTest(appKey,testId);
+        Assert.assertEquals(exp, act);
+    }
+
     @Test
     public void testStop_masters(){
         String expTestStop=bmUrlManager.getServerUrl()+UrlManager.V4+Constants.MASTERS
@@ -147,9 +168,9 @@ public class TestUrlManager {
 
     @Test
     public void workspaces(){
-        String exp=bmUrlManager.getServerUrl()+UrlManager.V4 +"/workspaces?limit=1000&enabled=true&app_key="+appKey+"&"+"accountId="
+        String exp=bmUrlManager.getServerUrl()+UrlManager.V4 +"/workspaces?skip=0&limit=500&enabled=true&app_key="+appKey+"&"+"accountId="
             +1+UrlManager.CLIENT_IDENTIFICATION;
-        String act=bmUrlManager.workspaces(appKey,1);
+        String act=bmUrlManager.workspaces(appKey,1,0,500);
         Assert.assertEquals(exp,act);
     }
 